@@ -1,17 +1,30 @@
 package com.marklogic.hub.central;
 
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.ext.helper.LoggingObject;
 import com.marklogic.hub.HubClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.annotation.SessionScope;
 
+import java.util.Arrays;
+
 /**
  * Session-scoped implementation of HubClientProvider that is given a HubClient when a user successfully authenticates.
  * Clients can then retrieve a HubClient from this class, where the HubClient itself is not directly bound to an HTTP
  * session, nor managed by Spring at all.
+ * <p>
+ * When the session ends - either via logout or because it has been idle for longer than the session timeout - the
+ * HubClient is dropped. If the DatabaseClients do not share a connection pool, they are also released so that their
+ * idle connections are closed right away.
  */
 @Component
 @SessionScope
-public class HttpSessionHubClientProvider implements HubClientProvider {
+public class HttpSessionHubClientProvider extends LoggingObject implements HubClientProvider, DisposableBean {
+
+    @Autowired(required = false)
+    SharedConnectionPool sharedConnectionPool;
 
     private HubClient hubClientDelegate;
 
@@ -23,4 +36,26 @@ public class HttpSessionHubClientProvider implements HubClientProvider {
     public void setHubClientDelegate(HubClient hubClientDelegate) {
         this.hubClientDelegate = hubClientDelegate;
     }
+
+    @Override
+    public void destroy() {
+        HubClient hubClient = this.hubClientDelegate;
+        this.hubClientDelegate = null;
+        if (hubClient == null || (sharedConnectionPool != null && sharedConnectionPool.isEnabled())) {
+            return;
+        }
+
+        Arrays.asList(hubClient.getStagingClient(), hubClient.getFinalClient(), hubClient.getJobsClient(), hubClient.getModulesClient())
+            .stream().distinct().forEach(this::releaseClient);
+    }
+
+    private void releaseClient(DatabaseClient client) {
+        if (client != null) {
+            try {
+                client.release();
+            } catch (Exception ex) {
+                logger.warn("Unable to release DatabaseClient for ended session; cause: " + ex.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.marklogic.hub.central;
+
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.ext.helper.LoggingObject;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Every user that logs into Hub Central gets its own HubClient, and thus its own set of DatabaseClients. By default,
+ * each DatabaseClient would have its own OkHttp connection pool, such that the number of idle sockets grows with the
+ * number of users. When enabled - which is the default - this registers a configurator with DatabaseClientFactory so
+ * that every DatabaseClient created by Hub Central shares a single connection pool.
+ * <p>
+ * The pool only caps the number of idle connections that it keeps alive; it does not limit the total number of
+ * connections. The MarkLogic Java Client executes requests synchronously, which OkHttp's Dispatcher limits do not
+ * apply to, so the number of open connections is still bounded by the number of concurrent requests.
+ * <p>
+ * Configurators registered with DatabaseClientFactory apply to every DatabaseClient in the JVM and cannot be
+ * removed individually. A single configurator is thus registered for the life of the JVM, and it applies whichever
+ * pool is current; once this bean is destroyed - e.g. when the application context is refreshed or closed - no pool
+ * is applied to DatabaseClients created afterwards.
+ * <p>
+ * OkHttp only reuses a pooled connection for a request to the same address - i.e. the same scheme, host, port and
+ * SSL configuration - so connections are effectively keyed by address. Credentials are not part of a connection; each
+ * DatabaseClient still authenticates its own requests with the credentials of its user.
+ * <p>
+ * Also registers gauges for the size of the pool, which are available via the "hubcentral.http.connections" metric
+ * when the Spring Boot actuator metrics endpoint is exposed.
+ */
+@Component
+public class SharedConnectionPool extends LoggingObject implements InitializingBean, DisposableBean, MeterBinder {
+
+    private static final AtomicBoolean configuratorAdded = new AtomicBoolean(false);
+    private static volatile ConnectionPool currentConnectionPool;
+
+    @Autowired
+    Environment environment;
+
+    ConnectionPool connectionPool;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!Boolean.parseBoolean(environment.getProperty("hub.connectionPool.enabled", "true"))) {
+            logger.info("Shared connection pool is disabled; each DatabaseClient will use its own connection pool");
+            return;
+        }
+
+        int maxIdleConnections = Integer.parseInt(environment.getProperty("hub.connectionPool.maxIdleConnections", "50"));
+        long keepAliveSeconds = Long.parseLong(environment.getProperty("hub.connectionPool.keepAliveSeconds", "300"));
+        connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+        currentConnectionPool = connectionPool;
+        if (configuratorAdded.compareAndSet(false, true)) {
+            DatabaseClientFactory.addConfigurator((DatabaseClientFactory.OkHttpClientConfigurator) SharedConnectionPool::configure);
+        }
+        logger.info(String.format("Using shared connection pool with max idle connections: %d; keep alive seconds: %d",
+            maxIdleConnections, keepAliveSeconds));
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionPool != null) {
+            if (currentConnectionPool == connectionPool) {
+                currentConnectionPool = null;
+            }
+            connectionPool.evictAll();
+        }
+    }
+
+    /**
+     * Applied by the configurator registered with DatabaseClientFactory to each DatabaseClient that is created.
+     *
+     * @param builder
+     */
+    static void configure(OkHttpClient.Builder builder) {
+        ConnectionPool pool = currentConnectionPool;
+        if (pool != null) {
+            builder.connectionPool(pool);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (connectionPool != null) {
+            Gauge.builder("hubcentral.http.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Number of connections in the shared connection pool")
+                .tag("state", "total")
+                .register(registry);
+            Gauge.builder("hubcentral.http.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Number of connections in the shared connection pool")
+                .tag("state", "idle")
+                .register(registry);
+        }
+    }
+
+    /**
+     * @return true if DatabaseClients created by Hub Central share a connection pool; if so, a DatabaseClient should
+     * not be released when its user's session ends, as doing so could affect the shared pool
+     */
+    public boolean isEnabled() {
+        return connectionPool != null;
+    }
+
+    public int getConnectionCount() {
+        return connectionPool != null ? connectionPool.connectionCount() : 0;
+    }
+
+    public int getIdleConnectionCount() {
+        return connectionPool != null ? connectionPool.idleConnectionCount() : 0;
+    }
+}
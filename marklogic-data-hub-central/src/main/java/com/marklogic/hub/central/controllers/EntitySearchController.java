@@ -27,6 +27,8 @@ import com.marklogic.hub.dataservices.EntitySearchService;
 import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
@@ -43,6 +45,9 @@ import java.util.Map;
 @RequestMapping(value = "/api/entitySearch")
 public class EntitySearchController extends BaseController {
 
+    @Autowired
+    Environment environment;
+
     @RequestMapping(method = RequestMethod.POST)
     @ResponseBody
     @ApiOperation(value = "Response is a MarkLogic JSON search response. Please see ./specs/EntitySearchResponse.schema.json for complete information, as swagger-ui does not capture all the details",
@@ -125,9 +130,10 @@ public class EntitySearchController extends BaseController {
     public ResponseEntity<StreamingResponseBody> export(@RequestParam String queryDocument,
                                                         @RequestParam String fileType,
                                                         @RequestParam(required = false) Long limit,
+                                                        @RequestParam(defaultValue = "false") boolean gzip,
                                                         final HttpServletResponse response,
                                                         @RequestParam(defaultValue = "final") String database) {
-        StreamingResponseBody stream = out -> newEntitySearchManager(database).exportByQuery(new ObjectMapper().readTree(queryDocument), fileType, limit, out, response);
+        StreamingResponseBody stream = out -> newExportingEntitySearchManager(database).exportByQuery(new ObjectMapper().readTree(queryDocument), fileType, limit, gzip, out, response);
         return ResponseEntity.ok(stream);
     }
 
@@ -138,9 +144,10 @@ public class EntitySearchController extends BaseController {
     public ResponseEntity<StreamingResponseBody> exportSavedQuery(@PathVariable String queryId,
                                                                   @RequestParam String fileType,
                                                                   @RequestParam(required = false) Long limit,
+                                                                  @RequestParam(defaultValue = "false") boolean gzip,
                                                                   final HttpServletResponse response,
                                                                   @RequestParam(defaultValue = "final") String database) {
-        StreamingResponseBody stream = out -> newEntitySearchManager(database).exportById(queryId, fileType, limit, out, response);
+        StreamingResponseBody stream = out -> newExportingEntitySearchManager(database).exportById(queryId, fileType, limit, gzip, out, response);
         return ResponseEntity.ok(stream);
     }
 
@@ -148,6 +155,12 @@ public class EntitySearchController extends BaseController {
         return new EntitySearchManager(getHubClient(), database);
     }
 
+    private EntitySearchManager newExportingEntitySearchManager(String database) {
+        EntitySearchManager manager = newEntitySearchManager(database);
+        manager.setExportPageLength(Integer.parseInt(environment.getProperty("hub.export.pageLength", "10000")));
+        return manager;
+    }
+
     private EntitySearchService getEntitySearchService() {
         return getEntitySearchService("final");
     }
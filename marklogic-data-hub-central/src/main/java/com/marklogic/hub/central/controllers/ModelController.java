@@ -23,12 +23,13 @@ import com.marklogic.client.DatabaseClient;
 import com.marklogic.client.admin.QueryOptionsManager;
 import com.marklogic.client.io.Format;
 import com.marklogic.hub.DatabaseKind;
+import com.marklogic.hub.central.entities.search.SearchOptionsCache;
 import com.marklogic.hub.central.managers.ModelManager;
 import com.marklogic.hub.central.schemas.ModelDefinitions;
 import com.marklogic.hub.central.schemas.ModelDescriptor;
 import com.marklogic.hub.central.schemas.PrimaryEntityType;
 import com.marklogic.hub.dataservices.ModelsService;
-import com.marklogic.hub.deploy.util.ResourceUtil;
+import com.marklogic.hub.deploy.util.IndexConfigPlan;
 import com.marklogic.hub.util.QueryRolesetUtil;
 import com.marklogic.mgmt.ManageClient;
 import io.swagger.annotations.ApiImplicitParam;
@@ -162,11 +163,20 @@ public class ModelController extends BaseController {
 
     private void deployIndexConfig(JsonNode modelConfigNode, ManageClient manageClient) {
         try {
+            final ObjectNode modelBasedProperties = (ObjectNode) modelConfigNode.get("indexConfig");
             for (String databaseName : Arrays.asList(getHubClient().getDbName(DatabaseKind.STAGING), getHubClient().getDbName(DatabaseKind.FINAL))) {
-                final ObjectNode modelBasedProperties = modelConfigNode.get("indexConfig").deepCopy();
                 final ObjectNode existingProperties = (ObjectNode)new ObjectMapper().readTree(manageClient.getJson("/manage/v2/databases/" + databaseName + "/properties"));
-                JsonNode mergedProperties = ResourceUtil.mergeExistingArrayProperties(modelBasedProperties, existingProperties);
-                manageClient.putJson("/manage/v2/databases/" + databaseName + "/properties", mergedProperties.toString());
+                IndexConfigPlan plan = IndexConfigPlan.build(databaseName, modelBasedProperties, existingProperties);
+                if (!plan.hasChanges()) {
+                    logger.info("Database indexes are already up to date, so not updating database: " + databaseName);
+                    continue;
+                }
+                if (plan.requiresReindexing()) {
+                    logger.warn("Updating indexes in database " + databaseName + "; the following changes will cause the database " +
+                        "to be reindexed if its reindexer is enabled: " + plan.getReindexingChanges());
+                }
+                logger.info("Updating database indexes: " + plan);
+                manageClient.putJson("/manage/v2/databases/" + databaseName + "/properties", plan.getPropertiesToSave().toString());
             }
         } catch (Exception e) {
             throw new RuntimeException("Unable to deploy database indexes after updating entity models; cause: " + e.getMessage(), e);
@@ -229,6 +239,7 @@ public class ModelController extends BaseController {
                 writeOptions(databaseKind, queryOptionsManager, databaseKind + "-entity-options", defaultOptions);
             }
         });
+        SearchOptionsCache.getInstance().invalidate();
     }
 
     private void writeOptions(String databaseKind, QueryOptionsManager queryOptionsManager, String optionName, String options) {
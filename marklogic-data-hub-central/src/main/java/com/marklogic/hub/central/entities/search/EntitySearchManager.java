@@ -43,21 +43,24 @@ import com.marklogic.hub.dataservices.EntitySearchService;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.FileCopyUtils;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 public class EntitySearchManager {
 
@@ -75,29 +78,35 @@ public class EntitySearchManager {
     private static final String CSV_FILE_EXTENSION = ".csv";
     private static final String SEPARATOR = "_";
     private static final String FILE_PREFIX = "DH_Export_";
+    private static final int DEFAULT_EXPORT_PAGE_LENGTH = 10000;
 
     private static final Logger logger = LoggerFactory.getLogger(EntitySearchManager.class);
 
-    public static String QUERY_OPTIONS = "exp-final-entity-options";
-    private static Map<String, FacetHandler> facetHandlerMap;
+    public static final String FINAL_QUERY_OPTIONS = "exp-final-entity-options";
+    public static final String STAGING_QUERY_OPTIONS = "exp-staging-entity-options";
+
+    // Facet handlers are stateless, so a single set of them is shared by all instances
+    private static final Map<String, FacetHandler> facetHandlerMap = buildFacetHandlerMap();
+
+    private final String queryOptionsName;
     private DatabaseClient searchDatabaseClient;
     private DatabaseClient savedQueryDatabaseClient;
+    private int exportPageLength = DEFAULT_EXPORT_PAGE_LENGTH;
 
     public EntitySearchManager(HubClient hubClient) {
         this.searchDatabaseClient = hubClient.getFinalClient();
-        initializeFacetHandlerMap();
+        this.queryOptionsName = FINAL_QUERY_OPTIONS;
     }
 
     public EntitySearchManager(HubClient hubClient, String database) {
         if("staging".equalsIgnoreCase(database)) {
             this.searchDatabaseClient = hubClient.getStagingClient();
-            QUERY_OPTIONS = "exp-staging-entity-options";
+            this.queryOptionsName = STAGING_QUERY_OPTIONS;
         } else {
             this.searchDatabaseClient = hubClient.getFinalClient();
-            QUERY_OPTIONS = "exp-final-entity-options";
+            this.queryOptionsName = FINAL_QUERY_OPTIONS;
         }
         this.savedQueryDatabaseClient = hubClient.getFinalClient();
-        initializeFacetHandlerMap();
     }
 
     public StringHandle search(SearchQuery searchQuery) {
@@ -132,11 +141,11 @@ public class EntitySearchManager {
         } catch (MarkLogicServerException e) {
             logger.error(e.getLocalizedMessage());
             // Resorting to string contains check as there isn't any other discernible difference
-            if (e.getLocalizedMessage().contains(QUERY_OPTIONS)) {
+            if (e.getLocalizedMessage().contains(queryOptionsName)) {
                 logger.error("If this is a configuration issue, fix the configuration issues as shown in"
                         + " the logs for enabling faceted search on the entity properties."
                         + "\n"
-                        + "If the " + QUERY_OPTIONS
+                        + "If the " + queryOptionsName
                         + " search options file is missing, please look into documentation "
                         + "for creating the options file. If the database is indexing then it might take some "
                         + "time for the file to get generated. This file is required to enable "
@@ -148,7 +157,7 @@ public class EntitySearchManager {
 
     private StructuredQueryDefinition buildQuery(QueryManager queryMgr, SearchQuery searchQuery) {
         queryMgr.setPageLength(searchQuery.getPageLength());
-        StructuredQueryBuilder queryBuilder = queryMgr.newStructuredQueryBuilder(QUERY_OPTIONS);
+        StructuredQueryBuilder queryBuilder = queryMgr.newStructuredQueryBuilder(queryOptionsName);
 
         // Creating queries object
         List<StructuredQueryDefinition> queries = new ArrayList<>();
@@ -179,11 +188,12 @@ public class EntitySearchManager {
         return queryBuilder.and(queries.toArray(new StructuredQueryDefinition[0]));
     }
 
-    private void initializeFacetHandlerMap() {
-        facetHandlerMap = new HashMap<>();
-        facetHandlerMap.put(Constants.COLLECTION_CONSTRAINT_NAME, new CollectionFacetHandler());
-        facetHandlerMap.put(Constants.JOB_RANGE_CONSTRAINT_NAME, new JobRangeFacetHandler());
-        facetHandlerMap.put(Constants.CREATED_ON_CONSTRAINT_NAME, new CreatedOnFacetHandler());
+    private static Map<String, FacetHandler> buildFacetHandlerMap() {
+        Map<String, FacetHandler> map = new HashMap<>();
+        map.put(Constants.COLLECTION_CONSTRAINT_NAME, new CollectionFacetHandler());
+        map.put(Constants.JOB_RANGE_CONSTRAINT_NAME, new JobRangeFacetHandler());
+        map.put(Constants.CREATED_ON_CONSTRAINT_NAME, new CreatedOnFacetHandler());
+        return Collections.unmodifiableMap(map);
     }
 
     private String[] getExcludedCollections(SearchQuery searchQuery) {
@@ -204,20 +214,41 @@ public class EntitySearchManager {
         return excludedCol.toArray(new String[0]);
     }
 
-    public void exportById(String queryId, String fileType, Long limit, OutputStream out, HttpServletResponse response) {
+    public void exportById(String queryId, String fileType, Long limit, boolean gzip, OutputStream out, HttpServletResponse response) {
         JsonNode queryDocument = EntitySearchService.on(savedQueryDatabaseClient).getSavedQuery(queryId);
-        exportByQuery(queryDocument, fileType, limit, out, response);
+        exportByQuery(queryDocument, fileType, limit, gzip, out, response);
     }
 
-    public void exportByQuery(JsonNode queryDocument, String fileType, Long limit, OutputStream out, HttpServletResponse response) {
+    public void exportByQuery(JsonNode queryDocument, String fileType, Long limit, boolean gzip, OutputStream out, HttpServletResponse response) {
         if ("CSV".equals(fileType.toUpperCase())) {
             prepareResponseHeader(response, CSV_CONTENT_TYPE, getFileNameForDownload(queryDocument, CSV_FILE_EXTENSION));
-            exportRows(queryDocument, limit, out);
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+                try {
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(out, true);
+                    exportRows(queryDocument, limit, gzipOut);
+                    gzipOut.finish();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            } else {
+                exportRows(queryDocument, limit, out);
+            }
         } else {
             throw new DataHubException("Invalid file type: " + fileType);
         }
     }
 
+    /**
+     * Writes the rows matching the given query as CSV to the given stream. The rows are retrieved a page at a time,
+     * with each page being requested via the cursor returned with the previous page, and each page is flushed to the
+     * stream before the next one is requested. Memory use is thus bounded by the page length, regardless of how many
+     * rows are exported.
+     *
+     * @param queryDocument
+     * @param limit optional maximum number of rows to export
+     * @param out
+     */
     public void exportRows(JsonNode queryDocument, Long limit, OutputStream out) {
         QueryManager queryMgr = searchDatabaseClient.newQueryManager();
         SearchQuery searchQuery = transformToSearchQuery(queryDocument);
@@ -225,7 +256,7 @@ public class EntitySearchManager {
 
         String structuredQuery = structuredQueryDefinition.serialize();
         String searchText = searchQuery.getQuery().getSearchText();
-        String queryOptions = getQueryOptions(QUERY_OPTIONS);
+        String queryOptions = getQueryOptions(queryOptionsName);
         String entityTypeId = getEntityTypeIdForRowExport(queryDocument);
         List<String> columns = getColumnNamesForRowExport(queryDocument);
         List<SearchQuery.SortOrder> sortOrder = searchQuery.getSortOrder().orElse(new ArrayList<>());
@@ -233,12 +264,46 @@ public class EntitySearchManager {
 
         EntitySearchService entitySearchService = EntitySearchService.on(searchDatabaseClient);
         // Exporting directly from Data Service to avoid bug https://bugtrack.marklogic.com/55338 related to namespaced path range indexes
-        Reader export = entitySearchService.exportSearchAsCSV(structuredQuery, searchText, queryOptions, entityTypeId, entityTypeId, limit, sortOrderNode, columns.stream());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        JsonNode cursor = null;
+        long exportedCount = 0;
+        boolean endsWithNewline = true;
         try {
-            FileCopyUtils.copy(export, new OutputStreamWriter(out));
+            while (limit == null || exportedCount < limit) {
+                long pageLength = limit != null ? Math.min(exportPageLength, limit - exportedCount) : exportPageLength;
+                JsonNode page = entitySearchService.exportSearchAsCSVPage(structuredQuery, searchText, queryOptions, entityTypeId,
+                    entityTypeId, pageLength, sortOrderNode, cursor, exportedCount == 0, columns.stream());
+                String csv = page.path("csv").asText();
+                if (!csv.isEmpty()) {
+                    // The CSV for a page may not end with a line break, so one is added before the rows of the next page
+                    if (!endsWithNewline) {
+                        writer.write("\r\n");
+                    }
+                    writer.write(csv);
+                    endsWithNewline = csv.endsWith("\n");
+                }
+                writer.flush();
+                exportedCount += page.path("rowCount").asLong();
+                cursor = page.get("cursor");
+                if (cursor == null || cursor.isNull()) {
+                    break;
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        logger.debug("Exported rows: " + exportedCount);
+    }
+
+    /**
+     * @param exportPageLength the number of rows retrieved from MarkLogic at a time when exporting rows; must be at
+     *                         least 1
+     */
+    public void setExportPageLength(int exportPageLength) {
+        if (exportPageLength < 1) {
+            throw new IllegalArgumentException("Export page length must be at least 1");
+        }
+        this.exportPageLength = exportPageLength;
     }
 
     protected SearchQuery transformToSearchQuery(JsonNode queryDocument) {
@@ -312,21 +377,25 @@ public class EntitySearchManager {
     }
 
     /**
-     * Retrieves the specified options file name for the final database.
+     * Retrieves the specified options file name for the database being searched. Options are cached across requests
+     * via SearchOptionsCache, which is invalidated when search options are deployed.
      *
      * @param queryOptionsName
      * @return - Options file as string
      */
     protected String getQueryOptions(String queryOptionsName) {
-        String queryOptions;
+        String cacheKey = searchDatabaseClient.getHost() + ":" + searchDatabaseClient.getPort() + "/" + queryOptionsName;
+        return SearchOptionsCache.getInstance().getOptions(cacheKey, () -> readQueryOptions(queryOptionsName));
+    }
+
+    private String readQueryOptions(String queryOptionsName) {
         try {
-            queryOptions = searchDatabaseClient.newServerConfigManager()
+            return searchDatabaseClient.newServerConfigManager()
                     .newQueryOptionsManager()
                     .readOptionsAs(queryOptionsName, Format.XML, String.class);
         } catch (ResourceNotFoundException e) {
             throw new RuntimeException(String.format("Could not find search options: %s", queryOptionsName), e);
         }
-        return queryOptions;
     }
 
     private void prepareResponseHeader(HttpServletResponse response, String contentType, String fileName) {
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2021 MarkLogic Corporation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.marklogic.hub.central.entities.search;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches search options read from MarkLogic so that exporting search results does not require reading the options
+ * on every request. Options are cached per app server and options name, which means that the staging and final
+ * options never share an entry.
+ * <p>
+ * The cache is versioned; invalidate() increments the version and discards all entries, and an entry that was loaded
+ * under an older version is never returned. This ensures that options which were being read while a model was being
+ * saved are not cached. Because options can also be deployed outside of Hub Central, entries also expire after a
+ * fixed time to live.
+ */
+public class SearchOptionsCache {
+
+    private static final SearchOptionsCache INSTANCE = new SearchOptionsCache(TimeUnit.MINUTES.toMillis(5));
+
+    private final long timeToLiveMillis;
+    private final AtomicLong version = new AtomicLong(0);
+    private final Map<String, CachedOptions> cachedOptions = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cache shared by all EntitySearchManager instances
+     */
+    public static SearchOptionsCache getInstance() {
+        return INSTANCE;
+    }
+
+    public SearchOptionsCache(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * @param key    identifies the app server and the name of the search options
+     * @param loader reads the options from MarkLogic when they are not cached, have expired, or were cached under an
+     *               older version
+     * @return
+     */
+    public String getOptions(String key, Supplier<String> loader) {
+        final long currentVersion = version.get();
+        CachedOptions cached = cachedOptions.get(key);
+        if (cached != null && cached.version == currentVersion && !cached.isExpired(timeToLiveMillis)) {
+            return cached.options;
+        }
+
+        String options = loader.get();
+        CachedOptions loaded = new CachedOptions(options, currentVersion);
+        cachedOptions.put(key, loaded);
+        if (version.get() != currentVersion) {
+            // Invalidated while loading; the options may predate the change that caused the invalidation
+            cachedOptions.remove(key, loaded);
+        }
+        return options;
+    }
+
+    /**
+     * Discards all cached options; expected to be called whenever search options are deployed.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        cachedOptions.clear();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static class CachedOptions {
+        final String options;
+        final long version;
+        final long loadedAt = System.currentTimeMillis();
+
+        CachedOptions(String options, long version) {
+            this.options = options;
+            this.version = version;
+        }
+
+        boolean isExpired(long timeToLiveMillis) {
+            return System.currentTimeMillis() - loadedAt > timeToLiveMillis;
+        }
+    }
+}
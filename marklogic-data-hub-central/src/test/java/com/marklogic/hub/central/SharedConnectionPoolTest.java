@@ -0,0 +1,69 @@
+package com.marklogic.hub.central;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedConnectionPoolTest {
+
+    @Test
+    void enabledByDefault() {
+        SharedConnectionPool pool = newSharedConnectionPool(new MockEnvironment());
+        assertTrue(pool.isEnabled());
+        assertEquals(0, pool.getConnectionCount());
+        assertEquals(0, pool.getIdleConnectionCount());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+        assertEquals(0, registry.get("hubcentral.http.connections").tag("state", "total").gauge().value());
+        assertEquals(0, registry.get("hubcentral.http.connections").tag("state", "idle").gauge().value());
+        pool.destroy();
+    }
+
+    @Test
+    void disabled() {
+        SharedConnectionPool pool = newSharedConnectionPool(new MockEnvironment().withProperty("hub.connectionPool.enabled", "false"));
+        assertFalse(pool.isEnabled());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+        assertTrue(registry.getMeters().isEmpty(), "No gauges should be registered when the shared pool is disabled");
+        pool.destroy();
+    }
+
+    @Test
+    void poolIsNotAppliedAfterDestroy() {
+        SharedConnectionPool first = newSharedConnectionPool(new MockEnvironment());
+        assertSame(first.connectionPool, configuredConnectionPool());
+        first.destroy();
+        ConnectionPool defaultPool = configuredConnectionPool();
+        assertNotSame(first.connectionPool, defaultPool, "Once destroyed, the pool should not be applied to any " +
+            "DatabaseClient created afterwards");
+
+        // Simulates the application context being refreshed
+        SharedConnectionPool second = newSharedConnectionPool(new MockEnvironment());
+        assertSame(second.connectionPool, configuredConnectionPool(), "Only the current pool should be applied");
+        first.destroy();
+        assertSame(second.connectionPool, configuredConnectionPool(),
+            "Destroying a previous pool should not stop the current pool from being applied");
+        second.destroy();
+        assertNotSame(second.connectionPool, configuredConnectionPool());
+    }
+
+    private ConnectionPool configuredConnectionPool() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        SharedConnectionPool.configure(builder);
+        return builder.build().connectionPool();
+    }
+
+    private SharedConnectionPool newSharedConnectionPool(MockEnvironment environment) {
+        SharedConnectionPool pool = new SharedConnectionPool();
+        pool.environment = environment;
+        pool.afterPropertiesSet();
+        return pool;
+    }
+}
@@ -31,20 +31,27 @@ import com.marklogic.hub.test.Customer;
 import com.marklogic.hub.test.ReferenceModelProject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
-
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class EntitySearchManagerTest extends AbstractHubCentralTest {
 
-    static String ACTUAL_QUERY_OPTIONS = EntitySearchManager.QUERY_OPTIONS;
-
     @AfterEach
     public void resetData() {
-        EntitySearchManager.QUERY_OPTIONS = ACTUAL_QUERY_OPTIONS;
         if (isVersionCompatibleWith520Roles()) {
             runAsDataHubDeveloper();
         } else {
@@ -277,6 +284,58 @@ public class EntitySearchManagerTest extends AbstractHubCentralTest {
         assertThrows(RuntimeException.class, () -> new EntitySearchManager(getHubClient()).getQueryOptions("non-existent-options"), "Search options doesn't exist");
     }
 
+    @Test
+    void exportRowsAcrossMultiplePagesAsGzip() throws IOException {
+        runAsDataHubDeveloper();
+        ReferenceModelProject project = installOnlyReferenceModelEntities(true);
+        for (int i = 1; i <= 5; i++) {
+            project.createCustomerInstance(new Customer(i, "Customer" + i));
+        }
+
+        String json = "{\n" +
+            "  \"savedQuery\": {\n" +
+            "    \"name\": \"some-query\",\n" +
+            "    \"query\": {\n" +
+            "      \"searchText\": \"\",\n" +
+            "      \"entityTypeIds\": [\"Customer\"]\n" +
+            "    },\n" +
+            "    \"propertiesToDisplay\": [\"customerId\", \"name\"],\n" +
+            "    \"sortOrder\": [{\"propertyName\": \"customerId\", \"sortDirection\": \"ascending\"}]\n" +
+            "  }\n" +
+            "}";
+        JsonNode queryDocument = new ObjectMapper().readTree(json);
+
+        runAsTestUserWithRoles("hub-central-entity-exporter");
+        EntitySearchManager manager = new EntitySearchManager(getHubClient());
+        manager.setExportPageLength(2);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manager.exportByQuery(queryDocument, "csv", null, true, out, response);
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+
+        List<String> lines = toCsvLines(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(6, lines.size(), "Expected the header row and all 5 rows, which are exported in 3 pages " +
+            "of at most 2 rows each; lines: " + lines);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(lines.get(i).startsWith(i + ","), "Rows should be in sort order with no row repeated or " +
+                "dropped at a page boundary; unexpected line: " + lines.get(i));
+        }
+
+        out = new ByteArrayOutputStream();
+        manager.exportByQuery(queryDocument, "csv", 3L, false, out, new MockHttpServletResponse());
+        lines = toCsvLines(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(4, lines.size(), "The limit should apply across pages, so only the header row and 3 rows " +
+            "should be exported; lines: " + lines);
+        assertTrue(lines.get(3).startsWith("3,"));
+    }
+
+    private List<String> toCsvLines(InputStream input) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            return reader.lines().filter(line -> !line.trim().isEmpty()).collect(Collectors.toList());
+        }
+    }
+
     private void validateSearchWithTransform(String databaseType) {
         runAsDataHubDeveloper();
         ReferenceModelProject project = installOnlyReferenceModelEntities(true);
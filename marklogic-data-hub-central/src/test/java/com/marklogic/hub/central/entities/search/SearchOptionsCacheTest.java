@@ -0,0 +1,55 @@
+package com.marklogic.hub.central.entities.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SearchOptionsCacheTest {
+
+    private final AtomicInteger loadCount = new AtomicInteger(0);
+
+    @Test
+    void optionsAreCachedPerKey() {
+        SearchOptionsCache cache = new SearchOptionsCache(60000);
+        assertEquals("final-1", cache.getOptions("final", () -> load("final")));
+        assertEquals("final-1", cache.getOptions("final", () -> load("final")));
+        assertEquals("staging-2", cache.getOptions("staging", () -> load("staging")));
+        assertEquals("staging-2", cache.getOptions("staging", () -> load("staging")));
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void invalidate() {
+        SearchOptionsCache cache = new SearchOptionsCache(60000);
+        cache.getOptions("final", () -> load("final"));
+        cache.invalidate();
+        assertEquals(1, cache.getVersion());
+        assertEquals("final-2", cache.getOptions("final", () -> load("final")));
+        assertEquals("final-2", cache.getOptions("final", () -> load("final")));
+    }
+
+    @Test
+    void invalidatedWhileLoading() {
+        SearchOptionsCache cache = new SearchOptionsCache(60000);
+        String options = cache.getOptions("final", () -> {
+            cache.invalidate();
+            return load("final");
+        });
+        assertEquals("final-1", options, "The loaded options are still returned to the caller");
+        assertEquals("final-2", cache.getOptions("final", () -> load("final")),
+            "Options loaded while the cache was invalidated should not have been cached");
+    }
+
+    @Test
+    void expired() {
+        SearchOptionsCache cache = new SearchOptionsCache(-1);
+        cache.getOptions("final", () -> load("final"));
+        assertEquals("final-2", cache.getOptions("final", () -> load("final")));
+    }
+
+    private String load(String name) {
+        return name + "-" + loadCount.incrementAndGet();
+    }
+}
@@ -1,30 +1,72 @@
 package com.marklogic.hub.ext.junit5;
 
-import com.marklogic.client.FailedRequestException;
-import com.marklogic.client.ForbiddenUserException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.eval.EvalResultIterator;
 import com.marklogic.client.ext.helper.LoggingObject;
 import com.marklogic.hub.HubClient;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.test.context.TestContext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Prepares the databases by clearing all data except for DHF artifacts.
  * <p>
  * Avoids directly clearing the database, as that often requires a couple seconds to complete, which is an unacceptable
- * delay when running tests.
+ * delay when running tests. Instead, the staging, final, and jobs databases are prepared concurrently. For staging and
+ * final, the URIs of the documents to delete are first found via a query; if there are none - which is typically the
+ * case when the previous test did not write any data - then no update transaction is run at all. Otherwise, the URIs
+ * are deleted in batches, with each batch being deleted in its own transaction concurrently with the other batches.
+ * Only enough URIs for one batch per thread are retrieved at a time, so that a large database is cleared in rounds
+ * instead of every URI in it being sent to the client at once. A subclass that overrides the deprecated
+ * {@link #getQueryForClearingDatabase()} instead has that query run against staging and final, as was done before
+ * deletes were batched, so that the documents it chooses to keep are still kept.
+ * <p>
+ * The threads used for preparing the databases are released when this is destroyed, which Spring does when the
+ * application context that this is defined in is closed. An instance that is not managed by Spring should have its
+ * {@link #destroy()} method called once it is no longer needed.
  * <p>
  * For some test classes, it may be desirable to disable this behavior for the scope of the test class. For example,
  * a test class that runs marklogic-unit-test modules, which are likely to have their own database preparation logic,
  * may want this behavior disabled. A public static method is available for doing so, presumably via methods marked
  * with the JUnit5 BeforeAll and AfterAll annotations.
  */
-public class HubDatabasePreparer extends LoggingObject implements DatabasePreparer {
+public class HubDatabasePreparer extends LoggingObject implements DatabasePreparer, DisposableBean {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
 
     private HubClient hubClient;
+    private final boolean clearingQueryIsOverridden;
+    private ExecutorService executorService;
+    private int threadCount = 8;
+    private int deleteBatchSize = 1000;
+    private ObjectMapper objectMapper = new ObjectMapper();
 
     private static boolean enabled = true;
 
     public HubDatabasePreparer(HubClient hubClient) {
         this.hubClient = hubClient;
+        this.clearingQueryIsOverridden = isClearingQueryOverridden(getClass());
+    }
+
+    private static boolean isClearingQueryOverridden(Class<?> type) {
+        for (Class<?> c = type; c != null && !HubDatabasePreparer.class.equals(c); c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("getQueryForClearingDatabase");
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // Keep looking in the superclass
+            }
+        }
+        return false;
     }
 
     @Override
@@ -34,40 +76,218 @@ public class HubDatabasePreparer extends LoggingObject implements DatabasePrepar
             return;
         }
 
-        String query = getQueryForClearingDatabase();
+        final long start = System.currentTimeMillis();
+        ExecutorService executor = getExecutorService();
+        final int maxUrisPerRound = Math.max(1, deleteBatchSize) * Math.max(1, threadCount);
+
+        Future<?> jobsFuture = executor.submit(this::prepareJobsDatabase);
+        if (clearingQueryIsOverridden) {
+            clearDatabasesWithOverriddenQuery(executor);
+        } else {
+            boolean prepareStaging = true;
+            boolean prepareFinal = true;
+            while (prepareStaging || prepareFinal) {
+                Future<List<String>> stagingUris = prepareStaging ?
+                    executor.submit(() -> findUrisToDelete(hubClient.getStagingClient(), "staging", maxUrisPerRound)) : null;
+                Future<List<String>> finalUris = prepareFinal ?
+                    executor.submit(() -> findUrisToDelete(hubClient.getFinalClient(), "final", maxUrisPerRound)) : null;
 
-        logger.info("Preparing staging database");
+                List<Future<?>> futures = new ArrayList<>();
+                if (stagingUris != null) {
+                    List<String> uris = waitFor(stagingUris);
+                    submitDeleteBatches(executor, hubClient.getStagingClient(), "staging", uris, futures);
+                    // A round that found fewer URIs than the limit must have found every document to delete
+                    prepareStaging = uris.size() >= maxUrisPerRound;
+                }
+                if (finalUris != null) {
+                    List<String> uris = waitFor(finalUris);
+                    submitDeleteBatches(executor, hubClient.getFinalClient(), "final", uris, futures);
+                    prepareFinal = uris.size() >= maxUrisPerRound;
+                }
+                futures.forEach(this::waitFor);
+            }
+        }
+        waitFor(jobsFuture);
+
+        if (logger.isInfoEnabled()) {
+            logger.info(format("Prepared databases, time: %dms", System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Runs the query returned by an overridden {@link #getQueryForClearingDatabase()} against the staging and final
+     * databases concurrently, with each database being cleared in a single transaction.
+     *
+     * @param executor
+     */
+    @SuppressWarnings("deprecation")
+    private void clearDatabasesWithOverriddenQuery(ExecutorService executor) {
+        final String query = getQueryForClearingDatabase();
+        Future<?> stagingFuture = executor.submit(() -> clearDatabase(hubClient.getStagingClient(), "staging", query));
+        Future<?> finalFuture = executor.submit(() -> clearDatabase(hubClient.getFinalClient(), "final", query));
+        waitFor(stagingFuture);
+        waitFor(finalFuture);
+    }
+
+    private void clearDatabase(DatabaseClient client, String databaseType, String query) {
+        logger.info(format("Preparing %s database", databaseType));
         try {
-            hubClient.getStagingClient().newServerEval().javascript(query).evalAs(String.class);
+            client.newServerEval().javascript(query).evalAs(String.class);
+        } catch (Exception ex) {
+            throw new RuntimeException(format("Unable to prepare %s database; cause: %s", databaseType, ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * @param client
+     * @param databaseType
+     * @param limit the maximum number of URIs to return
+     * @return the URIs of up to the given number of documents to delete
+     */
+    protected List<String> findUrisToDelete(DatabaseClient client, String databaseType, int limit) {
+        List<String> uris = new ArrayList<>();
+        try (EvalResultIterator results = client.newServerEval().javascript(getQueryForFindingUrisToDelete(limit)).eval()) {
+            results.forEachRemaining(result -> uris.add(result.getString()));
         } catch (Exception ex) {
-            throw new RuntimeException("Unable to prepare staging database; cause: " + ex.getMessage(), ex);
+            throw new RuntimeException(format("Unable to prepare %s database; cause: %s", databaseType, ex.getMessage()), ex);
+        }
+        if (uris.isEmpty()) {
+            logger.debug(format("No documents to delete in %s database", databaseType));
+        }
+        return uris;
+    }
+
+    private void submitDeleteBatches(ExecutorService executor, DatabaseClient client, String databaseType, List<String> uris, List<Future<?>> futures) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info(format("Preparing %s database; deleting %d documents", databaseType, uris.size()));
+        }
+        final int batchSize = Math.max(1, deleteBatchSize);
+        for (int i = 0; i < uris.size(); i += batchSize) {
+            List<String> batch = uris.subList(i, Math.min(i + batchSize, uris.size()));
+            futures.add(executor.submit(() -> deleteUris(client, databaseType, batch)));
         }
+    }
 
-        logger.info("Preparing final database");
+    protected void deleteUris(DatabaseClient client, String databaseType, List<String> uris) {
         try {
-            hubClient.getFinalClient().newServerEval().javascript(query).evalAs(String.class);
+            client.newServerEval()
+                .javascript("declareUpdate(); var uris; " +
+                    "JSON.parse(uris).forEach(uri => { if (cts.exists(cts.documentQuery(uri))) { xdmp.documentDelete(uri); } })")
+                .addVariable("uris", objectMapper.writeValueAsString(uris))
+                .evalAs(String.class);
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Unable to serialize URIs to delete; cause: " + ex.getMessage(), ex);
         } catch (Exception ex) {
-            throw new RuntimeException("Unable to prepare final database; cause: " + ex.getMessage(), ex);
+            throw new RuntimeException(format("Unable to prepare %s database; cause: %s", databaseType, ex.getMessage()), ex);
         }
+    }
 
+    /**
+     * Only runs an update transaction when the Jobs collection has any documents.
+     */
+    protected void prepareJobsDatabase() {
         logger.info("Preparing jobs database");
         try {
-            hubClient.getJobsClient().newServerEval().javascript("declareUpdate(); xdmp.collectionDelete('Jobs')").evalAs(String.class);
+            hubClient.getJobsClient().newServerEval().javascript(
+                "if (cts.exists(cts.collectionQuery('Jobs'))) { " +
+                    "xdmp.invokeFunction(() => xdmp.collectionDelete('Jobs'), {update: 'true'}) " +
+                    "}"
+            ).evalAs(String.class);
         } catch (Exception ex) {
             throw new RuntimeException("Unable to prepare job database; cause: " + ex.getMessage(), ex);
         }
     }
 
-    protected String getQueryForClearingDatabase() {
-        return "declareUpdate(); " +
-            "cts.uris('', [], cts.notQuery(cts.collectionQuery([" +
+    private <T> T waitFor(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while preparing databases", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(Math.max(1, threadCount), runnable -> {
+                Thread thread = new Thread(runnable, "hub-database-preparer-" + threadNumber.incrementAndGet());
+                // Daemon threads ensure that the pool does not prevent the test JVM from exiting
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executorService;
+    }
+
+    /**
+     * Shuts down the threads used for preparing the databases; if the databases are prepared again afterwards, new
+     * threads are created.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    /**
+     * @return a cts query, as JavaScript, that matches every document that should be deleted
+     */
+    protected String getCtsQueryForDocumentsToDelete() {
+        return "cts.notQuery(cts.collectionQuery([" +
             "'hub-core-artifact', " +
             "'http://marklogic.com/entity-services/models', " +
             "'http://marklogic.com/data-hub/flow', " +
             "'http://marklogic.com/data-hub/mappings', " +
             "'http://marklogic.com/data-hub/step-definition', " +
             "'http://marklogic.com/data-hub/steps'" +
-            "]))).toArray().forEach(item => xdmp.documentDelete(item))";
+            "]))";
+    }
+
+    /**
+     * @param limit the maximum number of URIs to return
+     * @return a query, as JavaScript, that returns the URIs of up to the given number of documents to delete
+     */
+    protected String getQueryForFindingUrisToDelete(int limit) {
+        return "cts.uris('', ['limit=" + limit + "'], " + getCtsQueryForDocumentsToDelete() + ")";
+    }
+
+    /**
+     * If a subclass overrides this, the returned query is run against the staging and final databases instead of
+     * finding and deleting documents in batches.
+     *
+     * @return a query that deletes every document to delete in a single transaction
+     * @deprecated databases are now prepared via {@link #getQueryForFindingUrisToDelete(int)} and batched deletes,
+     * which is faster for large databases; override {@link #getCtsQueryForDocumentsToDelete()} to change which
+     * documents are deleted
+     */
+    @Deprecated
+    protected String getQueryForClearingDatabase() {
+        return "declareUpdate(); " +
+            "cts.uris('', [], " + getCtsQueryForDocumentsToDelete() + ").toArray().forEach(item => xdmp.documentDelete(item))";
+    }
+
+    /**
+     * @param threadCount the number of threads used to prepare the databases; the number of threads only changes
+     *                    before the databases are first prepared, though it always determines how many URIs are
+     *                    retrieved at a time
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @param deleteBatchSize the number of documents deleted in each transaction
+     */
+    public void setDeleteBatchSize(int deleteBatchSize) {
+        this.deleteBatchSize = deleteBatchSize;
     }
 
     public static boolean isEnabled() {
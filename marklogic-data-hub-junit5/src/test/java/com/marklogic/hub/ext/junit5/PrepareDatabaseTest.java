@@ -24,7 +24,12 @@ public class PrepareDatabaseTest extends AbstractSimpleHubTest {
         assertEquals(originalFinalCount + 1, getFinalDocCount());
         assertEquals(originalJobsCount + 2, getJobsDocCount());
 
-        new HubDatabasePreparer(getHubClient()).prepareDatabasesBeforeTestMethod(null);
+        HubDatabasePreparer preparer = new HubDatabasePreparer(getHubClient());
+        try {
+            preparer.prepareDatabasesBeforeTestMethod(null);
+        } finally {
+            preparer.destroy();
+        }
 
         assertEquals(originalFinalCount, getFinalDocCount(),
             "The final1.json doc should have been deleted, but all artifacts left alone");
@@ -37,4 +42,62 @@ public class PrepareDatabaseTest extends AbstractSimpleHubTest {
                 "data, she should only enable it in the tests that need it, and then use of the aforementioned " +
                 "approaches for deleting it afterwards");
     }
+
+    @Test
+    void deleteInBatches() {
+        installProjectInFolder("test-projects/each-artifact-type");
+
+        final int originalStagingCount = getStagingDocCount();
+        final int originalFinalCount = getFinalDocCount();
+
+        for (int i = 0; i < 5; i++) {
+            writeStagingJsonDoc("/staging" + i + ".json", "{}", "stagingTestData");
+            writeFinalJsonDoc("/final" + i + ".json", "{}", "finalTestData");
+        }
+
+        HubDatabasePreparer preparer = new HubDatabasePreparer(getHubClient());
+        preparer.setDeleteBatchSize(2);
+        preparer.setThreadCount(2);
+        try {
+            preparer.prepareDatabasesBeforeTestMethod(null);
+
+            assertEquals(originalStagingCount, getStagingDocCount(), "All 5 staging docs should have been deleted; " +
+                "only 4 URIs are retrieved at a time with 2 threads and a batch size of 2, so this requires 2 rounds");
+            assertEquals(originalFinalCount, getFinalDocCount(), "All 5 final docs should have been deleted across 2 rounds");
+
+            preparer.prepareDatabasesBeforeTestMethod(null);
+            assertEquals(originalStagingCount, getStagingDocCount(),
+                "When there is nothing to delete, the databases should be left alone");
+            assertEquals(originalFinalCount, getFinalDocCount());
+        } finally {
+            preparer.destroy();
+        }
+    }
+
+    @Test
+    void overriddenClearingQueryIsStillUsed() {
+        installProjectInFolder("test-projects/each-artifact-type");
+
+        final int originalStagingCount = getStagingDocCount();
+        writeStagingJsonDoc("/keep.json", "{}", "keepMe");
+        writeStagingJsonDoc("/delete.json", "{}", "stagingTestData");
+
+        HubDatabasePreparer preparer = new HubDatabasePreparer(getHubClient()) {
+            @Override
+            protected String getQueryForClearingDatabase() {
+                return "declareUpdate(); " +
+                    "cts.uris('', [], cts.notQuery(cts.collectionQuery('keepMe'))).toArray().forEach(uri => { " +
+                    "  if (uri === '/delete.json') { xdmp.documentDelete(uri); } " +
+                    "})";
+            }
+        };
+        try {
+            preparer.prepareDatabasesBeforeTestMethod(null);
+            assertEquals(originalStagingCount + 1, getStagingDocCount(), "A subclass that overrides the deprecated " +
+                "getQueryForClearingDatabase should still have its query used, and thus /keep.json should not have been deleted");
+        } finally {
+            preparer.destroy();
+            getHubClient().getStagingClient().newDocumentManager().delete("/keep.json");
+        }
+    }
 }
@@ -14,12 +14,14 @@ import org.apache.spark.sql.catalyst.InternalRow;
 import org.apache.spark.sql.sources.v2.reader.InputPartitionReader;
 import org.apache.spark.sql.types.StructType;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 
 /**
  * Uses a BulkOutputCaller to fetch rows for a given partition. Each JSON row is then converted into an InternalRow.
+ * The bytes of each row are handed directly to the Spark JSON parser so that a row is only parsed once.
  */
 public class HubInputPartitionReader extends LoggingObject implements InputPartitionReader<InternalRow> {
 
@@ -30,9 +32,13 @@ public class HubInputPartitionReader extends LoggingObject implements InputParti
 
     private InputStream[] rows;
     private int rowIndex;
-    private JsonNode currentRow;
+    private byte[] currentRow;
     private long numberOfRowsRead;
 
+    // Reused across rows to avoid allocating new buffers for every row
+    private final byte[] readBuffer = new byte[8192];
+    private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream(8192);
+
     /**
      * @param options                options provided by the Spark user; needed to both connect to ML and to query for data
      * @param initializationResponse
@@ -70,7 +76,8 @@ public class HubInputPartitionReader extends LoggingObject implements InputParti
             return false;
         }
 
-        this.currentRow = objectMapper.readTree(rows[rowIndex++]);
+        this.currentRow = readRow(rows[rowIndex]);
+        rows[rowIndex++] = null;
         return true;
     }
 
@@ -81,7 +88,7 @@ public class HubInputPartitionReader extends LoggingObject implements InputParti
      */
     @Override
     public InternalRow get() {
-        return jsonRowParser.parseJsonRow(currentRow.toString()).head();
+        return jsonRowParser.parseJsonRow(currentRow).head();
     }
 
     @Override
@@ -89,6 +96,25 @@ public class HubInputPartitionReader extends LoggingObject implements InputParti
         logger.debug("Closing");
     }
 
+    /**
+     * Reads all the bytes of a row and closes its stream. The resulting array is sized to the row so that it can be
+     * handed as-is to the Spark JSON parser.
+     *
+     * @param row
+     * @return
+     * @throws IOException
+     */
+    private byte[] readRow(InputStream row) throws IOException {
+        try (InputStream input = row) {
+            rowBuffer.reset();
+            int count;
+            while ((count = input.read(readBuffer)) != -1) {
+                rowBuffer.write(readBuffer, 0, count);
+            }
+            return rowBuffer.toByteArray();
+        }
+    }
+
     private ObjectNode buildEndpointConstants(Map<String, String> options, JsonNode initializationResponse, int partitionNumber) {
         ObjectNode endpointConstants = objectMapper.createObjectNode();
         endpointConstants.set("initializationResponse", initializationResponse);
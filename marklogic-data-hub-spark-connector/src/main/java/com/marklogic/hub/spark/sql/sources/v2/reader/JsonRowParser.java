@@ -13,14 +13,21 @@ import scala.Function2;
 import scala.collection.Seq;
 import scala.compat.java8.JFunction;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
- * Utility class for using Scala's JacksonParser to parse a string of JSON into an InternalRow.
+ * Utility class for using Scala's JacksonParser to parse JSON into an InternalRow. JSON can be provided either as a
+ * string or as the raw UTF-8 bytes of a row; the latter avoids building an intermediate string or tree, such that the
+ * row is only parsed once.
  */
 public class JsonRowParser {
 
     private final JacksonParser jacksonParser;
     private final Function2<JsonFactory, String, JsonParser> jsonParserCreator;
     private final Function1<String, UTF8String> utf8StringCreator;
+    private final Function2<JsonFactory, byte[], JsonParser> bytesParserCreator;
+    private final Function1<byte[], UTF8String> bytesUtf8StringCreator;
 
     public JsonRowParser(StructType sparkSchema) {
         JSONOptions jsonOptions = new JSONOptions(new scala.collection.immutable.HashMap<>(), "", "");
@@ -30,9 +37,25 @@ public class JsonRowParser {
         // Function1 and Function2 interfaces
         this.jsonParserCreator = JFunction.func((jsonFactory, someString) -> CreateJacksonParser.string(jsonFactory, someString));
         this.utf8StringCreator = JFunction.func((someString) -> UTF8String.fromString(someString));
+        this.bytesParserCreator = JFunction.func((jsonFactory, bytes) -> {
+            try {
+                return jsonFactory.createParser(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        this.bytesUtf8StringCreator = JFunction.func((bytes) -> UTF8String.fromBytes(bytes));
     }
 
     public Seq<InternalRow> parseJsonRow(String json) {
         return this.jacksonParser.parse(json, this.jsonParserCreator, this.utf8StringCreator);
     }
+
+    /**
+     * @param json the UTF-8 encoded bytes of a JSON object
+     * @return
+     */
+    public Seq<InternalRow> parseJsonRow(byte[] json) {
+        return this.jacksonParser.parse(json, this.bytesParserCreator, this.bytesUtf8StringCreator);
+    }
 }
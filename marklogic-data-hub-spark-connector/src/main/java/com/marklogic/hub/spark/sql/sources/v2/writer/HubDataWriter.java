@@ -19,25 +19,22 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.marklogic.client.dataservices.IOEndpoint;
 import com.marklogic.client.dataservices.InputCaller;
 import com.marklogic.client.ext.helper.LoggingObject;
+import com.marklogic.client.io.BytesHandle;
 import com.marklogic.client.io.Format;
 import com.marklogic.client.io.JacksonHandle;
 import com.marklogic.client.io.StringHandle;
 import com.marklogic.hub.HubClient;
 import org.apache.spark.sql.catalyst.InternalRow;
-import org.apache.spark.sql.catalyst.json.JSONOptions;
-import org.apache.spark.sql.catalyst.json.JacksonGenerator;
-import org.apache.spark.sql.catalyst.util.DateTimeUtils;
 import org.apache.spark.sql.sources.v2.writer.DataWriter;
 import org.apache.spark.sql.sources.v2.writer.WriterCommitMessage;
 import org.apache.spark.sql.types.StructType;
 
-import java.io.StringWriter;
 import java.util.Map;
 
 public class HubDataWriter extends LoggingObject implements DataWriter<InternalRow> {
 
-    private InputCaller.BulkInputCaller<String> bulkInputCaller;
-    private StructType sparkSchema;
+    private InputCaller.BulkInputCaller<byte[]> bulkInputCaller;
+    private JsonRowSerializer jsonRowSerializer;
 
     private Throwable writeException;
 
@@ -48,14 +45,14 @@ public class HubDataWriter extends LoggingObject implements DataWriter<InternalR
      * @param endpointParams
      */
     public HubDataWriter(HubClient hubClient, StructType schema, Map<String, String> options, JsonNode endpointParams) {
-        this.sparkSchema = schema;
+        this.jsonRowSerializer = new JsonRowSerializer(schema);
 
         final String apiPath = endpointParams.get("apiPath").asText();
         logger.info("Will write to endpoint defined by: " + apiPath);
-        InputCaller<String> inputCaller = InputCaller.on(
+        InputCaller<byte[]> inputCaller = InputCaller.on(
             hubClient.getStagingClient(),
             hubClient.getModulesClient().newJSONDocumentManager().read(apiPath, new StringHandle()),
-            new StringHandle().withFormat(Format.JSON)
+            new BytesHandle().withFormat(Format.JSON)
         );
 
         IOEndpoint.CallContext callContext = inputCaller.newCallContext();
@@ -71,13 +68,14 @@ public class HubDataWriter extends LoggingObject implements DataWriter<InternalR
 
     @Override
     public void write(InternalRow record) {
-        bulkInputCaller.accept(convertRowToJSONString(record));
+        bulkInputCaller.accept(jsonRowSerializer.serialize(record));
     }
 
     @Override
     public WriterCommitMessage commit() {
         logger.info("Committing; awaiting completion of all writes");
         bulkInputCaller.awaitCompletion();
+        jsonRowSerializer.close();
         if (writeException != null) {
             logger.info("At least one write failed");
             return new AtLeastOneWriteFailedMessage();
@@ -96,6 +94,8 @@ public class HubDataWriter extends LoggingObject implements DataWriter<InternalR
             logger.info("Finished interrupting BulkInputCaller");
         } catch (Exception ex) {
             logger.warn("Unexpected error while interrupting BulkInputCaller: " + ex.getMessage(), ex);
+        } finally {
+            jsonRowSerializer.close();
         }
     }
 
@@ -108,17 +108,4 @@ public class HubDataWriter extends LoggingObject implements DataWriter<InternalR
             return IOEndpoint.BulkIOEndpointCaller.ErrorDisposition.SKIP_CALL;
         });
     }
-
-    private String convertRowToJSONString(InternalRow record) {
-        StringWriter jsonObjectWriter = new StringWriter();
-        scala.collection.immutable.Map<String, String> emptyMap = scala.collection.immutable.Map$.MODULE$.empty();
-        JacksonGenerator jacksonGenerator = new JacksonGenerator(
-            sparkSchema,
-            jsonObjectWriter,
-            new JSONOptions(emptyMap, DateTimeUtils.TimeZoneUTC().getID(), "")
-        );
-        jacksonGenerator.write(record);
-        jacksonGenerator.flush();
-        return jsonObjectWriter.toString();
-    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.spark.sql.sources.v2.writer;
+
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.json.JSONOptions;
+import org.apache.spark.sql.catalyst.json.JacksonGenerator;
+import org.apache.spark.sql.catalyst.util.DateTimeUtils;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes InternalRows into UTF-8 encoded JSON objects. A single JacksonGenerator and output buffer are created
+ * when this is constructed and then reused for every row, instead of creating a new writer, options and generator per
+ * row. Spark creates a DataWriter for each partition, and a partition is written by a single thread, so an instance
+ * of this is expected to be owned by a single DataWriter and is not thread-safe.
+ */
+public class JsonRowSerializer {
+
+    private final ByteArrayOutputStream outputBuffer;
+    private final JacksonGenerator jacksonGenerator;
+
+    public JsonRowSerializer(StructType sparkSchema) {
+        this(sparkSchema, 1024);
+    }
+
+    /**
+     * @param sparkSchema
+     * @param initialBufferSize initial size of the reusable output buffer; the buffer grows to fit the largest row
+     *                          serialized so far
+     */
+    public JsonRowSerializer(StructType sparkSchema, int initialBufferSize) {
+        this.outputBuffer = new ByteArrayOutputStream(initialBufferSize);
+        scala.collection.immutable.Map<String, String> emptyMap = scala.collection.immutable.Map$.MODULE$.empty();
+        this.jacksonGenerator = new JacksonGenerator(
+            sparkSchema,
+            new OutputStreamWriter(outputBuffer, StandardCharsets.UTF_8),
+            new JSONOptions(emptyMap, DateTimeUtils.TimeZoneUTC().getID(), "")
+        );
+    }
+
+    /**
+     * @param record
+     * @return a new array containing the JSON serialization of the given row; the array is not retained by this
+     * object, so it is safe to hand off to a BulkInputCaller that buffers rows before sending them
+     */
+    public byte[] serialize(InternalRow record) {
+        outputBuffer.reset();
+        jacksonGenerator.write(record);
+        jacksonGenerator.flush();
+        return outputBuffer.toByteArray();
+    }
+
+    public void close() {
+        jacksonGenerator.close();
+    }
+}
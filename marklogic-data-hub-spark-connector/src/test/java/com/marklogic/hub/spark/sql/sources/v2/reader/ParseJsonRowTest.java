@@ -7,6 +7,7 @@ import org.apache.spark.sql.types.StructField;
 import org.apache.spark.sql.types.StructType;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -37,4 +38,20 @@ public class ParseJsonRowTest {
         assertEquals("world", strings.get(1).toString());
     }
 
+    @Test
+    void parseBytes() {
+        Metadata metadata = new Metadata();
+        StructType sparkSchema = new StructType(new StructField[]{
+            new StructField("customerId", DataTypes.IntegerType, false, metadata),
+            new StructField("name", DataTypes.StringType, true, metadata)
+        });
+
+        byte[] json = "{ \"customerId\": 456, \"name\": \"Jan\u00e9\" }".getBytes(StandardCharsets.UTF_8);
+
+        InternalRow row = new JsonRowParser(sparkSchema).parseJsonRow(json).head();
+
+        assertEquals(456, row.getInt(0));
+        assertEquals("Jan\u00e9", row.getUTF8String(1).toString());
+    }
+
 }
@@ -0,0 +1,45 @@
+package com.marklogic.hub.spark.sql.sources.v2.writer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.Metadata;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.unsafe.types.UTF8String;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+public class JsonRowSerializerTest {
+
+    /**
+     * Verifies that the reused generator produces a separate, complete JSON object for each row, with nothing from
+     * the previous row left in the buffer.
+     */
+    @Test
+    void serializeMultipleRows() throws IOException {
+        Metadata metadata = new Metadata();
+        StructType sparkSchema = new StructType(new StructField[]{
+            new StructField("customerId", DataTypes.IntegerType, false, metadata),
+            new StructField("name", DataTypes.StringType, true, metadata)
+        });
+
+        // Use a tiny initial buffer to verify that it grows as needed
+        JsonRowSerializer serializer = new JsonRowSerializer(sparkSchema, 4);
+        byte[] first = serializer.serialize(new GenericInternalRow(new Object[]{1, UTF8String.fromString("Jan\u00e9")}));
+        byte[] second = serializer.serialize(new GenericInternalRow(new Object[]{2, null}));
+        serializer.close();
+
+        assertNotSame(first, second);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode firstRow = mapper.readTree(first);
+        assertEquals(1, firstRow.get("customerId").asInt());
+        assertEquals("Jan\u00e9", firstRow.get("name").asText());
+        assertEquals("{\"customerId\":2}", mapper.readTree(second).toString());
+    }
+}
@@ -547,6 +547,13 @@ public interface HubConfig {
      */
     String getHubLogLevel();
 
+    /**
+     * Gets the number of calls that are made concurrently when loading user artifacts; set via the
+     * mlLoadUserArtifactsThreadCount property
+     * @return the number of threads used for loading user artifacts
+     */
+    int getLoadUserArtifactsThreadCount();
+
     /**
      * Gets a new DatabaseClient that queries the staging database and appserver
      * @return A client that accesses the hub's staging appserver and staging database.
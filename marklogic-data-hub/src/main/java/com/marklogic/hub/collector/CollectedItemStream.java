@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.collector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Iterator over collected items that are read off of a collector response while the collector is still returning
+ * them. A single producer thread reads one item per line from the given reader and puts it into a bounded buffer;
+ * when the buffer is full, the producer blocks, which in turn stops reading from the response. A consumer - typically
+ * the thread that a QueryBatcher uses to iterate over items - blocks in hasNext() until either an item is available
+ * or the stream has been fully read, has failed, or has been cancelled.
+ *
+ * Only a single consumer is supported, which matches how a QueryBatcher consumes an Iterator.
+ */
+public class CollectedItemStream implements Iterator<String>, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(CollectedItemStream.class.getName());
+
+    // Marks the end of the stream in the buffer; compared by reference, so it can never collide with a real item
+    private static final String END_OF_STREAM = new String("");
+
+    private final BlockingQueue<String> buffer;
+    private final Runnable onCancel;
+    private final Thread producer;
+
+    private final AtomicLong collectedCount = new AtomicLong(0);
+    private final AtomicLong consumedCount = new AtomicLong(0);
+    private final AtomicBoolean complete = new AtomicBoolean(false);
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile Exception failure;
+
+    private String nextItem;
+    private boolean exhausted = false;
+
+    /**
+     * @param reader     source of the items, one per line; closed once it has been fully read or the stream is cancelled
+     * @param bufferSize maximum number of items that will be read ahead of the consumer
+     * @param onCancel   optional action to run when the stream is cancelled, such as cancelling the underlying HTTP call
+     *                   so that the producer thread is no longer blocked on reading the response
+     */
+    public CollectedItemStream(BufferedReader reader, int bufferSize, Runnable onCancel) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size for collected items must be at least one");
+        }
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.onCancel = onCancel;
+        this.producer = new Thread(() -> readItems(reader), "hub-collector-stream");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void readItems(BufferedReader reader) {
+        try {
+            String line;
+            while (!cancelled.get() && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                buffer.put(line);
+                collectedCount.incrementAndGet();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            // An IOException is expected when the underlying call is cancelled; only a genuine read failure is retained
+            if (!cancelled.get()) {
+                LOG.log(Level.SEVERE, "Unable to read collected items: " + ex.getMessage(), ex);
+                failure = ex;
+            }
+        } finally {
+            complete.set(true);
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+            signalEndOfStream();
+        }
+    }
+
+    /**
+     * Puts the end-of-stream marker into the buffer, waiting for the consumer to make room if needed. If the stream has
+     * been cancelled, the buffer is cleared first, as the consumer is no longer interested in the remaining items.
+     */
+    private void signalEndOfStream() {
+        while (true) {
+            if (cancelled.get()) {
+                buffer.clear();
+            }
+            try {
+                buffer.put(END_OF_STREAM);
+                return;
+            } catch (InterruptedException ex) {
+                if (cancelled.get()) {
+                    buffer.clear();
+                    buffer.offer(END_OF_STREAM);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextItem != null) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        try {
+            String item = buffer.take();
+            if (item == END_OF_STREAM) {
+                exhausted = true;
+                return false;
+            }
+            nextItem = item;
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exhausted = true;
+            return false;
+        }
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String item = nextItem;
+        nextItem = null;
+        consumedCount.incrementAndGet();
+        return item;
+    }
+
+    /**
+     * Stops reading from the collector response and causes hasNext() to return false once the consumer drains whatever
+     * end-of-stream marker is put in the buffer.
+     */
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) {
+            if (onCancel != null) {
+                try {
+                    onCancel.run();
+                } catch (Exception ex) {
+                    LOG.warning("Unable to cancel collector request: " + ex.getMessage());
+                }
+            }
+            buffer.clear();
+            producer.interrupt();
+        }
+    }
+
+    /**
+     * Cancels the stream if it has not yet been fully read.
+     */
+    @Override
+    public void close() {
+        if (!complete.get()) {
+            cancel();
+        }
+    }
+
+    /**
+     * Blocks until the producer thread has finished reading the collector response.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCollection() throws InterruptedException {
+        producer.join();
+    }
+
+    /**
+     * @return the number of items read from the collector response so far; once isComplete() returns true, this is the
+     * total number of items collected
+     */
+    public long getCollectedCount() {
+        return collectedCount.get();
+    }
+
+    /**
+     * @return the number of items handed to the consumer so far
+     */
+    public long getConsumedCount() {
+        return consumedCount.get();
+    }
+
+    public boolean isComplete() {
+        return complete.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return the exception that caused reading the collector response to fail, or null if no failure occurred
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+}
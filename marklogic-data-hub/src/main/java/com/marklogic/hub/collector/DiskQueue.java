@@ -24,24 +24,39 @@
  */
 package com.marklogic.hub.collector;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.text.MessageFormat;
 import java.util.AbstractQueue;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A queue that writes extra elements to disk, and reads them in as needed.
  *
- * This implementation is optimized for being filled once (ie by the iterator in
- * a reducer) and then incrementally read. So it wouldn't work very well if
- * reads/writes were happening simultaneously, once anything had spilled to
- * disk.
+ * The first maxInMemorySize elements are kept in memory. Once that limit is reached, elements are appended to
+ * memory-mapped segment files as length-prefixed UTF-8 records; each segment is a fixed-size file that is mapped once,
+ * so that writing an element encodes it directly into the mapped file, and reading an element decodes it directly
+ * from the mapped file into a String. Segments that have been fully read are recycled for subsequent writes instead of
+ * being deleted and recreated.
+ *
+ * This implementation is optimized for being filled once (e.g. by a collector) and then incrementally read, though
+ * reads and writes may be interleaved. Like the rest of this class, the iterator consumes the elements it returns, so
+ * a queue can only be iterated over once. This class is not thread-safe.
  *
  * @param <E> - A Serializable Class
  */
@@ -49,32 +64,34 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
 
     private static final Logger LOG = Logger.getLogger(DiskQueue.class.getName());
 
-    private static final float DEFAULT_REFILL_RATIO = 0.75f;
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
 
-    // The memoryQueue represents the head of the queue. It can also be the tail,
-    // if nothing has spilled over onto the disk.
-    private MemoryQueue<String> memoryQueue;
+    private static final int LENGTH_PREFIX_SIZE = 4;
 
-    private Iterator<String> memoryIterator;
+    // Number of fully-read segments kept around for reuse
+    private static final int MAX_SPARE_SEGMENTS = 2;
 
-    // Percentage of memory queue used/capacity that triggers a refill from disk.
-    private float refillMemoryRatio;
+    // The memoryQueue represents the head of the queue. It can also be the tail, if nothing has spilled over onto
+    // the disk.
+    private final ArrayDeque<String> memoryQueue;
+    private final int maxInMemorySize;
 
-    // Number of elements in the backing store file on disk.
-    private int fileElementCount = 0;
+    private final File tempDir;
+    private final int segmentSize;
 
-    private File tempDir;
+    // The first segment is read from, and the last segment is written to
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<Segment> spareSegments = new ArrayDeque<>();
 
-    private BufferedWriter fileOut;
-    private BufferedReader fileIn;
+    // Number of elements in the segments on disk
+    private long fileElementCount = 0;
 
-    // When moving elements from disk to memory, we don't know whether the memory
-    // queue has space until the offer is rejected. So rather than trying to push
-    // back an element into the file, just cache it in cachedElement.
-    private String cachedElement;
-    private File fileQueue;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
-    private int nextCount = 0;
+    // Reused for decoding each element read from disk
+    private byte[] readBuffer = new byte[256];
 
     /**
      * Construct a disk-backed queue that keeps at most
@@ -86,7 +103,6 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
         this(maxInMemorySize, null);
     }
 
-
     /**
      * Construct a disk-backed queue that keeps at most
      * <code>maxInMemorySize</code> elements in memory.
@@ -95,6 +111,16 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
      * @param tempDir Directory where queue temporary files will be written to.
      */
     public DiskQueue(int maxInMemorySize, File tempDir) {
+        this(maxInMemorySize, tempDir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxInMemorySize Maximum number of elements to keep in memory.
+     * @param tempDir Directory where segment files will be written to; defaults to the system temporary directory.
+     * @param segmentSize Size in bytes of each segment file; an element too large for a segment of this size is
+     *                    written to a segment large enough to hold it.
+     */
+    public DiskQueue(int maxInMemorySize, File tempDir, int segmentSize) {
         super();
         if (maxInMemorySize < 1) {
             throw new InvalidParameterException(DiskQueue.class.getSimpleName() + " max in-memory size must be at least one");
@@ -102,73 +128,37 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
         if (tempDir != null && !(tempDir.exists() && tempDir.isDirectory() && tempDir.canWrite())) {
             throw new InvalidParameterException(DiskQueue.class.getSimpleName() + " temporary directory must exist and be writable");
         }
+        if (segmentSize <= LENGTH_PREFIX_SIZE) {
+            throw new InvalidParameterException(DiskQueue.class.getSimpleName() + " segment size must be greater than " + LENGTH_PREFIX_SIZE);
+        }
 
         this.tempDir = tempDir;
-        memoryQueue = new MemoryQueue<>(maxInMemorySize);
-//        memoryIterator = memoryQueue.iterator();
-        refillMemoryRatio = DEFAULT_REFILL_RATIO;
+        this.maxInMemorySize = maxInMemorySize;
+        this.segmentSize = segmentSize;
+        memoryQueue = new ArrayDeque<>(Math.min(maxInMemorySize, 10000));
     }
 
+    /**
+     * Closes and deletes any segment files.
+     */
     @Override
     public void close() {
-        if (closeFile()) {
-            LOG.warning(MessageFormat.format("{0} still had open file", com.marklogic.hub.legacy.collector.DiskQueue.class.getSimpleName()));
+        if (closeSegments()) {
+            LOG.fine(MessageFormat.format("{0} still had open segment files", DiskQueue.class.getSimpleName()));
         }
     }
 
     /**
-     * Make sure the file streams are all closed down, the temp file is closed,
-     * and the temp file has been deleted.
-     *
-     * @return true if we had to close down the file.
+     * @return true if any segment had to be closed
      */
-    private boolean closeFile() {
-        if (fileQueue == null) {
-            return false;
-        }
-
-        closeQuietly(fileIn);
-        fileIn = null;
-        cachedElement = null;
-
-        closeQuietly(fileOut);
-        fileOut = null;
-
+    private boolean closeSegments() {
+        boolean hadSegments = !segments.isEmpty() || !spareSegments.isEmpty();
+        segments.forEach(Segment::close);
+        segments.clear();
+        spareSegments.forEach(Segment::close);
+        spareSegments.clear();
         fileElementCount = 0;
-
-        fileQueue.delete();
-        fileQueue = null;
-        return true;
-    }
-
-    private static boolean isEmpty(final CharSequence value) {
-        return value == null || value.length() == 0;
-    }
-
-    private static void closeQuietly(Closeable obj) {
-        if (obj != null) {
-            try {
-                obj.close();
-            } catch (IOException ex) {
-                // Ignore
-            }
-        }
-    }
-
-    private void openFile() throws IOException {
-        if (fileQueue == null) {
-            fileQueue = File.createTempFile(DiskQueue.class.getSimpleName() + "-backingstore-", null, tempDir);
-            fileQueue.deleteOnExit();
-            LOG.log(Level.INFO, "created backing store {0}", fileQueue.getAbsolutePath());
-            fileOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileQueue), StandardCharsets.UTF_8));
-
-            // Flush output file, so there's something written when we open the input stream.
-            fileOut.flush();
-
-            fileIn = new BufferedReader( new InputStreamReader(
-                new FileInputStream(fileQueue), "UTF8")
-            );
-        }
+        return hadSegments;
     }
 
     @Override
@@ -178,7 +168,12 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
 
     @Override
     public int size() {
-        return memoryQueue.size() + fileElementCount + (cachedElement != null ? 1 : 0);
+        return (int) Math.min(Integer.MAX_VALUE, memoryQueue.size() + fileElementCount);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return memoryQueue.isEmpty() && fileElementCount == 0;
     }
 
     @Override
@@ -187,47 +182,35 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
             throw new NullPointerException("Element cannot be null for AbstractQueue");
         }
 
-        boolean hasFileQueue = fileQueue != null;
-        boolean offerRejected = false;
-        if (!hasFileQueue) {
-            offerRejected = !memoryQueue.offer(element);
-            if (offerRejected) {
-                memoryIterator = memoryQueue.iterator();
-            }
+        // Once anything is on disk, every new element must go to disk as well to preserve ordering
+        if (fileElementCount == 0 && memoryQueue.size() < maxInMemorySize) {
+            memoryQueue.offer(element);
+            return true;
         }
 
-        // If there's anything in the file, or the queue is full, then we have to write to the file.
-        if (hasFileQueue || offerRejected) {
-            try {
-                openFile();
-                fileOut.write(element);
-                fileOut.newLine();
-                fileElementCount++;
-            } catch (IOException e) {
-                LOG.severe(MessageFormat.format("Error writing to {0} backing store", DiskQueue.class.getSimpleName()));
-                return false;
-            }
+        try {
+            writeToDisk(element);
+            return true;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, MessageFormat.format("Error writing to {0} backing store", DiskQueue.class.getSimpleName()), e);
+            return false;
         }
-
-        return true;
     }
 
     @Override
     public String peek() {
-        loadMemoryQueue();
-        return memoryQueue.peek();
-    }
-
-    @Override
-    public String remove() {
-        loadMemoryQueue();
-        return memoryQueue.remove();
+        if (!memoryQueue.isEmpty()) {
+            return memoryQueue.peek();
+        }
+        return fileElementCount > 0 ? readFromDisk(false) : null;
     }
 
     @Override
     public String poll() {
-        loadMemoryQueue();
-        return memoryQueue.poll();
+        if (!memoryQueue.isEmpty()) {
+            return memoryQueue.poll();
+        }
+        return fileElementCount > 0 ? readFromDisk(true) : null;
     }
 
     /* (non-Javadoc)
@@ -238,168 +221,152 @@ public class DiskQueue<E extends Serializable> extends AbstractQueue<String> imp
     @Override
     public void clear() {
         memoryQueue.clear();
-        cachedElement = null;
-        closeFile();
+        closeSegments();
     }
 
-    private void loadMemoryQueue() {
-        // use the memory queue as our buffer, so only load it up when it's below capacity.
-        if (memoryQueue.size() / (float) memoryQueue.getCapacity() >= refillMemoryRatio) {
-            return;
-        }
-
-        // See if we have one saved element from the previous read request
-        if (cachedElement != null && memoryQueue.offer(cachedElement)) {
-            cachedElement = null;
-        }
-
-        // Now see if we have anything on disk
-        if (fileQueue != null) {
-            try {
-                // Since we buffer writes, we need to make sure everything has
-                // been written before we start reading.
-                fileOut.flush();
-
-                int usedCount = 0;
-                while (fileElementCount > 0) {
-                    @SuppressWarnings("unchecked")
-                    String nextFileElement = fileIn.readLine();
-                    fileElementCount--;
-                    usedCount++;
-
-                    if (!isEmpty(nextFileElement) && !memoryQueue.offer(nextFileElement)) {
-                        //memory queue is full. Cache this entry and jump out
-                        cachedElement = nextFileElement;
-                        memoryIterator = memoryQueue.iterator();
-                        return;
-                    }
-                }
-
-                memoryIterator = memoryQueue.iterator();
-
-                // Nothing left in the file, so close/delete it.
-                closeFile();
-
-                // file queue is empty, so could reset length of file, read/write offsets
-                // to start from zero instead of closing file (but for current use case of fill once, drain
-                // once this works just fine)
-            } catch (IOException e) {
-                LOG.severe(MessageFormat.format("Error reading from {0} backing store", DiskQueue.class.getSimpleName()));
+    private void writeToDisk(String element) throws IOException {
+        Segment segment = segments.peekLast();
+        if (segment == null || !encode(element, segment.buffer)) {
+            int requiredSize = LENGTH_PREFIX_SIZE + (int) Math.ceil(element.length() * (double) encoder.maxBytesPerChar());
+            segment = newSegment(requiredSize);
+            segments.addLast(segment);
+            if (!encode(element, segment.buffer)) {
+                throw new IOException("Unable to write element to new segment of size " + segment.buffer.capacity());
             }
         }
+        fileElementCount++;
     }
 
-    private class Itr implements Iterator<String> {
-
-        public Itr() {
-            memoryIterator = memoryQueue.iterator();
-        }
-        public boolean hasNext() {
-            return memoryIterator.hasNext() || fileElementCount > 0 || cachedElement != null;
+    /**
+     * Encodes the element directly into the buffer, preceded by the number of bytes it was encoded into.
+     *
+     * @return false if the buffer does not have room for the element, in which case the buffer is left unchanged
+     */
+    private boolean encode(String element, ByteBuffer buffer) {
+        final int start = buffer.position();
+        if (buffer.remaining() < LENGTH_PREFIX_SIZE) {
+            return false;
         }
-
-        @SuppressWarnings("unchecked")
-        public String next() {
-            String next = memoryIterator.next();
-            if (!memoryIterator.hasNext() && (fileElementCount > 0 || cachedElement != null)) {
-                memoryQueue.clear();
-                loadMemoryQueue();
-            }
-            nextCount++;
-            return next;
+        buffer.position(start + LENGTH_PREFIX_SIZE);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(element), buffer, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(buffer);
         }
-
-        public void remove() {
-            memoryIterator.remove();
+        if (!result.isUnderflow()) {
+            buffer.position(start);
+            return false;
         }
-
-//        @Override
-//        @SuppressWarnings("unchecked")
-//        public void forEachRemaining(Consumer<String> consumer) {
-//            Objects.requireNonNull(consumer);
-//            final int size = ArrayList.this.size;
-//            int i = cursor;
-//            if (i >= size) {
-//                return;
-//            }
-//            final Object[] elementData = ArrayList.this.elementData;
-//            if (i >= elementData.length) {
-//                throw new ConcurrentModificationException();
-//            }
-//            while (i != size && modCount == expectedModCount) {
-//                consumer.accept((E) elementData[i++]);
-//            }
-//            // update once at end of iteration to reduce heap write traffic
-//            cursor = i;
-//            lastRet = i - 1;
-//            checkForComodification();
-//        }
+        buffer.putInt(start, buffer.position() - start - LENGTH_PREFIX_SIZE);
+        return true;
     }
 
-    private static class MemoryQueue<E> extends AbstractQueue<String> {
-
-        private final List<String> queue;
-        private final int capacity;
-
-        public MemoryQueue(int capacity) {
-            super();
-            this.capacity = capacity;
-            queue = new ArrayList<>(capacity);
+    private String readFromDisk(boolean consume) {
+        Segment segment = segments.peekFirst();
+        while (segment.readPosition >= segment.buffer.position()) {
+            // The segment has been fully read; it cannot be the last segment, as there are still elements on disk
+            recycle(segments.removeFirst());
+            segment = segments.peekFirst();
         }
 
-        @Override
-        public void clear() {
-            queue.clear();
+        final int length = segment.buffer.getInt(segment.readPosition);
+        if (readBuffer.length < length) {
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
         }
-
-        @Override
-        public Iterator<String> iterator() {
-            return queue.iterator();
+        segment.reader.position(segment.readPosition + LENGTH_PREFIX_SIZE);
+        segment.reader.get(readBuffer, 0, length);
+        String element = new String(readBuffer, 0, length, StandardCharsets.UTF_8);
+
+        if (consume) {
+            segment.readPosition += LENGTH_PREFIX_SIZE + length;
+            fileElementCount--;
+            if (fileElementCount == 0) {
+                // Everything on disk has been read, so every segment can be reused from the start
+                while (!segments.isEmpty()) {
+                    recycle(segments.removeFirst());
+                }
+            }
         }
+        return element;
+    }
 
-        public int getCapacity() {
-            return capacity;
+    private Segment newSegment(int requiredSize) throws IOException {
+        if (requiredSize <= segmentSize && !spareSegments.isEmpty()) {
+            return spareSegments.removeFirst();
         }
+        File file = File.createTempFile(DiskQueue.class.getSimpleName() + "-segment-", null, tempDir);
+        file.deleteOnExit();
+        LOG.log(Level.FINE, "created backing store segment {0}", file.getAbsolutePath());
+        return new Segment(file, Math.max(segmentSize, requiredSize));
+    }
 
-        @Override
-        public int size() {
-            return queue.size();
+    private void recycle(Segment segment) {
+        if (segment.buffer.capacity() == segmentSize && spareSegments.size() < MAX_SPARE_SEGMENTS) {
+            segment.reset();
+            spareSegments.addLast(segment);
+        } else {
+            segment.close();
         }
+    }
 
-        @Override
-        public boolean offer(String o) {
-            if (o == null) {
-                throw new NullPointerException();
-            } else if (queue.size() >= capacity) {
-                return false;
-            } else {
-                queue.add(o);
-                return true;
+    /**
+     * A file mapped into memory in its entirety. The position of the buffer is the position at which the next element
+     * is written.
+     */
+    private static class Segment {
+
+        private final File file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // Separate view of the buffer for bulk reads, so that reading does not affect the write position
+        private final ByteBuffer reader;
+        private int readPosition = 0;
+
+        Segment(File file, int size) throws IOException {
+            this.file = file;
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                this.channel = randomAccessFile.getChannel();
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException ex) {
+                randomAccessFile.close();
+                file.delete();
+                throw ex;
             }
+            this.reader = buffer.duplicate();
         }
 
-        @Override
-        public String peek() {
-            if (queue.isEmpty()) {
-                return null;
-            } else {
-                return queue.get(0);
-            }
+        void reset() {
+            buffer.clear();
+            readPosition = 0;
         }
 
-        @Override
-        public String poll() {
-            if (queue.isEmpty()) {
-                return null;
-            } else {
-                return queue.remove(0);
+        void close() {
+            try {
+                // Closing the channel closes the file as well; the mapping itself is released once the buffer is
+                // garbage collected
+                channel.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+            if (!file.delete()) {
+                LOG.fine(MessageFormat.format("Unable to delete segment {0}; it will be deleted on exit", file.getAbsolutePath()));
             }
         }
+    }
+
+    private class Itr implements Iterator<String> {
+
+        public boolean hasNext() {
+            return !DiskQueue.this.isEmpty();
+        }
 
-        @Override
-        public String remove() {
-            return queue.remove(0);
+        public String next() {
+            String next = poll();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            return next;
         }
     }
-
 }
@@ -18,8 +18,10 @@ package com.marklogic.hub.collector.impl;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marklogic.client.DatabaseClient;
 import com.marklogic.hub.HubClient;
+import com.marklogic.hub.collector.CollectedItemStream;
 import com.marklogic.hub.collector.Collector;
 import com.marklogic.hub.collector.DiskQueue;
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -46,6 +48,46 @@ public class CollectorImpl implements Collector {
 
     @Override
     public DiskQueue<String> run(String flow, String step, Map<String, Object> options) {
+        try (Response response = executeRequest(flow, step, options).execute()) {
+            if (response.isSuccessful()) {
+                return readItems(response);
+            } else {
+                throw new RuntimeException(String.format("Unable to collect items to process for flow %s and step %s; cause: %s", flow, step, response.body().string()));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Unexpected IO exception when collecting items to process for flow %s and step %s; cause: %s", flow, step, ex));
+        }
+    }
+
+    /**
+     * Starts collecting items and returns as soon as the collector has responded successfully, instead of waiting for
+     * every item to be read. Items are then read off of the response by a separate thread into a buffer of at most
+     * bufferSize items, allowing a consumer to begin processing items while the collector is still returning them.
+     *
+     * @param flow       name of the flow
+     * @param step       number of the step in the flow
+     * @param options    options Map for running the step
+     * @param bufferSize maximum number of items to read ahead of the consumer
+     * @return a stream of the collected items; the caller is responsible for closing it
+     */
+    public CollectedItemStream stream(String flow, String step, Map<String, Object> options, int bufferSize) {
+        final Call call = executeRequest(flow, step, options);
+        try {
+            Response response = call.execute();
+            if (response.isSuccessful()) {
+                return new CollectedItemStream(new BufferedReader(response.body().charStream()), bufferSize, call::cancel);
+            }
+            try {
+                throw new RuntimeException(String.format("Unable to collect items to process for flow %s and step %s; cause: %s", flow, step, response.body().string()));
+            } finally {
+                response.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Unexpected IO exception when collecting items to process for flow %s and step %s; cause: %s", flow, step, ex));
+        }
+    }
+
+    private Call executeRequest(String flow, String step, Map<String, Object> options) {
         final DatabaseClient stagingClient = hubClient.getStagingClient();
 
         try {
@@ -69,13 +111,7 @@ public class CollectorImpl implements Collector {
              */
             OkHttpClient ok = (OkHttpClient) stagingClient.getClientImplementation();
             Request request = new Request.Builder().url(uriString).get().build();
-
-            Response response = ok.newCall(request).execute();
-            if (response.isSuccessful()) {
-                return readItems(response);
-            } else {
-                throw new RuntimeException(String.format("Unable to collect items to process for flow %s and step %s; cause: %s", flow, step, response.body().string()));
-            }
+            return ok.newCall(request);
         } catch (IOException ex) {
             throw new RuntimeException(String.format("Unexpected IO exception when collecting items to process for flow %s and step %s; cause: %s", flow, step, ex));
         }
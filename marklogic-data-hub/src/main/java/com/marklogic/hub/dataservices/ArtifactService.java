@@ -51,6 +51,7 @@ public interface ArtifactService {
             private BaseProxy.DBFunctionRequest req_setArtifact;
             private BaseProxy.DBFunctionRequest req_clearUserArtifacts;
             private BaseProxy.DBFunctionRequest req_getList;
+            private BaseProxy.DBFunctionRequest req_setArtifacts;
 
             private ArtifactServiceImpl(DatabaseClient dbClient, JSONWriteHandle servDecl) {
                 this.dbClient  = dbClient;
@@ -64,6 +65,8 @@ public interface ArtifactService {
                     "clearUserArtifacts.sjs", BaseProxy.ParameterValuesKind.NONE);
                 this.req_getList = this.baseProxy.request(
                     "getList.sjs", BaseProxy.ParameterValuesKind.SINGLE_ATOMIC);
+                this.req_setArtifacts = this.baseProxy.request(
+                    "setArtifacts.sjs", BaseProxy.ParameterValuesKind.SINGLE_NODE);
             }
 
             @Override
@@ -119,6 +122,21 @@ public interface ArtifactService {
                           ).responseSingle(false, Format.JSON)
                 );
             }
+
+            @Override
+            public com.fasterxml.jackson.databind.JsonNode setArtifacts(com.fasterxml.jackson.databind.JsonNode artifacts) {
+                return setArtifacts(
+                    this.req_setArtifacts.on(this.dbClient), artifacts
+                    );
+            }
+            private com.fasterxml.jackson.databind.JsonNode setArtifacts(BaseProxy.DBFunctionRequest request, com.fasterxml.jackson.databind.JsonNode artifacts) {
+              return BaseProxy.JsonDocumentType.toJsonNode(
+                request
+                      .withParams(
+                          BaseProxy.documentParam("artifacts", false, BaseProxy.JsonDocumentType.fromJsonNode(artifacts))
+                          ).responseSingle(false, Format.JSON)
+                );
+            }
         }
 
         return new ArtifactServiceImpl(db, serviceDeclaration);
@@ -158,4 +176,12 @@ public interface ArtifactService {
    */
     com.fasterxml.jackson.databind.JsonNode getList(String artifactType);
 
+  /**
+   * Set an array of artifacts in a single call; an artifact that is already stored with the same content is not set again
+   *
+   * @param artifacts	Array of objects, each with an artifactType, artifactName, and artifact property; a step is identified by its step definition type
+   * @return	Object with an 'updated' array and an 'unchanged' array, each containing the type and name of an artifact
+   */
+    com.fasterxml.jackson.databind.JsonNode setArtifacts(com.fasterxml.jackson.databind.JsonNode artifacts);
+
 }
@@ -54,6 +54,7 @@ public interface EntitySearchService {
             private BaseProxy.DBFunctionRequest req_saveSavedQuery;
             private BaseProxy.DBFunctionRequest req_getSavedQueries;
             private BaseProxy.DBFunctionRequest req_exportSearchAsCSV;
+            private BaseProxy.DBFunctionRequest req_exportSearchAsCSVPage;
             private BaseProxy.DBFunctionRequest req_getRecord;
             private BaseProxy.DBFunctionRequest req_getMatchingPropertyValues;
 
@@ -73,6 +74,8 @@ public interface EntitySearchService {
                     "getSavedQueries.sjs", BaseProxy.ParameterValuesKind.NONE);
                 this.req_exportSearchAsCSV = this.baseProxy.request(
                     "exportSearchAsCSV.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_MIXED);
+                this.req_exportSearchAsCSVPage = this.baseProxy.request(
+                    "exportSearchAsCSVPage.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_MIXED);
                 this.req_getRecord = this.baseProxy.request(
                     "getRecord.sjs", BaseProxy.ParameterValuesKind.SINGLE_ATOMIC);
                 this.req_getMatchingPropertyValues = this.baseProxy.request(
@@ -171,6 +174,30 @@ public interface EntitySearchService {
                 );
             }
 
+            @Override
+            public com.fasterxml.jackson.databind.JsonNode exportSearchAsCSVPage(String structuredQuery, String searchText, String queryOptions, String schemaName, String viewName, Long pageLength, com.fasterxml.jackson.databind.node.ArrayNode sortOrder, com.fasterxml.jackson.databind.JsonNode cursor, Boolean includeHeader, Stream<String> columns) {
+                return exportSearchAsCSVPage(
+                    this.req_exportSearchAsCSVPage.on(this.dbClient), structuredQuery, searchText, queryOptions, schemaName, viewName, pageLength, sortOrder, cursor, includeHeader, columns
+                    );
+            }
+            private com.fasterxml.jackson.databind.JsonNode exportSearchAsCSVPage(BaseProxy.DBFunctionRequest request, String structuredQuery, String searchText, String queryOptions, String schemaName, String viewName, Long pageLength, com.fasterxml.jackson.databind.node.ArrayNode sortOrder, com.fasterxml.jackson.databind.JsonNode cursor, Boolean includeHeader, Stream<String> columns) {
+              return BaseProxy.JsonDocumentType.toJsonNode(
+                request
+                      .withParams(
+                          BaseProxy.atomicParam("structuredQuery", false, BaseProxy.StringType.fromString(structuredQuery)),
+                          BaseProxy.atomicParam("searchText", true, BaseProxy.StringType.fromString(searchText)),
+                          BaseProxy.atomicParam("queryOptions", false, BaseProxy.StringType.fromString(queryOptions)),
+                          BaseProxy.atomicParam("schemaName", false, BaseProxy.StringType.fromString(schemaName)),
+                          BaseProxy.atomicParam("viewName", false, BaseProxy.StringType.fromString(viewName)),
+                          BaseProxy.atomicParam("pageLength", false, BaseProxy.LongType.fromLong(pageLength)),
+                          BaseProxy.documentParam("sortOrder", false, BaseProxy.ArrayType.fromArrayNode(sortOrder)),
+                          BaseProxy.documentParam("cursor", true, BaseProxy.JsonDocumentType.fromJsonNode(cursor)),
+                          BaseProxy.atomicParam("includeHeader", true, BaseProxy.BooleanType.fromBoolean(includeHeader)),
+                          BaseProxy.atomicParam("columns", false, BaseProxy.StringType.fromString(columns))
+                          ).responseSingle(false, Format.JSON)
+                );
+            }
+
             @Override
             public com.fasterxml.jackson.databind.JsonNode getRecord(String docUri) {
                 return getRecord(
@@ -260,6 +287,23 @@ public interface EntitySearchService {
    */
     java.io.Reader exportSearchAsCSV(String structuredQuery, String searchText, String queryOptions, String schemaName, String viewName, Long limit, com.fasterxml.jackson.databind.node.ArrayNode sortOrder, Stream<String> columns);
 
+  /**
+   * Invokes the exportSearchAsCSVPage operation on the database server
+   *
+   * @param structuredQuery	provides input
+   * @param searchText	provides input
+   * @param queryOptions	provides input
+   * @param schemaName	provides input
+   * @param viewName	provides input
+   * @param pageLength	provides input
+   * @param sortOrder	provides input
+   * @param cursor	provides input
+   * @param includeHeader	provides input
+   * @param columns	provides input
+   * @return	as output
+   */
+    com.fasterxml.jackson.databind.JsonNode exportSearchAsCSVPage(String structuredQuery, String searchText, String queryOptions, String schemaName, String viewName, Long pageLength, com.fasterxml.jackson.databind.node.ArrayNode sortOrder, com.fasterxml.jackson.databind.JsonNode cursor, Boolean includeHeader, Stream<String> columns);
+
   /**
    * Invokes the getRecord operation on the database server
    *
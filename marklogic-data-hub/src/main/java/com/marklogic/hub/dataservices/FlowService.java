@@ -56,6 +56,7 @@ public interface FlowService {
             private BaseProxy.DBFunctionRequest req_removeStepFromFlow;
             private BaseProxy.DBFunctionRequest req_createFlow;
             private BaseProxy.DBFunctionRequest req_getFullFlow;
+            private BaseProxy.DBFunctionRequest req_getFlows;
 
             private FlowServiceImpl(DatabaseClient dbClient, JSONWriteHandle servDecl) {
                 this.dbClient  = dbClient;
@@ -79,6 +80,8 @@ public interface FlowService {
                     "createFlow.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_ATOMICS);
                 this.req_getFullFlow = this.baseProxy.request(
                     "getFullFlow.sjs", BaseProxy.ParameterValuesKind.SINGLE_ATOMIC);
+                this.req_getFlows = this.baseProxy.request(
+                    "getFlows.sjs", BaseProxy.ParameterValuesKind.SINGLE_NODE);
             }
 
             @Override
@@ -216,6 +219,21 @@ public interface FlowService {
                           ).responseSingle(false, Format.JSON)
                 );
             }
+
+            @Override
+            public com.fasterxml.jackson.databind.JsonNode getFlows(com.fasterxml.jackson.databind.node.ArrayNode names) {
+                return getFlows(
+                    this.req_getFlows.on(this.dbClient), names
+                    );
+            }
+            private com.fasterxml.jackson.databind.JsonNode getFlows(BaseProxy.DBFunctionRequest request, com.fasterxml.jackson.databind.node.ArrayNode names) {
+              return BaseProxy.JsonDocumentType.toJsonNode(
+                request
+                      .withParams(
+                          BaseProxy.documentParam("names", true, BaseProxy.ArrayType.fromArrayNode(names))
+                          ).responseSingle(false, Format.JSON)
+                );
+            }
         }
 
         return new FlowServiceImpl(db, serviceDeclaration);
@@ -299,4 +317,12 @@ public interface FlowService {
    */
     com.fasterxml.jackson.databind.JsonNode getFullFlow(String flowName);
 
+  /**
+   * Invokes the getFlows operation on the database server
+   *
+   * @param names	Names of the flows to return; if not provided, all flows are returned
+   * @return	Return an array of flow documents; a flow that does not exist is not included
+   */
+    com.fasterxml.jackson.databind.JsonNode getFlows(com.fasterxml.jackson.databind.node.ArrayNode names);
+
 }
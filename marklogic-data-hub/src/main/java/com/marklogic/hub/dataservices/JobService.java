@@ -55,6 +55,8 @@ public interface JobService {
             private BaseProxy.DBFunctionRequest req_getMatchingPropertyValues;
             private BaseProxy.DBFunctionRequest req_finishJob;
             private BaseProxy.DBFunctionRequest req_findStepResponses;
+            private BaseProxy.DBFunctionRequest req_getCheckpoint;
+            private BaseProxy.DBFunctionRequest req_saveCheckpoint;
 
             private JobServiceImpl(DatabaseClient dbClient, JSONWriteHandle servDecl) {
                 this.dbClient  = dbClient;
@@ -76,6 +78,10 @@ public interface JobService {
                     "finishJob.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_ATOMICS);
                 this.req_findStepResponses = this.baseProxy.request(
                     "findStepResponses.sjs", BaseProxy.ParameterValuesKind.SINGLE_NODE);
+                this.req_getCheckpoint = this.baseProxy.request(
+                    "getCheckpoint.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_ATOMICS);
+                this.req_saveCheckpoint = this.baseProxy.request(
+                    "saveCheckpoint.sjs", BaseProxy.ParameterValuesKind.MULTIPLE_MIXED);
             }
 
             @Override
@@ -199,6 +205,37 @@ public interface JobService {
                           ).responseSingle(true, Format.JSON)
                 );
             }
+
+            @Override
+            public com.fasterxml.jackson.databind.JsonNode getCheckpoint(String jobId, String checkpointName) {
+                return getCheckpoint(
+                    this.req_getCheckpoint.on(this.dbClient), jobId, checkpointName
+                    );
+            }
+            private com.fasterxml.jackson.databind.JsonNode getCheckpoint(BaseProxy.DBFunctionRequest request, String jobId, String checkpointName) {
+              return BaseProxy.JsonDocumentType.toJsonNode(
+                request
+                      .withParams(
+                          BaseProxy.atomicParam("jobId", false, BaseProxy.StringType.fromString(jobId)),
+                          BaseProxy.atomicParam("checkpointName", false, BaseProxy.StringType.fromString(checkpointName))
+                          ).responseSingle(true, Format.JSON)
+                );
+            }
+
+            @Override
+            public void saveCheckpoint(String jobId, String checkpointName, com.fasterxml.jackson.databind.JsonNode checkpoint) {
+                saveCheckpoint(
+                    this.req_saveCheckpoint.on(this.dbClient), jobId, checkpointName, checkpoint
+                    );
+            }
+            private void saveCheckpoint(BaseProxy.DBFunctionRequest request, String jobId, String checkpointName, com.fasterxml.jackson.databind.JsonNode checkpoint) {
+              request
+                      .withParams(
+                          BaseProxy.atomicParam("jobId", false, BaseProxy.StringType.fromString(jobId)),
+                          BaseProxy.atomicParam("checkpointName", false, BaseProxy.StringType.fromString(checkpointName)),
+                          BaseProxy.documentParam("checkpoint", true, BaseProxy.JsonDocumentType.fromJsonNode(checkpoint))
+                          ).responseNone();
+            }
         }
 
         return new JobServiceImpl(db, serviceDeclaration);
@@ -274,4 +311,23 @@ public interface JobService {
    */
     com.fasterxml.jackson.databind.JsonNode findStepResponses(com.fasterxml.jackson.databind.JsonNode endpointConstants);
 
+  /**
+   * Get the checkpoint with the given name that was saved for the given job ID
+   *
+   * @param jobId	provides input
+   * @param checkpointName	provides input
+   * @return	as output
+   */
+    com.fasterxml.jackson.databind.JsonNode getCheckpoint(String jobId, String checkpointName);
+
+  /**
+   * Saves a checkpoint recording the progress of a job, so that the job can be resumed if it is interrupted
+   *
+   * @param jobId	provides input
+   * @param checkpointName	provides input
+   * @param checkpoint	provides input
+   * 
+   */
+    void saveCheckpoint(String jobId, String checkpointName, com.fasterxml.jackson.databind.JsonNode checkpoint);
+
 }
@@ -48,6 +48,7 @@ public interface StepRunnerService {
             private BaseProxy baseProxy;
 
             private BaseProxy.DBFunctionRequest req_processBatch;
+            private BaseProxy.DBFunctionRequest req_releaseStepOptions;
 
             private StepRunnerServiceImpl(DatabaseClient dbClient, JSONWriteHandle servDecl) {
                 this.dbClient  = dbClient;
@@ -55,6 +56,8 @@ public interface StepRunnerService {
 
                 this.req_processBatch = this.baseProxy.request(
                     "processBatch.sjs", BaseProxy.ParameterValuesKind.SINGLE_NODE);
+                this.req_releaseStepOptions = this.baseProxy.request(
+                    "releaseStepOptions.sjs", BaseProxy.ParameterValuesKind.SINGLE_ATOMIC);
             }
 
             @Override
@@ -71,6 +74,19 @@ public interface StepRunnerService {
                           ).responseSingle(false, Format.JSON)
                 );
             }
+
+            @Override
+            public void releaseStepOptions(String optionsKey) {
+                releaseStepOptions(
+                    this.req_releaseStepOptions.on(this.dbClient), optionsKey
+                    );
+            }
+            private void releaseStepOptions(BaseProxy.DBFunctionRequest request, String optionsKey) {
+              request
+                      .withParams(
+                          BaseProxy.atomicParam("optionsKey", false, BaseProxy.StringType.fromString(optionsKey))
+                          ).responseNone();
+            }
         }
 
         return new StepRunnerServiceImpl(db, serviceDeclaration);
@@ -84,4 +100,12 @@ public interface StepRunnerService {
    */
     com.fasterxml.jackson.databind.JsonNode processBatch(com.fasterxml.jackson.databind.JsonNode inputs);
 
+  /**
+   * Removes the step options cached for a step run by processBatch, once the step run has finished
+   *
+   * @param optionsKey	provides input
+   * 
+   */
+    void releaseStepOptions(String optionsKey);
+
 }
@@ -25,6 +25,7 @@ import com.marklogic.client.ext.es.GeneratedCode;
 import com.marklogic.hub.DatabaseKind;
 import com.marklogic.hub.HubConfig;
 import com.marklogic.hub.es.EntityServicesManager;
+import com.marklogic.hub.impl.EntityModelIndex;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +41,6 @@ import static java.util.stream.Collectors.toMap;
 
 
 public class GenerateHubTDETemplateCommand extends GenerateModelArtifactsCommand {
-    private static final String ENTITY_FILE_EXTENSION = ".entity.json";
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private HubConfig hubConfig;
@@ -77,37 +77,41 @@ public class GenerateHubTDETemplateCommand extends GenerateModelArtifactsCommand
                 logger.warn("About to generate a template for the following entities: {}",
                     this.entityNamesList.isEmpty() ? entityNameFileMap.keySet() : this.entityNamesList);
                 List<GeneratedCode> generatedCodes = new ArrayList<>();
-                for (File f : entityNameFileMap.values()) {
-                    File esModel;
-                    String modelName;
-                    try {
-                        //Write the ES model to a temp file
-                        String tempDir = System.getProperty("java.io.tmpdir");
-                        String fileName = f.getName();
-                        modelName = EntityServicesManager.extractEntityNameFromURI(fileName).get();
-                        esModel = new File(tempDir, fileName);
-                        String modelString = generateModel(f);
-                        if(modelString == null) {
-                            logger.warn(f.getName() + " is not deployed to the database");
+                // A single staging client is used to obtain every model, rather than one per entity model file
+                DatabaseClient stagingClient = hubConfig.newStagingClient();
+                try {
+                    for (File f : entityNameFileMap.values()) {
+                        String modelName = EntityServicesManager.extractEntityNameFromURI(f.getName()).get();
+                        // Skip models that were not requested before doing any work on them
+                        if (!this.entityNamesList.isEmpty() && !this.entityNamesList.contains(modelName)) {
                             continue;
                         }
-                        FileUtils.writeStringToFile(esModel, modelString);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Unable to generate ES model");
-                    }
+                        File esModel;
+                        try {
+                            //Write the ES model to a temp file
+                            String tempDir = System.getProperty("java.io.tmpdir");
+                            esModel = new File(tempDir, f.getName());
+                            String modelString = generateModel(stagingClient, f);
+                            if(modelString == null) {
+                                logger.warn(f.getName() + " is not deployed to the database");
+                                continue;
+                            }
+                            FileUtils.writeStringToFile(esModel, modelString);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Unable to generate ES model");
+                        }
 
-                    GeneratedCode code;
-                    try {
-                        code = loadModelDefinition(request, esModel, mgr);
-                    } catch (RuntimeException e) {
-                        throw new RuntimeException("Unable to read model definition from file: " + f.getAbsolutePath(), e);
-                    }
-                    finally {
-                        FileUtils.deleteQuietly(esModel);
-                    }
-                    if (this.entityNamesList.isEmpty() || this.entityNamesList.contains(modelName)) {
-                        generatedCodes.add(code);
+                        try {
+                            generatedCodes.add(loadModelDefinition(request, esModel, mgr));
+                        } catch (RuntimeException e) {
+                            throw new RuntimeException("Unable to read model definition from file: " + f.getAbsolutePath(), e);
+                        }
+                        finally {
+                            FileUtils.deleteQuietly(esModel);
+                        }
                     }
+                } finally {
+                    stagingClient.release();
                 }
                 for (GeneratedCode code: generatedCodes) {
                     generateExtractionTemplate(appConfig, code);
@@ -122,11 +126,11 @@ public class GenerateHubTDETemplateCommand extends GenerateModelArtifactsCommand
     }
 
     //Method to obtain es-style model
-    private String generateModel(File f) {
+    private String generateModel(DatabaseClient stagingClient, File f) {
         String xquery = "import module namespace hent = \"http://marklogic.com/data-hub/hub-entities\"\n" +
             "at \"/data-hub/5/impl/hub-entities.xqy\";\n" +
             String.format("hent:get-model(\"%s\")", extractEntityNameFromFilename(f.getName()).get());
-        try (EvalResultIterator resp = hubConfig.newStagingClient().newServerEval().xquery(xquery).eval()) {
+        try (EvalResultIterator resp = stagingClient.newServerEval().xquery(xquery).eval()) {
             if (resp.hasNext()) {
                 return resp.next().getString();
             }
@@ -171,13 +175,7 @@ public class GenerateHubTDETemplateCommand extends GenerateModelArtifactsCommand
     }
 
     protected List<File> findEntityFiles() {
-        List<File> entities = new ArrayList<>();
-        Path entitiesPath = hubConfig.getHubEntitiesDir();
-        File[] entityDefs = entitiesPath.toFile().listFiles(pathname -> pathname.toString().endsWith(ENTITY_FILE_EXTENSION) && !pathname.isHidden());
-        if (entityDefs != null) {
-            entities.addAll(Arrays.asList(entityDefs));
-        }
-        return entities;
+        return EntityModelIndex.forDirectory(hubConfig.getHubEntitiesDir()).getSnapshot().getModelFiles();
     }
 
     // Overriding to insert schemas into the final DB schemas folder.
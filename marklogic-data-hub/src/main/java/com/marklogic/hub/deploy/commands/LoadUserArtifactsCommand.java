@@ -36,7 +36,6 @@ import com.marklogic.hub.HubClient;
 import com.marklogic.hub.HubConfig;
 import com.marklogic.hub.dataservices.ArtifactService;
 import com.marklogic.hub.dataservices.ModelsService;
-import com.marklogic.hub.dataservices.StepService;
 import com.marklogic.mgmt.util.ObjectMapperFactory;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,7 +49,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -65,6 +68,8 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
     private DocumentPermissionsParser documentPermissionsParser = new DefaultDocumentPermissionsParser();
     private ObjectMapper objectMapper;
     private TokenReplacer tokenReplacer;
+    private int artifactBatchSize = 100;
+    private Integer threadCount;
 
     public LoadUserArtifactsCommand() {
         super();
@@ -98,37 +103,96 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
     /**
      * The CommandContext has no bearing on how user artifacts are loaded, so this method is easier to use when this
      * class is used outside a deployment context.
+     * <p>
+     * Artifacts are loaded in phases so that the dependencies between artifact types are respected - models are loaded
+     * before anything else, and step definitions are loaded before steps. The calls within a phase are made
+     * concurrently, with each artifact type being split into batches across the configured number of threads.
+     * <p>
+     * If any call fails, the remaining calls in its phase are cancelled, no further phases are run, and the exception
+     * thrown by the call is rethrown.
      */
     public void loadUserArtifacts() {
         HubClient hubClient = hubConfig.newHubClient();
+        ExecutorService executor = Executors.newFixedThreadPool(getThreadCount());
 
         try {
             long start = System.currentTimeMillis();
-            loadModels(hubClient);
+            ArrayNode models = readModels();
+            if (models.size() > 0) {
+                // Due to significant performance issues with loading entity models via xdmp.invoke plus the existence
+                // of pre and post commit triggers on entity models, separate calls are made to the staging and final
+                // app servers for saving entity models, as the saveModels endpoint will then not use an xdmp.invoke
+                List<Callable<Void>> modelTasks = new ArrayList<>();
+                modelTasks.add(() -> {
+                    ModelsService.on(hubClient.getStagingClient()).saveModels(models);
+                    return null;
+                });
+                modelTasks.add(() -> {
+                    ModelsService.on(hubClient.getFinalClient()).saveModels(models);
+                    return null;
+                });
+                invokeAll(executor, modelTasks);
+            }
             logger.info("Loaded models, time: " + (System.currentTimeMillis() - start) + "ms");
 
             start = System.currentTimeMillis();
-            loadLegacyMappings(hubClient);
-            loadFlows(hubClient);
-            loadStepDefinitions(hubClient);
-            loadSteps(hubClient);
-            logger.info("Loaded flows, mappings, step definitions and steps, time: " + (System.currentTimeMillis() - start) + "ms");
+            ArtifactLoadCounts counts = new ArtifactLoadCounts();
+            ArrayNode flows = objectMapper.createArrayNode();
+            addFlows(flows);
+            ArrayNode stepDefinitions = objectMapper.createArrayNode();
+            addStepDefinitions(stepDefinitions);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                loadLegacyMappings(hubClient);
+                return null;
+            });
+            tasks.addAll(newSetArtifactsTasks(hubClient, flows, counts));
+            tasks.addAll(newSetArtifactsTasks(hubClient, stepDefinitions, counts));
+            invokeAll(executor, tasks);
+
+            ArrayNode steps = objectMapper.createArrayNode();
+            addSteps(steps);
+            invokeAll(executor, newSetArtifactsTasks(hubClient, steps, counts));
+            logger.info(format("Loaded flows, mappings, step definitions and steps, time: %dms; %d artifacts were loaded and %d were unchanged",
+                System.currentTimeMillis() - start, counts.updated.get(), counts.unchanged.get()));
         }
-        catch (IOException e) {
-            throw new RuntimeException("Unable to load user artifacts, cause: " + e.getMessage(), e);
+        finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Due to significant performance issues with loading entity models via xdmp.invoke plus the existence of pre and
-     * post commit triggers on entity models, separate calls are made to the staging and final app servers for saving
-     * entity models. This avoids the performance issue, as the saveModels endpoint will not use an xdmp.invoke to
-     * save each model.
+     * Runs the given tasks concurrently and waits for all of them to finish.
      *
-     * @param hubClient
-     * @throws IOException
+     * @param executor
+     * @param tasks
+     * @throws RuntimeException if any task fails; the remaining tasks are cancelled
      */
-    private void loadModels(HubClient hubClient) throws IOException {
+    private void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<>();
+        tasks.forEach(task -> futures.add(executor.submit(task)));
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading user artifacts", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Unable to load user artifacts, cause: " + cause.getMessage(), cause);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private ArrayNode readModels() {
         final File modelsDir = hubConfig.getHubEntitiesDir().toFile();
         EntityDefModulesFinder modulesFinder = new EntityDefModulesFinder();
         logger.info("Loading models from directory " + modelsDir);
@@ -142,10 +206,7 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
                 throw new RuntimeException("Unable to read model file: " + r.getFilename() + "; cause: " + e.getMessage(), e);
             }
         });
-        if (modelsArray.size() > 0) {
-            ModelsService.on(hubClient.getStagingClient()).saveModels(modelsArray);
-            ModelsService.on(hubClient.getFinalClient()).saveModels(modelsArray);
-        }
+        return modelsArray;
     }
 
     /**
@@ -252,16 +313,74 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
     }
 
     /**
-     * Loads steps, where the assumption is that the name of each directory under the steps path corresponds to a step
-     * definition type. And thus each .step.json file in that directory should be loaded as a step.
+     * Splits the given artifacts into batches, so that a project with many artifacts does not require a call per
+     * artifact, while still spreading the artifacts across every thread. An artifact that is already stored with the
+     * same content is not saved again.
      *
      * @param hubClient
-     * @throws IOException
+     * @param artifacts
+     * @param counts
+     * @return a task for each batch of artifacts
+     */
+    private List<Callable<Void>> newSetArtifactsTasks(HubClient hubClient, ArrayNode artifacts, ArtifactLoadCounts counts) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        if (artifacts.size() == 0) {
+            return tasks;
+        }
+        final int batchSize = Math.max(1, Math.min(artifactBatchSize, (int) Math.ceil((double) artifacts.size() / getThreadCount())));
+        for (int i = 0; i < artifacts.size(); i += batchSize) {
+            ArrayNode batch = objectMapper.createArrayNode();
+            for (int j = i; j < Math.min(i + batchSize, artifacts.size()); j++) {
+                batch.add(artifacts.get(j));
+            }
+            tasks.add(() -> {
+                JsonNode result = saveArtifacts(hubClient, batch);
+                if (result != null) {
+                    counts.updated.addAndGet(result.path("updated").size());
+                    counts.unchanged.addAndGet(result.path("unchanged").size());
+                    result.path("unchanged").forEach(artifact -> logger.info(format("Not loading %s with name '%s' as it has not changed",
+                        artifact.path("artifactType").asText(), artifact.path("artifactName").asText())));
+                }
+                return null;
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Saves a batch of artifacts via the setArtifacts endpoint.
+     *
+     * @param hubClient
+     * @param artifacts
+     * @return the response from the setArtifacts endpoint
      */
-    private void loadSteps(HubClient hubClient) {
+    protected JsonNode saveArtifacts(HubClient hubClient, ArrayNode artifacts) {
+        return ArtifactService.on(hubClient.getStagingClient()).setArtifacts(artifacts);
+    }
+
+    private static class ArtifactLoadCounts {
+        final AtomicInteger updated = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+    }
+
+    private void addArtifact(ArrayNode artifacts, String artifactType, String artifactName, JsonNode artifact) {
+        ObjectNode item = artifacts.addObject();
+        item.put("artifactType", artifactType);
+        item.put("artifactName", artifactName);
+        item.set("artifact", artifact);
+    }
+
+    /**
+     * Adds steps, where the assumption is that the name of each directory under the steps path corresponds to a step
+     * definition type. And thus each .step.json file in that directory should be loaded as a step. Steps are saved in
+     * the same way as when they are saved with the 'overwrite' flag set to true and 'throwErrorIfStepIsPresent' set to
+     * false, as the contents of a file in the project should overwrite the step if it's already present.
+     *
+     * @param artifacts
+     */
+    private void addSteps(ArrayNode artifacts) {
         final Path stepsPath = hubConfig.getHubProject().getStepsPath();
         if (stepsPath.toFile().exists()) {
-            StepService stepService = StepService.on(hubClient.getStagingClient());
             for (File stepTypeDir : stepsPath.toFile().listFiles(File::isDirectory)) {
                 final String stepType = stepTypeDir.getName();
                 for (File stepFile : stepTypeDir.listFiles((File d, String name) -> name.endsWith(".step.json"))) {
@@ -271,18 +390,15 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
                     }
                     final String stepName = step.get("name").asText();
                     logger.info(format("Loading step of type '%s' with name '%s'", stepType, stepName));
-                    //We want the contents of file in the project to overwrite the step if it's already present. Hence
-                    //steps are deployed with 'overwrite' flag set to true and 'throwErrorIfStepIsPresent' set to false.
-                    stepService.saveStep(stepType, step, true, false);
+                    addArtifact(artifacts, stepType, stepName, step);
                 }
             }
         }
     }
 
-    private void loadFlows(HubClient hubClient) {
+    private void addFlows(ArrayNode artifacts) {
         final Path flowsPath = hubConfig.getHubProject().getFlowsDir();
         if (flowsPath.toFile().exists()) {
-            ArtifactService service = ArtifactService.on(hubClient.getStagingClient());
             for (File file : flowsPath.toFile().listFiles(f -> f.isFile() && f.getName().endsWith(".flow.json"))) {
                 JsonNode flow = readArtifact(file);
                 if (!flow.has("name")) {
@@ -290,15 +406,14 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
                 }
                 final String flowName = flow.get("name").asText();
                 logger.info(format("Loading flow with name '%s'", flowName));
-                service.setArtifact("flow", flowName, flow);
+                addArtifact(artifacts, "flow", flowName, flow);
             }
         }
     }
 
-    private void loadStepDefinitions(HubClient hubClient) {
+    private void addStepDefinitions(ArrayNode artifacts) {
         final Path stepDefsPath = hubConfig.getHubProject().getStepDefinitionsDir();
         if (stepDefsPath.toFile().exists()) {
-            ArtifactService service = ArtifactService.on(hubClient.getStagingClient());
             for (File typeDir : stepDefsPath.toFile().listFiles(File::isDirectory)) {
                 final String stepDefType = typeDir.getName();
                 for (File defDir : typeDir.listFiles(File::isDirectory)) {
@@ -311,7 +426,7 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
                         }
                         final String stepDefName = stepDef.get("name").asText();
                         logger.info(format("Loading step definition with type '%s' and name '%s'", stepDefType, stepDefName));
-                        service.setArtifact("stepDefinition", stepDefName, stepDef);
+                        addArtifact(artifacts, "stepDefinition", stepDefName, stepDef);
                     } else {
                         logger.warn(format("Found step definition directory '%s', but did not find expected " +
                             "step definition file: '%s'", defDir.getAbsolutePath(), stepDefFile.getName()));
@@ -369,6 +484,22 @@ public class LoadUserArtifactsCommand extends AbstractCommand {
         this.objectMapper = objectMapper;
     }
 
+    public void setArtifactBatchSize(int artifactBatchSize) {
+        this.artifactBatchSize = artifactBatchSize;
+    }
+
+    /**
+     * @param threadCount the number of calls that are made concurrently when loading artifacts of the same type;
+     *                    overrides the mlLoadUserArtifactsThreadCount property
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    private int getThreadCount() {
+        return Math.max(1, threadCount != null ? threadCount : hubConfig.getLoadUserArtifactsThreadCount());
+    }
+
     abstract class ResourceToURI {
         public abstract String toURI(Resource r) throws IOException;
     }
@@ -36,6 +36,7 @@ import com.marklogic.client.io.Format;
 import com.marklogic.client.io.StringHandle;
 import com.marklogic.hub.EntityManager;
 import com.marklogic.hub.HubConfig;
+import com.marklogic.hub.deploy.util.ContentHashModulesManager;
 import com.marklogic.hub.deploy.util.HubFileFilter;
 import com.marklogic.hub.impl.EntityManagerImpl;
 import com.marklogic.hub.legacy.LegacyFlowManager;
@@ -76,6 +77,7 @@ public class LoadUserModulesCommand extends LoadModulesCommand {
 
     private DocumentPermissionsParser documentPermissionsParser = new DefaultDocumentPermissionsParser();
     private ThreadPoolTaskExecutor threadPoolTaskExecutor;
+    private ContentHashModulesManager contentHashModulesManager;
 
     private boolean loadQueryOptions = true;
     private boolean loadAllModules = true;
@@ -103,7 +105,7 @@ public class LoadUserModulesCommand extends LoadModulesCommand {
         this.legacyFlowManager = new LegacyFlowManagerImpl(hubConfig);
     }
 
-    private PropertiesModuleManager getModulesManager() {
+    private ContentHashModulesManager getModulesManager() {
         String timestampFile = hubConfig.getHubProject().getUserModulesDeployTimestampFile();
         PropertiesModuleManager pmm = new PropertiesModuleManager(timestampFile);
 
@@ -120,11 +122,17 @@ public class LoadUserModulesCommand extends LoadModulesCommand {
                 }
             }
         }
-        pmm.initialize();
-        return pmm;
+
+        // Timestamps are of no use for a fresh checkout of a project, so whether a module is loaded is determined by
+        // comparing a hash of its content with the manifest of loaded modules in the modules database
+        ContentHashModulesManager moduleManager = new ContentHashModulesManager(hubConfig.newModulesDbClient(), pmm,
+            hubConfig.getHubProject().getProjectDir(), hubConfig.getModulePermissions());
+        moduleManager.setIgnoreManifest(forceLoad);
+        moduleManager.initialize();
+        return moduleManager;
     }
 
-    private AssetFileLoader getAssetFileLoader(AppConfig config, PropertiesModuleManager moduleManager) {
+    private AssetFileLoader getAssetFileLoader(AppConfig config, ModulesManager moduleManager) {
         AssetFileLoader assetFileLoader = new AssetFileLoader(hubConfig.newModulesDbClient(), moduleManager);
         assetFileLoader.addDocumentFileProcessor(new CacheBusterDocumentFileProcessor());
         //Add file extensions to HubFileFilter.accept() to prevent mappings, entities  files being loaded to Modules db
@@ -141,7 +149,8 @@ public class LoadUserModulesCommand extends LoadModulesCommand {
         this.threadPoolTaskExecutor.setWaitForTasksToCompleteOnShutdown(true);
         this.threadPoolTaskExecutor.afterPropertiesSet();
 
-        PropertiesModuleManager moduleManager = getModulesManager();
+        this.contentHashModulesManager = getModulesManager();
+        ModulesManager moduleManager = this.contentHashModulesManager;
         AssetFileLoader assetFileLoader = getAssetFileLoader(config, moduleManager);
 
         DefaultModulesLoader modulesLoader = new DefaultModulesLoader(assetFileLoader);
@@ -272,6 +281,7 @@ public class LoadUserModulesCommand extends LoadModulesCommand {
                 }
             }
             threadPoolTaskExecutor.shutdown();
+            contentHashModulesManager.saveManifest();
         } catch (IOException e) {
             e.printStackTrace();
             //throw new RuntimeException(e);
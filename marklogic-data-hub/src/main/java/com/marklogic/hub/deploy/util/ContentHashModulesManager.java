@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.deploy.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.ResourceNotFoundException;
+import com.marklogic.client.document.JSONDocumentManager;
+import com.marklogic.client.ext.helper.LoggingObject;
+import com.marklogic.client.ext.modulesloader.ModulesManager;
+import com.marklogic.client.ext.util.DefaultDocumentPermissionsParser;
+import com.marklogic.client.io.DocumentMetadataHandle;
+import com.marklogic.client.io.JacksonHandle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ModulesManager that determines whether a module needs to be loaded based on a hash of its content instead of its
+ * last-modified timestamp. Timestamps are not useful when a project is checked out fresh - as is typically the case
+ * in a CI environment - since every file then appears to be modified.
+ * <p>
+ * The hash of each loaded module is stored in a manifest document in the modules database, so the manifest always
+ * reflects what has been loaded into that database regardless of which machine performed the deployment; and when
+ * user modules are cleared, the manifest is cleared with them. The manifest is only read once, on the first call to
+ * initialize(), and is only written when saveManifest() is called.
+ * <p>
+ * The given delegate is still informed of every loaded module, so that e.g. the timestamps file maintained by a
+ * PropertiesModuleManager stays current.
+ * <p>
+ * Modules may be loaded by multiple threads, so the hashes are kept in concurrent maps.
+ */
+public class ContentHashModulesManager extends LoggingObject implements ModulesManager {
+
+    public final static String MANIFEST_URI = "/data-hub/deploy/user-modules-manifest.json";
+
+    private final DatabaseClient modulesClient;
+    private final ModulesManager delegate;
+    private final Path baseDir;
+    private final String permissions;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Map<String, String> manifest;
+    private final Map<String, String> pendingHashes = new ConcurrentHashMap<>();
+    private volatile boolean manifestModified = false;
+    private boolean ignoreManifest = false;
+
+    /**
+     * @param modulesClient client for the modules database that the manifest is stored in
+     * @param delegate      optional ModulesManager that is informed of each loaded module
+     * @param baseDir       module paths are stored relative to this directory so that the manifest does not depend on
+     *                      where the project is checked out
+     * @param permissions   the permissions that modules are loaded with; these are included in each hash so that
+     *                      changing them results in every module being loaded again
+     */
+    public ContentHashModulesManager(DatabaseClient modulesClient, ModulesManager delegate, Path baseDir, String permissions) {
+        this.modulesClient = modulesClient;
+        this.delegate = delegate;
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+        this.permissions = permissions != null ? permissions : "";
+    }
+
+    /**
+     * Causes every module to be considered as modified, while still recording the hash of each loaded module in a new
+     * manifest.
+     *
+     * @param ignoreManifest
+     */
+    public void setIgnoreManifest(boolean ignoreManifest) {
+        this.ignoreManifest = ignoreManifest;
+    }
+
+    @Override
+    public synchronized void initialize() {
+        if (delegate != null) {
+            delegate.initialize();
+        }
+        if (manifest == null) {
+            manifest = ignoreManifest ? new ConcurrentHashMap<>() : readManifest();
+        }
+    }
+
+    /**
+     * Reads the manifest if that has not been done yet. The check is repeated while holding the lock so that when
+     * multiple loading threads find the manifest not to be read, only one of them initializes this.
+     */
+    private void ensureManifestIsRead() {
+        if (manifest == null) {
+            synchronized (this) {
+                if (manifest == null) {
+                    initialize();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasFileBeenModifiedSinceLastLoaded(File file) {
+        ensureManifestIsRead();
+        final String path = toManifestPath(file);
+        final String hash = hashFile(file);
+        if (hash == null) {
+            return true;
+        }
+        if (!ignoreManifest && hash.equals(manifest.get(path))) {
+            return false;
+        }
+        pendingHashes.put(path, hash);
+        return true;
+    }
+
+    @Override
+    public void saveLastLoadedTimestamp(File file, Date date) {
+        if (delegate != null) {
+            delegate.saveLastLoadedTimestamp(file, date);
+        }
+        ensureManifestIsRead();
+        final String path = toManifestPath(file);
+        String hash = pendingHashes.remove(path);
+        if (hash == null) {
+            hash = hashFile(file);
+        }
+        if (hash != null && !hash.equals(manifest.put(path, hash))) {
+            manifestModified = true;
+        }
+    }
+
+    /**
+     * Writes the manifest to the modules database if any module has been loaded since it was read.
+     */
+    public synchronized void saveManifest() {
+        if (manifest == null || !manifestModified) {
+            return;
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        ObjectNode hashes = node.putObject("hashes");
+        manifest.forEach(hashes::put);
+
+        DocumentMetadataHandle metadata = new DocumentMetadataHandle();
+        new DefaultDocumentPermissionsParser().parsePermissions(permissions, metadata.getPermissions());
+        modulesClient.newJSONDocumentManager().write(MANIFEST_URI, metadata, new JacksonHandle(node));
+        manifestModified = false;
+        logger.info("Saved hashes of " + manifest.size() + " loaded modules to " + MANIFEST_URI);
+    }
+
+    private Map<String, String> readManifest() {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        try {
+            JSONDocumentManager mgr = modulesClient.newJSONDocumentManager();
+            JsonNode node = mgr.read(MANIFEST_URI, new JacksonHandle()).get();
+            if (node != null && node.has("hashes")) {
+                node.get("hashes").fields().forEachRemaining(entry -> hashes.put(entry.getKey(), entry.getValue().asText()));
+            }
+        } catch (ResourceNotFoundException ex) {
+            logger.info("No manifest of loaded modules found, so all modules will be loaded");
+        } catch (Exception ex) {
+            logger.warn("Unable to read manifest of loaded modules, so all modules will be loaded; cause: " + ex.getMessage());
+        }
+        return hashes;
+    }
+
+    protected String toManifestPath(File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (path.startsWith(baseDir)) {
+            path = baseDir.relativize(path);
+        }
+        return path.toString().replace('\\', '/');
+    }
+
+    protected String hashFile(File file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(permissions.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(Files.readAllBytes(file.toPath()));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            logger.warn("Unable to compute hash of module " + file.getAbsolutePath() + ", so it will be loaded; cause: " + ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.deploy.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Captures the difference between a set of desired database index properties - typically generated from entity
+ * models - and the existing properties of a database, so that only the properties that actually change need to be
+ * sent to the Manage API.
+ * <p>
+ * As with ResourceUtil.mergeExistingArrayProperties, items are never removed from an existing array property; the
+ * Manage API overwrites array properties, so each changed array property to save contains all of the existing items
+ * as well. A desired item is considered to already exist if an existing item has the same values for every property
+ * of the desired item; an existing item that identifies the same index - e.g. the same path expression, scalar type,
+ * and collation for a path range index - but differs in another property is replaced by the desired item.
+ * <p>
+ * Adding or modifying an index will cause a database with its reindexer enabled to reindex, which can take a long
+ * time for a large database. Each change thus indicates whether it is expected to require reindexing so that a caller
+ * can report this before applying the plan.
+ */
+public class IndexConfigPlan {
+
+    private final static ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * The properties that identify an index or other item for each array property; items in an array property not
+     * listed here can only be added, not modified.
+     */
+    private final static Map<String, List<String>> ITEM_IDENTITY_PROPERTIES = new HashMap<>();
+
+    /**
+     * Array properties whose items do not affect what is indexed.
+     */
+    private final static Set<String> NON_REINDEXING_PROPERTIES = new HashSet<>(Collections.singletonList("path-namespace"));
+
+    /**
+     * Item properties that can be modified without affecting what is indexed.
+     */
+    private final static Set<String> NON_REINDEXING_ITEM_PROPERTIES = new HashSet<>(Collections.singletonList("invalid-values"));
+
+    static {
+        ITEM_IDENTITY_PROPERTIES.put("range-element-index", Arrays.asList("namespace-uri", "localname", "scalar-type", "collation"));
+        ITEM_IDENTITY_PROPERTIES.put("range-element-attribute-index", Arrays.asList("parent-namespace-uri", "parent-localname", "namespace-uri", "localname", "scalar-type", "collation"));
+        ITEM_IDENTITY_PROPERTIES.put("range-path-index", Arrays.asList("path-expression", "scalar-type", "collation"));
+        ITEM_IDENTITY_PROPERTIES.put("range-field-index", Arrays.asList("field-name", "scalar-type", "collation"));
+        ITEM_IDENTITY_PROPERTIES.put("element-word-lexicon", Arrays.asList("namespace-uri", "localname", "collation"));
+        ITEM_IDENTITY_PROPERTIES.put("path-namespace", Collections.singletonList("prefix"));
+        ITEM_IDENTITY_PROPERTIES.put("field", Collections.singletonList("field-name"));
+    }
+
+    private final String databaseName;
+    private final ObjectNode propertiesToSave;
+    private final List<Change> changes;
+
+    /**
+     * @param databaseName       the name of the database the plan applies to; used for reporting
+     * @param desiredProperties  the properties that the database is expected to have
+     * @param existingProperties the current properties of the database, as returned by the Manage API
+     * @return a plan containing only the changes needed for the database to have the desired properties
+     */
+    public static IndexConfigPlan build(String databaseName, ObjectNode desiredProperties, ObjectNode existingProperties) {
+        ObjectNode propertiesToSave = objectMapper.createObjectNode();
+        List<Change> changes = new ArrayList<>();
+
+        desiredProperties.fields().forEachRemaining(entry -> {
+            final String propertyName = entry.getKey();
+            final JsonNode desiredValue = entry.getValue();
+            final JsonNode existingValue = existingProperties.get(propertyName);
+            if (desiredValue.isArray()) {
+                ArrayNode mergedArray = planArrayProperty(propertyName, (ArrayNode) desiredValue, existingValue, changes);
+                if (mergedArray != null) {
+                    propertiesToSave.set(propertyName, mergedArray);
+                }
+            } else if (existingValue == null || !valuesMatch(desiredValue, existingValue)) {
+                propertiesToSave.set(propertyName, desiredValue.deepCopy());
+                changes.add(new Change(propertyName, ChangeType.SET, desiredValue, true));
+            }
+        });
+
+        return new IndexConfigPlan(databaseName, propertiesToSave, changes);
+    }
+
+    /**
+     * @return the existing items with the desired changes applied, or null if the existing items already contain every
+     * desired item
+     */
+    private static ArrayNode planArrayProperty(String propertyName, ArrayNode desiredItems, JsonNode existingValue, List<Change> changes) {
+        final List<String> identityProperties = ITEM_IDENTITY_PROPERTIES.get(propertyName);
+        final boolean propertyAffectsIndexing = !NON_REINDEXING_PROPERTIES.contains(propertyName);
+
+        List<JsonNode> mergedItems = new ArrayList<>();
+        if (existingValue != null && existingValue.isArray()) {
+            existingValue.forEach(item -> mergedItems.add(item.deepCopy()));
+        }
+
+        boolean changed = false;
+        for (JsonNode desiredItem : desiredItems) {
+            if (mergedItems.stream().anyMatch(item -> valuesMatch(desiredItem, item))) {
+                continue;
+            }
+            changed = true;
+            int index = indexOfSameItem(desiredItem, mergedItems, identityProperties);
+            if (index >= 0) {
+                JsonNode replacedItem = mergedItems.set(index, desiredItem.deepCopy());
+                boolean requiresReindexing = propertyAffectsIndexing && !onlyNonReindexingPropertiesDiffer(desiredItem, replacedItem);
+                changes.add(new Change(propertyName, ChangeType.MODIFY, desiredItem, requiresReindexing));
+            } else {
+                mergedItems.add(desiredItem.deepCopy());
+                changes.add(new Change(propertyName, ChangeType.ADD, desiredItem, propertyAffectsIndexing));
+            }
+        }
+
+        if (!changed) {
+            return null;
+        }
+        ArrayNode mergedArray = objectMapper.createArrayNode();
+        mergedItems.forEach(mergedArray::add);
+        return mergedArray;
+    }
+
+    private static int indexOfSameItem(JsonNode desiredItem, List<JsonNode> items, List<String> identityProperties) {
+        if (identityProperties == null || !desiredItem.isObject()) {
+            return -1;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            JsonNode item = items.get(i);
+            if (item.isObject() && identityProperties.stream().allMatch(name -> textOf(desiredItem.get(name)).equals(textOf(item.get(name))))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean onlyNonReindexingPropertiesDiffer(JsonNode desiredItem, JsonNode existingItem) {
+        Iterator<String> names = desiredItem.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            JsonNode existingValue = existingItem.get(name);
+            boolean same = existingValue != null && valuesMatch(desiredItem.get(name), existingValue);
+            if (!same && !NON_REINDEXING_ITEM_PROPERTIES.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The Manage API does not always return values with the same JSON type that they were saved with - e.g. a boolean
+     * may be returned as a string - so scalar values are compared as text. An object matches if every property in the
+     * desired object matches the same property in the existing object, as the Manage API includes default values that
+     * the desired object need not specify.
+     */
+    private static boolean valuesMatch(JsonNode desired, JsonNode existing) {
+        if (desired.isObject()) {
+            if (!existing.isObject()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = desired.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode existingValue = existing.get(field.getKey());
+                if (existingValue == null || !valuesMatch(field.getValue(), existingValue)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (desired.isArray()) {
+            if (!existing.isArray() || desired.size() != existing.size()) {
+                return false;
+            }
+            for (int i = 0; i < desired.size(); i++) {
+                if (!valuesMatch(desired.get(i), existing.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !existing.isContainerNode() && textOf(desired).equals(textOf(existing));
+    }
+
+    private static String textOf(JsonNode node) {
+        return node == null || node.isNull() ? "" : node.asText();
+    }
+
+    private IndexConfigPlan(String databaseName, ObjectNode propertiesToSave, List<Change> changes) {
+        this.databaseName = databaseName;
+        this.propertiesToSave = propertiesToSave;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    public boolean requiresReindexing() {
+        return changes.stream().anyMatch(Change::requiresReindexing);
+    }
+
+    public List<Change> getReindexingChanges() {
+        return changes.stream().filter(Change::requiresReindexing).collect(Collectors.toList());
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return only the properties that need to be saved, suitable for a single PUT to the database properties endpoint
+     * of the Manage API
+     */
+    public ObjectNode getPropertiesToSave() {
+        return propertiesToSave;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("database: %s; changes: %s", databaseName, changes);
+    }
+
+    public enum ChangeType {
+        ADD, MODIFY, SET
+    }
+
+    public static class Change {
+        private final String propertyName;
+        private final ChangeType type;
+        private final JsonNode value;
+        private final boolean requiresReindexing;
+
+        public Change(String propertyName, ChangeType type, JsonNode value, boolean requiresReindexing) {
+            this.propertyName = propertyName;
+            this.type = type;
+            this.value = value;
+            this.requiresReindexing = requiresReindexing;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public JsonNode getValue() {
+            return value;
+        }
+
+        public boolean requiresReindexing() {
+            return requiresReindexing;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %s", type, propertyName, value);
+        }
+    }
+}
@@ -106,6 +106,18 @@ public interface FlowRunner {
     @Deprecated
     RunFlowResponse runFlow(String flow);
 
+    /**
+     * Resumes a job that did not finish - e.g. because the client running it crashed, or because it was stopped - by
+     * running again, under the same job ID, each of its steps that did not complete. If the job was run with the
+     * "enableCheckpoints" option set to true, the steps and options that it was originally run with are reused, and
+     * each step that saved a checkpoint reuses the items it collected and skips the batches it already completed.
+     * Otherwise, every step in the flow that did not complete is run again from the start.
+     *
+     * @param jobId the id of the job to resume
+     * @return a response object
+     */
+    RunFlowResponse resumeJob(String jobId);
+
     /**
      * Runs the flow.
      *
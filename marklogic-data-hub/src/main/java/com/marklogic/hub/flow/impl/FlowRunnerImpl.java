@@ -2,6 +2,7 @@ package com.marklogic.hub.flow.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.marklogic.hub.FlowManager;
 import com.marklogic.hub.HubClient;
 import com.marklogic.hub.HubConfig;
@@ -14,6 +15,7 @@ import com.marklogic.hub.impl.FlowManagerImpl;
 import com.marklogic.hub.impl.HubConfigImpl;
 import com.marklogic.hub.job.JobStatus;
 import com.marklogic.hub.step.RunStepResponse;
+import com.marklogic.hub.step.StepMetricsListener;
 import com.marklogic.hub.step.StepRunner;
 import com.marklogic.hub.step.StepRunnerFactory;
 import com.marklogic.hub.step.impl.Step;
@@ -44,32 +46,36 @@ public class FlowRunnerImpl implements FlowRunner {
     private HubClient hubClient;
 
     private AtomicBoolean isRunning = new AtomicBoolean(false);
-    private AtomicBoolean isJobCancelled = new AtomicBoolean(false);
-    private AtomicBoolean isJobSuccess = new AtomicBoolean(true);
-    private AtomicBoolean jobStoppedOnError = new AtomicBoolean(false);
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private String runningJobId;
-    private Step runningStep;
-    private Flow runningFlow;
+    // Defaults to 1 so that jobs are run one at a time in the order in which they were submitted
+    private int maxConcurrentJobs = 1;
 
-    private StepRunner stepRunner;
+    public static final int DEFAULT_STEP_THREAD_BUDGET = 16;
+
+    private static final String FLOW_CHECKPOINT_NAME = "flow";
+
+    // Shared by every job run by this FlowRunner, so that steps running at the same time cannot together swamp MarkLogic
+    private volatile StepThreadBudget stepThreadBudget = new StepThreadBudget(DEFAULT_STEP_THREAD_BUDGET);
 
     /*
      * Using concrete type ConcurrentHashMap instead of Map so coverity static scan does not complain about
-     * "modification without proper synchronization" when we call `remove(key)` on the `stepsMap` later in the code.
+     * "modification without proper synchronization" when we call `remove(key)` on the map later in the code.
+     * Contains every job that is either queued or running, keyed by job ID.
      */
-    private final ConcurrentHashMap<String, Queue<String>> stepsMap = new ConcurrentHashMap<>();
-    private Map<String, Flow> flowMap = new ConcurrentHashMap<>();
-    private Map<String, RunFlowResponse> flowResp = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FlowContext> flowContextMap = new ConcurrentHashMap<>();
 
-    // TODO Hoping to combine these maps together into a single one soon
-    private Map<String, FlowContext> flowContextMap = new ConcurrentHashMap<>();
+    // Job IDs that have been submitted but not yet started
+    private final Queue<String> jobQueue = new ConcurrentLinkedQueue<>();
 
-    private Queue<String> jobQueue = new ConcurrentLinkedQueue<>();
+    // Job IDs that are currently running, in the order in which they were started
+    private final Set<String> runningJobIds = Collections.synchronizedSet(new LinkedHashSet<>());
 
     private ThreadPoolExecutor threadPool;
 
+    // Registered with the step runner of every step that this FlowRunner runs
+    private final List<StepMetricsListener> stepMetricsListeners = new CopyOnWriteArrayList<>();
+
     public FlowRunnerImpl() {
     }
 
@@ -117,6 +123,68 @@ public class FlowRunnerImpl implements FlowRunner {
         this(hubConfig.newHubClient());
     }
 
+    /**
+     * Sets the maximum number of jobs that this FlowRunner will run at the same time. Jobs submitted beyond this number
+     * are queued and started as running jobs complete. When more than one job is queued, a job whose flow is not
+     * already running is started before a job whose flow is, so that several submissions of one flow cannot hold every
+     * available slot while other flows wait. Defaults to 1, which runs jobs one at a time in the order they were
+     * submitted. If jobs are already running, the thread pool is resized and any queued jobs that now fit are started.
+     *
+     * @param maxConcurrentJobs the maximum number of jobs to run at the same time; must be at least 1
+     * @return this FlowRunnerImpl
+     */
+    public FlowRunnerImpl withMaxConcurrentJobs(int maxConcurrentJobs) {
+        if (maxConcurrentJobs < 1) {
+            throw new IllegalArgumentException("Max concurrent jobs must be at least 1");
+        }
+        synchronized (this) {
+            this.maxConcurrentJobs = maxConcurrentJobs;
+            if (threadPool != null && !threadPool.isShutdown()) {
+                resizeThreadPool(threadPool);
+                startQueuedJobs();
+            }
+        }
+        return this;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    /**
+     * Sets the maximum combined thread count of the steps that this FlowRunner will run at the same time. Steps only
+     * run at the same time when either a flow declares dependencies between its steps via "dependsOn" - in which case
+     * every step whose dependencies have finished is eligible to run - or when more than one job is allowed to run at
+     * once. A ready step waits until enough threads are available. A step whose own thread count exceeds the budget
+     * is run once no other step is running. Defaults to DEFAULT_STEP_THREAD_BUDGET.
+     *
+     * @param maxThreads the maximum combined thread count; must be at least 1
+     * @return this FlowRunnerImpl
+     */
+    public FlowRunnerImpl withStepThreadBudget(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Step thread budget must be at least 1");
+        }
+        this.stepThreadBudget = new StepThreadBudget(maxThreads);
+        return this;
+    }
+
+    public int getStepThreadBudget() {
+        return stepThreadBudget.getMaxThreads();
+    }
+
+    /**
+     * Adds a listener that receives the metrics captured for each batch of every step that this FlowRunner runs, such
+     * as for shipping them to a monitoring system.
+     *
+     * @param listener
+     * @return this FlowRunnerImpl
+     */
+    public FlowRunnerImpl withStepMetricsListener(StepMetricsListener listener) {
+        this.stepMetricsListeners.add(listener);
+        return this;
+    }
+
     @Deprecated
     public RunFlowResponse runFlow(String flowName) {
         return runFlow(flowName, null, null, new HashMap<>(), new HashMap<>());
@@ -174,11 +242,15 @@ public class FlowRunnerImpl implements FlowRunner {
     }
 
     protected RunFlowResponse runFlow(Flow flow, List<String> stepNumbers, String jobId, Map<String, Object> runtimeOptions, Map<String, Object> stepConfig) {
-        FlowContext flowContext = new FlowContext(flow, runtimeOptions);
-        if (flowContext.jobOutputIsEnabled) {
-            flowContext.jobService = JobService.on(hubClient != null ? hubClient.getJobsClient() : hubConfig.newJobDbClient());
-        }
+        return runFlow(flow, stepNumbers, jobId, runtimeOptions, stepConfig, false);
+    }
 
+    /**
+     * @param resumed true if the job is being resumed, in which case its existing Job document is retained instead of
+     *                being replaced with a new one
+     */
+    private RunFlowResponse runFlow(Flow flow, List<String> stepNumbers, String jobId, Map<String, Object> runtimeOptions,
+                                    Map<String, Object> stepConfig, boolean resumed) {
         configureStopOnError(flow, runtimeOptions);
 
         if(stepNumbers == null) {
@@ -208,24 +280,104 @@ public class FlowRunnerImpl implements FlowRunner {
         RunFlowResponse response = new RunFlowResponse(jobId);
         response.setFlowName(flow.getName());
 
-        //Put response, steps and flow in maps with jobId as key
-        flowResp.put(jobId, response);
-        stepsMap.put(jobId, stepsQueue);
-        flowMap.put(jobId, flow);
-        flowContextMap.put(jobId, flowContext);
-
-        //add jobId to a queue
-        jobQueue.add(jobId);
-        if(!isRunning.get()){
-            // Construct a stepRunnerFactory for the execution of this flow. It will be passed to additional instances
-            // of FlowRunnerTask that need to be created.
-            StepRunnerFactory stepRunnerFactory = hubClient != null ?
-                new StepRunnerFactory(hubClient) : new StepRunnerFactory(hubConfig);
-            initializeFlow(stepRunnerFactory, jobId);
+        // Construct a stepRunnerFactory for the execution of this flow. It will be passed to additional instances
+        // of FlowRunnerTask that need to be created.
+        StepRunnerFactory stepRunnerFactory = hubClient != null ?
+            new StepRunnerFactory(hubClient) : new StepRunnerFactory(hubConfig);
+
+        FlowContext flowContext = new FlowContext(jobId, flow, runtimeOptions, stepsQueue, response, stepRunnerFactory);
+        flowContext.resumed = resumed;
+        if (flowContext.jobOutputIsEnabled) {
+            flowContext.jobService = JobService.on(hubClient != null ? hubClient.getJobsClient() : hubConfig.newJobDbClient());
+        }
+
+        synchronized (this) {
+            flowContextMap.put(jobId, flowContext);
+            jobQueue.add(jobId);
+            startQueuedJobs();
         }
         return response;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public RunFlowResponse resumeJob(String jobId) {
+        if (StringUtils.isEmpty(jobId)) {
+            throw new IllegalArgumentException("Cannot resume job; no job ID provided");
+        }
+        if (flowContextMap.containsKey(jobId)) {
+            throw new IllegalStateException("Cannot resume job with ID " + jobId + "; it is already queued or running");
+        }
+        JobService jobService = JobService.on(hubClient != null ? hubClient.getJobsClient() : hubConfig.newJobDbClient());
+        JsonNode jobNode = jobService.getJob(jobId);
+        if (jobNode == null || !jobNode.has("job")) {
+            throw new IllegalArgumentException("Cannot resume job; no job found with ID: " + jobId);
+        }
+        final String flowName = jobNode.get("job").get("flow").asText();
+        Flow flow = flowManager.getFullFlow(flowName);
+        if (flow == null) {
+            throw new RuntimeException("Flow " + flowName + " not found");
+        }
+
+        List<String> stepNumbers = new ArrayList<>(flow.getSteps().keySet());
+        Map<String, Object> runtimeOptions = new HashMap<>();
+        Map<String, Object> stepConfig = new HashMap<>();
+        JsonNode flowCheckpoint = jobService.getCheckpoint(jobId, FLOW_CHECKPOINT_NAME);
+        if (flowCheckpoint != null && flowCheckpoint.has("flowCheckpoint")) {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode checkpoint = flowCheckpoint.get("flowCheckpoint");
+            stepNumbers = new ArrayList<>();
+            for (JsonNode stepNumber : checkpoint.path("steps")) {
+                stepNumbers.add(stepNumber.asText());
+            }
+            if (checkpoint.has("options")) {
+                runtimeOptions = mapper.convertValue(checkpoint.get("options"), Map.class);
+            }
+            if (checkpoint.has("stepConfig")) {
+                stepConfig = mapper.convertValue(checkpoint.get("stepConfig"), Map.class);
+            }
+        }
+
+        // Steps that completed - with or without errors - are not run again
+        JsonNode stepResponses = jobNode.get("job").path("stepResponses");
+        stepNumbers.removeIf(stepNumber -> stepResponses.path(stepNumber).path("status").asText("").startsWith("completed"));
+        if (stepNumbers.isEmpty()) {
+            throw new IllegalStateException("Cannot resume job with ID " + jobId + "; every step has already completed");
+        }
+
+        logger.info(String.format("Resuming job with ID %s by running steps %s in flow '%s'", jobId, stepNumbers, flowName));
+        return runFlow(flow, stepNumbers, jobId, runtimeOptions, stepConfig, true);
+    }
+
+    /**
+     * Saves the steps and options that a job is run with, so that resumeJob can run the job the same way. Only done
+     * when checkpoints are enabled via the runtime options, as the steps then also save their own checkpoints.
+     *
+     * @param flowContext
+     */
+    protected void saveFlowCheckpoint(FlowContext flowContext) {
+        Map<String, Object> runtimeOptions = flowContext.flow.getRuntimeOptions();
+        Object enabled = runtimeOptions != null ? runtimeOptions.get("enableCheckpoints") : null;
+        if (enabled == null || !Boolean.parseBoolean(enabled.toString())) {
+            return;
+        }
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            ObjectNode checkpoint = mapper.createObjectNode();
+            ObjectNode node = checkpoint.putObject("flowCheckpoint");
+            node.put("jobId", flowContext.jobId);
+            node.put("flowName", flowContext.flow.getName());
+            flowContext.stepQueue.forEach(node.putArray("steps")::add);
+            node.set("options", mapper.valueToTree(runtimeOptions));
+            if (flowContext.flow.getOverrideStepConfig() != null) {
+                node.set("stepConfig", mapper.valueToTree(flowContext.flow.getOverrideStepConfig()));
+            }
+            flowContext.jobService.saveCheckpoint(flowContext.jobId, FLOW_CHECKPOINT_NAME, checkpoint);
+        } catch (Exception e) {
+            logger.warn("Unable to save checkpoint for job with ID: " + flowContext.jobId + "; cause: " + e.getMessage());
+        }
+    }
+
     /**
      * To support the "failHard" parameter in CommandLineFlowInputs, this method checks for stopOnError in the options
      * map. If true, this will set stopOnError in the flow. That will cause no other steps to be run once a step fails.
@@ -242,42 +394,107 @@ public class FlowRunnerImpl implements FlowRunner {
         }
     }
 
-    private void initializeFlow(StepRunnerFactory stepRunnerFactory, String jobId) {
-        //Reset the states to initial values before starting a flow run
-        isRunning.set(true);
-        isJobSuccess.set(true);
-        isJobCancelled.set(false);
-        jobStoppedOnError.set(false);
-        runningJobId = jobId;
-        runningFlow = flowMap.get(runningJobId);
+    /**
+     * Starts queued jobs until either the queue is empty or the max number of concurrent jobs are running. Callers
+     * must synchronize on this object, as this both reads and modifies the set of running jobs.
+     */
+    private void startQueuedJobs() {
+        while (runningJobIds.size() < maxConcurrentJobs && !jobQueue.isEmpty()) {
+            String jobId = selectNextJobId();
+            jobQueue.remove(jobId);
+            initializeFlow(flowContextMap.get(jobId));
+        }
+    }
 
-        FlowContext flowContext = flowContextMap.get(jobId);
+    /**
+     * @return the ID of the oldest queued job whose flow is not already running; or, if every queued job's flow is
+     * running, the ID of the oldest queued job
+     */
+    private String selectNextJobId() {
+        Set<String> runningFlowNames = new HashSet<>();
+        synchronized (runningJobIds) {
+            runningJobIds.forEach(id -> runningFlowNames.add(flowContextMap.get(id).flow.getName()));
+        }
+        for (String jobId : jobQueue) {
+            if (!runningFlowNames.contains(flowContextMap.get(jobId).flow.getName())) {
+                return jobId;
+            }
+        }
+        return jobQueue.peek();
+    }
+
+    private void initializeFlow(FlowContext flowContext) {
+        isRunning.set(true);
+        runningJobIds.add(flowContext.jobId);
 
         if (flowContext.jobOutputIsEnabled) {
-            flowContext.jobService.startJob(jobId, runningFlow.getName());
+            if (!flowContext.resumed) {
+                flowContext.jobService.startJob(flowContext.jobId, flowContext.flow.getName());
+                saveFlowCheckpoint(flowContext);
+            }
+        }
+
+        ensureThreadPoolIsRunning();
+        threadPool.execute(new FlowRunnerTask(flowContext));
+    }
+
+    /**
+     * Creates the thread pool if it has not been created yet or if it was shut down after the last job finished.
+     */
+    void ensureThreadPoolIsRunning() {
+        if (threadPool == null || threadPool.isShutdown()) {
+            threadPool = new CustomPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            resizeThreadPool(threadPool);
         }
+    }
 
-        if(threadPool == null || threadPool.isTerminated()) {
-            // thread pool size needs to be at least 2, so the current step thread can kick-off the next step thread
-            int maxPoolSize = Math.max(Runtime.getRuntime().availableProcessors()/2, 2);
-            threadPool = new CustomPoolExecutor(2, maxPoolSize, 0L, TimeUnit.MILLISECONDS
-                , new LinkedBlockingQueue<Runnable>());
+    /**
+     * Sizes the given pool based on the current max number of concurrent jobs. This is done both when the pool is
+     * created and when the max is changed, as the pool is otherwise kept for as long as jobs are running.
+     *
+     * @param pool
+     */
+    private void resizeThreadPool(ThreadPoolExecutor pool) {
+        // thread pool size needs to be at least one more than the number of concurrent jobs, so the thread of a
+        // finishing job can kick-off the thread of the next job
+        int corePoolSize = maxConcurrentJobs + 1;
+        int maxPoolSize = Math.max(Runtime.getRuntime().availableProcessors()/2, corePoolSize);
+        // The core size can never exceed the max size, so the order of these depends on whether the pool is growing
+        if (maxPoolSize >= pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(maxPoolSize);
+            pool.setCorePoolSize(corePoolSize);
+        } else {
+            pool.setCorePoolSize(corePoolSize);
+            pool.setMaximumPoolSize(maxPoolSize);
         }
+    }
 
-        threadPool.execute(new FlowRunnerTask(stepRunnerFactory, runningFlow, runningJobId));
+    ThreadPoolExecutor getThreadPool() {
+        return threadPool;
     }
 
-    public void stopJob(String jobId) {
-        if (stepsMap.get(jobId) != null) {
-            stepsMap.get(jobId).clear();
-            stepsMap.remove(jobId);
-            isJobCancelled.set(true);
+    /**
+     * Removes the given job from the set of running jobs and then starts any queued jobs. If no jobs are left, the
+     * thread pool is shut down so that awaitCompletion returns.
+     *
+     * @param flowContext
+     */
+    private synchronized void finishFlow(FlowContext flowContext) {
+        runningJobIds.remove(flowContext.jobId);
+        flowContextMap.remove(flowContext.jobId);
+        startQueuedJobs();
+        if (runningJobIds.isEmpty()) {
+            isRunning.set(false);
+            threadPool.shutdownNow();
         }
+    }
 
-        if (jobId != null && jobId.equals(runningJobId)) {
-            if (stepRunner != null) {
-                stepRunner.stop();
-            }
+    public void stopJob(String jobId) {
+        FlowContext flowContext = jobId != null ? flowContextMap.get(jobId) : null;
+        if (flowContext != null) {
+            flowContext.stepQueue.clear();
+            flowContext.isJobCancelled.set(true);
+            flowContext.runningStepRunners.forEach(StepRunner::stop);
         }
     }
 
@@ -291,110 +508,41 @@ public class FlowRunnerImpl implements FlowRunner {
 
     private class FlowRunnerTask implements Runnable {
 
-        private StepRunnerFactory stepRunnerFactory;
-        private String jobId;
-        private Flow flow;
-        private Queue<String> stepQueue;
+        private final FlowContext flowContext;
 
-        public Queue<String> getStepQueue() {
-            return stepQueue;
+        FlowRunnerTask(FlowContext flowContext) {
+            this.flowContext = flowContext;
         }
 
-        FlowRunnerTask(StepRunnerFactory stepRunnerFactory, Flow flow, String jobId) {
-            this.stepRunnerFactory = stepRunnerFactory;
-            this.jobId = jobId;
-            this.flow = flow;
+        public Queue<String> getStepQueue() {
+            return flowContext.stepQueue;
         }
 
         @Override
         public void run() {
-            RunFlowResponse resp = flowResp.get(runningJobId);
-            resp.setFlowName(runningFlow.getName());
-            stepQueue = stepsMap.get(jobId);
-
-            FlowContext flowContext = flowContextMap.get(jobId);
-
-            Map<String, RunStepResponse> stepOutputs = new HashMap<>();
-            String stepNum = null;
-
-            while (! stepQueue.isEmpty()) {
-                stepNum = stepQueue.poll();
-                runningStep = runningFlow.getSteps().get(stepNum);
-                Map<String, Object> runtimeOptions = flow.getRuntimeOptions() != null ?
-                    new HashMap<>(flow.getRuntimeOptions()) : new HashMap<>();
-
-                AtomicLong errorCount = new AtomicLong();
-                AtomicLong successCount = new AtomicLong();
-                RunStepResponse stepResp = null;
-
-                try {
-                    stepRunner = stepRunnerFactory.getStepRunner(runningFlow, stepNum)
-                        .withJobId(jobId)
-                        .withRuntimeOptions(runtimeOptions)
-                        .onItemComplete((jobID, itemID) -> {
-                            successCount.incrementAndGet();
-                        })
-                        .onItemFailed((jobId, itemId)-> {
-                            errorCount.incrementAndGet();
-                            if(flow.isStopOnError()){
-                                jobStoppedOnError.set(true);
-                                stopJob(jobId);
-                            }
-                        });
-
-                    if(flow.getOverrideStepConfig() != null) {
-                        stepRunner.withStepConfig(flow.getOverrideStepConfig());
-                    }
-                    stepResp = stepRunner.run();
-                    stepRunner.awaitCompletion();
-                }
-                catch (Exception e) {
-                    stepResp = RunStepResponse.withFlow(flow).withStep(stepNum);
-                    stepResp.withJobId(runningJobId);
-                    if(stepRunner != null){
-                        stepResp.setCounts(successCount.get() + errorCount.get(), successCount.get(), errorCount.get(), (long) Math.ceil((double) successCount.get() / stepRunner.getBatchSize()), (long) Math.ceil((double) errorCount.get() / stepRunner.getBatchSize()));
-                    }
-                    else {
-                        stepResp.setCounts(0, 0, 0, 0, 0);
-                    }
+            final String jobId = flowContext.jobId;
+            final Flow flow = flowContext.flow;
+            final Queue<String> stepQueue = flowContext.stepQueue;
+            RunFlowResponse resp = flowContext.response;
+            resp.setFlowName(flow.getName());
 
-                    StringWriter errors = new StringWriter();
-                    e.printStackTrace(new PrintWriter(errors));
-                    stepResp.withStepOutput(errors.toString());
-                    stepResp.withSuccess(false);
-                    if(successCount.get() > 0) {
-                        stepResp.withStatus(JobStatus.COMPLETED_WITH_ERRORS_PREFIX + stepNum);
-                    }
-                    else{
-                        stepResp.withStatus(JobStatus.FAILED_PREFIX + stepNum);
-                    }
+            Map<String, RunStepResponse> stepOutputs = flowContext.stepOutputs;
 
-                    if(runningFlow.isStopOnError()) {
-                        jobStoppedOnError.set(true);
-                        stopJob(runningJobId);
-                    }
-                }
-                finally {
-                    stepOutputs.put(stepNum, stepResp);
-                    if(stepResp != null && !stepResp.isSuccess()) {
-                        isJobSuccess.set(false);
-                    }
-                }
-            }
+            runSteps(stepQueue);
 
             resp.setStepResponses(stepOutputs);
 
             final JobStatus jobStatus;
             //Update status of job
-            if (isJobCancelled.get()) {
-                if(runningFlow.isStopOnError() && jobStoppedOnError.get()){
+            if (flowContext.isJobCancelled.get()) {
+                if(flow.isStopOnError() && flowContext.jobStoppedOnError.get()){
                     jobStatus = JobStatus.STOP_ON_ERROR;
                 }
                 else {
                     jobStatus = JobStatus.CANCELED;
                 }
             }
-            else if (!isJobSuccess.get()) {
+            else if (!flowContext.isJobSuccess.get()) {
                     Collection<RunStepResponse> stepResps = stepOutputs.values();
                     long failedStepCount = stepResps.stream().filter((stepResp)-> stepResp.getStatus()
                         .contains(JobStatus.FAILED_PREFIX)).collect(Collectors.counting());
@@ -436,17 +584,135 @@ public class FlowRunnerImpl implements FlowRunner {
                     }
                 }
 
-                jobQueue.remove();
-                stepsMap.remove(jobId);
-                flowMap.remove(jobId);
-                flowContextMap.remove(jobId);
-                flowResp.remove(runningJobId);
-                if (!jobQueue.isEmpty()) {
-                    initializeFlow(stepRunnerFactory, jobQueue.peek());
-                } else {
-                    isRunning.set(false);
-                    threadPool.shutdownNow();
-                    runningFlow = null;
+                finishFlow(flowContext);
+            }
+        }
+
+        /**
+         * Runs every step in the queue once its dependencies have finished, starting as many ready steps at once as
+         * the step thread budget allows. Steps are run on threads separate from this one so that this thread can start
+         * the next ready step as soon as any running step finishes.
+         *
+         * @param stepQueue
+         */
+        private void runSteps(Queue<String> stepQueue) {
+            final Flow flow = flowContext.flow;
+            ExecutorService stepExecutor = Executors.newCachedThreadPool();
+            CompletionService<String> completionService = new ExecutorCompletionService<>(stepExecutor);
+            int runningStepCount = 0;
+            try {
+                while (true) {
+                    for (String stepNum : flowContext.stepGraph.takeReadySteps(stepQueue, flowContext.finishedSteps)) {
+                        final int threadCount = StepGraph.determineThreadCount(flow, stepNum);
+                        final StepThreadBudget budget = stepThreadBudget;
+                        budget.acquire(threadCount);
+                        runningStepCount++;
+                        completionService.submit(() -> {
+                            try {
+                                runStep(stepNum);
+                            } finally {
+                                budget.release(threadCount);
+                            }
+                            return stepNum;
+                        });
+                    }
+                    if (runningStepCount == 0) {
+                        if (!stepQueue.isEmpty()) {
+                            logger.error(String.format("Unable to run steps %s in flow '%s' as their dependencies cannot be satisfied",
+                                stepQueue, flow.getName()));
+                        }
+                        break;
+                    }
+                    String finishedStep = completionService.take().get();
+                    runningStepCount--;
+                    flowContext.finishedSteps.add(finishedStep);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while running steps in flow: " + flow.getName(), e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Unexpected error while running steps in flow: " + flow.getName(), e.getCause());
+            } finally {
+                stepExecutor.shutdown();
+            }
+        }
+
+        private void runStep(String stepNum) {
+            final String jobId = flowContext.jobId;
+            final Flow flow = flowContext.flow;
+            final Map<String, RunStepResponse> stepOutputs = flowContext.stepOutputs;
+
+            flowContext.runningStep = flow.getSteps().get(stepNum);
+            Map<String, Object> runtimeOptions = flow.getRuntimeOptions() != null ?
+                new HashMap<>(flow.getRuntimeOptions()) : new HashMap<>();
+
+            AtomicLong errorCount = new AtomicLong();
+            AtomicLong successCount = new AtomicLong();
+            RunStepResponse stepResp = null;
+            StepRunner stepRunner = null;
+
+            try {
+                stepRunner = flowContext.stepRunnerFactory.getStepRunner(flow, stepNum)
+                    .withJobId(jobId)
+                    .withRuntimeOptions(runtimeOptions)
+                    .onItemComplete((jobID, itemID) -> {
+                        successCount.incrementAndGet();
+                    })
+                    .onItemFailed((jobID, itemId)-> {
+                        errorCount.incrementAndGet();
+                        if(flow.isStopOnError()){
+                            flowContext.jobStoppedOnError.set(true);
+                            stopJob(jobID);
+                        }
+                    });
+
+                if(flow.getOverrideStepConfig() != null) {
+                    stepRunner.withStepConfig(flow.getOverrideStepConfig());
+                }
+                for (StepMetricsListener listener : stepMetricsListeners) {
+                    stepRunner.onMetrics(listener);
+                }
+                flowContext.runningStepRunners.add(stepRunner);
+                if (flowContext.isJobCancelled.get()) {
+                    // The job may have been stopped after this step was selected to run but before its runner was known
+                    stepRunner.stop();
+                }
+                stepResp = stepRunner.run();
+                stepRunner.awaitCompletion();
+            }
+            catch (Exception e) {
+                stepResp = RunStepResponse.withFlow(flow).withStep(stepNum);
+                stepResp.withJobId(jobId);
+                if(stepRunner != null){
+                    stepResp.setCounts(successCount.get() + errorCount.get(), successCount.get(), errorCount.get(), (long) Math.ceil((double) successCount.get() / stepRunner.getBatchSize()), (long) Math.ceil((double) errorCount.get() / stepRunner.getBatchSize()));
+                }
+                else {
+                    stepResp.setCounts(0, 0, 0, 0, 0);
+                }
+
+                StringWriter errors = new StringWriter();
+                e.printStackTrace(new PrintWriter(errors));
+                stepResp.withStepOutput(errors.toString());
+                stepResp.withSuccess(false);
+                if(successCount.get() > 0) {
+                    stepResp.withStatus(JobStatus.COMPLETED_WITH_ERRORS_PREFIX + stepNum);
+                }
+                else{
+                    stepResp.withStatus(JobStatus.FAILED_PREFIX + stepNum);
+                }
+
+                if(flow.isStopOnError()) {
+                    flowContext.jobStoppedOnError.set(true);
+                    stopJob(jobId);
+                }
+            }
+            finally {
+                stepOutputs.put(stepNum, stepResp);
+                if(stepResp != null && !stepResp.isSuccess()) {
+                    flowContext.isJobSuccess.set(false);
+                }
+                if (stepRunner != null) {
+                    flowContext.runningStepRunners.remove(stepRunner);
                 }
             }
         }
@@ -491,20 +757,15 @@ public class FlowRunnerImpl implements FlowRunner {
             if (t != null) {
                 logger.error("Caught error while running FlowRunnerTask: " + t.getMessage());
                 FlowRunnerTask flowRunnerTask = (FlowRunnerTask)r;
+                FlowContext flowContext = flowRunnerTask.flowContext;
                 //Run the next queued flow if stop-on-error is set or if the step queue is empty
-                if (flowRunnerTask.getStepQueue().isEmpty() || runningFlow.isStopOnError()) {
-                    jobQueue.remove();
-                    if (!jobQueue.isEmpty()) {
-                        initializeFlow(flowRunnerTask.stepRunnerFactory, jobQueue.peek());
-                    } else {
-                        isRunning.set(false);
-                        threadPool.shutdownNow();
-                    }
+                if (flowRunnerTask.getStepQueue().isEmpty() || flowContext.flow.isStopOnError()) {
+                    finishFlow(flowContext);
                 }
                 //Run the next step
                 else {
                     if (threadPool != null && !threadPool.isTerminating()) {
-                        threadPool.execute(new FlowRunnerTask(flowRunnerTask.stepRunnerFactory, runningFlow, runningJobId));
+                        threadPool.execute(new FlowRunnerTask(flowContext));
                     }
                 }
             }
@@ -514,40 +775,105 @@ public class FlowRunnerImpl implements FlowRunner {
     //These methods are used by UI.
 
     public List<String> getQueuedJobIdsFromFlow(String flowName) {
-        return flowMap
+        return flowContextMap
             .entrySet()
             .stream()
-            .filter(entry -> flowName.equals(entry.getValue().getName()))
+            .filter(entry -> flowName.equals(entry.getValue().flow.getName()))
             .map(Map.Entry::getKey)
             .collect(Collectors.toList());
     }
 
     public RunFlowResponse getJobResponseById(String jobId) {
-        return flowResp.get(jobId);
+        FlowContext flowContext = flowContextMap.get(jobId);
+        return flowContext != null ? flowContext.response : null;
     }
 
     public boolean isJobRunning() {
         return isRunning.get();
     }
 
+    /**
+     * @return the IDs of the jobs that are currently running, in the order in which they were started
+     */
+    public List<String> getRunningJobIds() {
+        synchronized (runningJobIds) {
+            return new ArrayList<>(runningJobIds);
+        }
+    }
+
+    /**
+     * @return the key of the running step of the job that was started first, or null if no job is running
+     */
     public String getRunningStepKey() {
-        return runningFlow.getSteps().entrySet()
+        String jobId = getFirstRunningJobId();
+        return jobId != null ? getRunningStepKey(jobId) : null;
+    }
+
+    public String getRunningStepKey(String jobId) {
+        FlowContext flowContext = flowContextMap.get(jobId);
+        if (flowContext == null) {
+            return null;
+        }
+        final Step runningStep = flowContext.runningStep;
+        return flowContext.flow.getSteps().entrySet()
             .stream()
             .filter(entry -> Objects.equals(entry.getValue(), runningStep))
             .map(Map.Entry::getKey)
             .collect(Collectors.joining());
-
     }
 
+    /**
+     * @return the flow of the job that was started first, or null if no job is running
+     */
     public Flow getRunningFlow() {
-        return this.runningFlow;
+        String jobId = getFirstRunningJobId();
+        return jobId != null ? getRunningFlow(jobId) : null;
     }
 
+    public Flow getRunningFlow(String jobId) {
+        FlowContext flowContext = runningJobIds.contains(jobId) ? flowContextMap.get(jobId) : null;
+        return flowContext != null ? flowContext.flow : null;
+    }
+
+    private String getFirstRunningJobId() {
+        synchronized (runningJobIds) {
+            Iterator<String> iter = runningJobIds.iterator();
+            return iter.hasNext() ? iter.next() : null;
+        }
+    }
+
+    /**
+     * Captures all of the state of a single job, from when it is queued until it has finished running.
+     */
     class FlowContext {
+        final String jobId;
+        final Flow flow;
+        final Queue<String> stepQueue;
+        final RunFlowResponse response;
+        final StepRunnerFactory stepRunnerFactory;
+        final StepGraph stepGraph;
+        // Retained across FlowRunnerTask instances, so that the outputs of steps run before a task failed are not lost
+        final Map<String, RunStepResponse> stepOutputs = Collections.synchronizedMap(new LinkedHashMap<>());
+        final Set<String> finishedSteps = ConcurrentHashMap.newKeySet();
+        final Set<StepRunner> runningStepRunners = ConcurrentHashMap.newKeySet();
+
+        final AtomicBoolean isJobCancelled = new AtomicBoolean(false);
+        final AtomicBoolean isJobSuccess = new AtomicBoolean(true);
+        final AtomicBoolean jobStoppedOnError = new AtomicBoolean(false);
+        volatile Step runningStep;
+
         boolean jobOutputIsEnabled = true;
+        boolean resumed = false;
         JobService jobService;
 
-        FlowContext(Flow flow, Map<String, Object> runtimeOptions) {
+        FlowContext(String jobId, Flow flow, Map<String, Object> runtimeOptions, Queue<String> stepQueue,
+                    RunFlowResponse response, StepRunnerFactory stepRunnerFactory) {
+            this.jobId = jobId;
+            this.flow = flow;
+            this.stepQueue = stepQueue;
+            this.stepGraph = new StepGraph(flow, new ArrayList<>(stepQueue));
+            this.response = response;
+            this.stepRunnerFactory = stepRunnerFactory;
             calculateJobOutputIsEnabled(flow, runtimeOptions);
         }
 
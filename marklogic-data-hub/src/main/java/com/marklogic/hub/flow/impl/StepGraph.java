@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.flow.impl;
+
+import com.marklogic.hub.flow.Flow;
+import com.marklogic.hub.step.impl.Step;
+
+import java.util.*;
+
+/**
+ * Determines the order in which the selected steps of a flow can be run. If no step in the flow declares "dependsOn",
+ * each step depends on the step selected before it, so that steps are run one at a time in the order in which they
+ * were selected. Otherwise, each step depends only on the selected steps in its "dependsOn" array; a dependency on a
+ * step that was not selected is considered to be satisfied, as that step is not part of the job.
+ */
+class StepGraph {
+
+    private final boolean parallel;
+    private final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+
+    StepGraph(Flow flow, List<String> stepNumbers) {
+        this.parallel = flow.getSteps().values().stream()
+            .anyMatch(step -> step != null && step.getDependsOn() != null && !step.getDependsOn().isEmpty());
+
+        String previousStepNumber = null;
+        for (String stepNumber : stepNumbers) {
+            Set<String> stepDependencies = new LinkedHashSet<>();
+            if (parallel) {
+                List<String> dependsOn = flow.getStep(stepNumber).getDependsOn();
+                if (dependsOn != null) {
+                    for (String dependency : dependsOn) {
+                        if (flow.getStep(dependency) == null) {
+                            throw new IllegalArgumentException(String.format("Step %s in flow '%s' depends on step %s, which does not exist in the flow",
+                                stepNumber, flow.getName(), dependency));
+                        }
+                        if (stepNumbers.contains(dependency)) {
+                            stepDependencies.add(dependency);
+                        }
+                    }
+                }
+            } else if (previousStepNumber != null) {
+                stepDependencies.add(previousStepNumber);
+            }
+            dependencies.put(stepNumber, stepDependencies);
+            previousStepNumber = stepNumber;
+        }
+
+        if (parallel) {
+            verifyNoCycles(flow.getName());
+        }
+    }
+
+    private void verifyNoCycles(String flowName) {
+        Set<String> visited = new HashSet<>();
+        for (String stepNumber : dependencies.keySet()) {
+            visit(stepNumber, new LinkedHashSet<>(), visited, flowName);
+        }
+    }
+
+    private void visit(String stepNumber, LinkedHashSet<String> path, Set<String> visited, String flowName) {
+        if (path.contains(stepNumber)) {
+            List<String> cycle = new ArrayList<>(path);
+            cycle = cycle.subList(cycle.indexOf(stepNumber), cycle.size());
+            cycle.add(stepNumber);
+            throw new IllegalArgumentException(String.format("The steps in flow '%s' cannot be run because of a cycle in their dependencies: %s",
+                flowName, String.join(" -> ", cycle)));
+        }
+        if (visited.add(stepNumber)) {
+            path.add(stepNumber);
+            for (String dependency : dependencies.get(stepNumber)) {
+                visit(dependency, path, visited, flowName);
+            }
+            path.remove(stepNumber);
+        }
+    }
+
+    /**
+     * @return true if any step in the flow declares dependencies, which allows for more than one step to be run at once
+     */
+    boolean isParallel() {
+        return parallel;
+    }
+
+    Set<String> getDependencies(String stepNumber) {
+        return dependencies.getOrDefault(stepNumber, Collections.emptySet());
+    }
+
+    /**
+     * Removes and returns every step in the given queue whose dependencies have all finished, preserving the order of
+     * the queue.
+     *
+     * @param pendingSteps   steps that have not yet been started
+     * @param finishedSteps  steps that have finished, whether successfully or not
+     * @return the steps that are now ready to be run
+     */
+    List<String> takeReadySteps(Queue<String> pendingSteps, Set<String> finishedSteps) {
+        List<String> readySteps = new ArrayList<>();
+        for (String stepNumber : pendingSteps) {
+            if (finishedSteps.containsAll(getDependencies(stepNumber))) {
+                readySteps.add(stepNumber);
+            }
+        }
+        readySteps.forEach(pendingSteps::remove);
+        return readySteps;
+    }
+
+    /**
+     * @param flow
+     * @param stepNumber
+     * @return the number of threads the step will use, based on the same precedence of step config, step, and flow
+     * that is used when constructing a StepRunner
+     */
+    static int determineThreadCount(Flow flow, String stepNumber) {
+        Map<String, Object> stepConfig = flow.getOverrideStepConfig();
+        if (stepConfig != null && stepConfig.get("threadCount") != null) {
+            try {
+                return Integer.parseInt(stepConfig.get("threadCount").toString());
+            } catch (NumberFormatException ex) {
+                // Fall through to the step and flow values
+            }
+        }
+        Step step = flow.getStep(stepNumber);
+        if (step != null && step.getThreadCount() != null && step.getThreadCount() != 0) {
+            return step.getThreadCount();
+        }
+        return flow.getThreadCount() != 0 ? flow.getThreadCount() : FlowImpl.DEFAULT_THREAD_COUNT;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.flow.impl;
+
+/**
+ * Limits the combined thread count of the steps that a FlowRunner is running at the same time. A step whose thread
+ * count exceeds the budget on its own is allowed to run once no other step is holding any threads, so that it is not
+ * blocked forever.
+ */
+class StepThreadBudget {
+
+    private final int maxThreads;
+    private int threadsInUse = 0;
+
+    StepThreadBudget(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Blocks until the given number of threads can be used without exceeding the budget.
+     *
+     * @param threads
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void acquire(int threads) throws InterruptedException {
+        while (threadsInUse > 0 && threadsInUse + threads > maxThreads) {
+            wait();
+        }
+        threadsInUse += threads;
+    }
+
+    synchronized void release(int threads) {
+        threadsInUse = Math.max(0, threadsInUse - threads);
+        notifyAll();
+    }
+
+    synchronized int getThreadsInUse() {
+        return threadsInUse;
+    }
+
+    int getMaxThreads() {
+        return maxThreads;
+    }
+}
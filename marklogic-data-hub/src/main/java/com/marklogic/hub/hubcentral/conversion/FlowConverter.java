@@ -235,7 +235,9 @@ public class FlowConverter extends LoggingObject {
                     stepNode.put("stepDefinitionType", StepDefinitionType.CUSTOM.toString());
                 }
                 ObjectNode newStepArtifact = createStepArtifact(flowName, stepNode);
-                stepsNode.set(entry.getKey(), nodeFactory.objectNode().put("stepId", stepId));
+                // dependsOn refers to other step numbers in this flow, so it stays with the step reference in the flow
+                JsonNode dependsOn = newStepArtifact.remove("dependsOn");
+                stepsNode.set(entry.getKey(), newStepReference(nodeFactory, stepId, dependsOn));
 
                 String stepFileName = stepName + ".step.json";
                 File stepFile = targetDir.resolve(stepFileName).toFile();
@@ -251,7 +253,7 @@ public class FlowConverter extends LoggingObject {
                     logger.warn(msg + stepFile.toString());
                     stepId = flowName + "-" + stepId;
                     // Update the stepId in the flow
-                    stepsNode.set(entry.getKey(), nodeFactory.objectNode().put("stepId", stepId));
+                    stepsNode.set(entry.getKey(), newStepReference(nodeFactory, stepId, dependsOn));
                 }
                 // 'stepId' should be included in every step
                 newStepArtifact.put("stepId", stepId);
@@ -348,6 +350,20 @@ public class FlowConverter extends LoggingObject {
         return buildStepArtifact(inlineStep, mapping, flowName);
     }
 
+    /**
+     * @param nodeFactory
+     * @param stepId
+     * @param dependsOn optional; the step numbers that the step depends on
+     * @return the reference to a step artifact that replaces the inline step in the flow
+     */
+    protected ObjectNode newStepReference(JsonNodeFactory nodeFactory, String stepId, JsonNode dependsOn) {
+        ObjectNode stepReference = nodeFactory.objectNode().put("stepId", stepId);
+        if (dependsOn != null && !dependsOn.isNull()) {
+            stepReference.set("dependsOn", dependsOn);
+        }
+        return stepReference;
+    }
+
     /**
      * Extracted for easy unit testing; has no dependencies on anything other than the inputs.
      *
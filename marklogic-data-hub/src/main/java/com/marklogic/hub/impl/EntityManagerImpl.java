@@ -50,6 +50,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 @Component
@@ -192,21 +193,7 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
 
     private List<JsonNode> getAllEntities() {
         List<JsonNode> entities = new ArrayList<>(getAllLegacyEntities());
-        Path entitiesPath = hubConfig.getHubEntitiesDir();
-        File[] entityDefs = entitiesPath.toFile().listFiles(pathname -> pathname.toString().endsWith(ENTITY_FILE_EXTENSION) && !pathname.isHidden());
-        if (entityDefs != null) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            for (File entityDef : entityDefs) {
-                try {
-                    FileInputStream fileInputStream = new FileInputStream(entityDef);
-                    entities.add(objectMapper.readTree(fileInputStream));
-                    fileInputStream.close();
-                } catch (IOException e) {
-                    logger.warn(format("Ignoring %s entity model as malformed JSON content is found", entityDef.getName()));
-                    logger.error(e.getMessage());
-                }
-            }
-        }
+        entities.addAll(getEntityModelIndex().getSnapshot().getModelNodes());
         return entities;
     }
 
@@ -253,7 +240,8 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
 
     @Override
     public HubEntity getEntityFromProject(String entityName, String version, Boolean extendSubEntities) {
-        return getEntityFromProject(entityName, getEntities(), version, extendSubEntities);
+        EntityModelIndex.Snapshot snapshot = getEntityModelIndex().getSnapshot();
+        return getEntityFromEntityDefinitions(entityName, snapshot::getDefinition, version, extendSubEntities);
     }
 
     /**
@@ -282,16 +270,28 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
      * @return
      */
     protected HubEntity getEntityFromEntityDefinitions(String entityName, List<HubEntity> entityDefinitions, String version, Boolean extendSubEntities) {
-        HubEntity entity = null;
-        for (HubEntity e : entityDefinitions) {
-            InfoType info = e.getInfo();
-            if (entityName.equals(info.getTitle()) && (version == null || version.equals(info.getVersion()))) {
-                entity = e;
-                if (extendSubEntities) {
-                    addSubProperties(entity, entityDefinitions, version);
+        return getEntityFromEntityDefinitions(entityName, (title, titleVersion) -> {
+            for (HubEntity e : entityDefinitions) {
+                InfoType info = e.getInfo();
+                if (title.equals(info.getTitle()) && (titleVersion == null || titleVersion.equals(info.getVersion()))) {
+                    return e;
                 }
-                break;
             }
+            return null;
+        }, version, extendSubEntities);
+    }
+
+    /**
+     * @param entityName
+     * @param definitionLookup finds an entity definition by title and version, returning null if none is found
+     * @param version
+     * @param extendSubEntities
+     * @return
+     */
+    protected HubEntity getEntityFromEntityDefinitions(String entityName, BiFunction<String, String, HubEntity> definitionLookup, String version, Boolean extendSubEntities) {
+        HubEntity entity = definitionLookup.apply(entityName, version);
+        if (entity != null && extendSubEntities) {
+            addSubProperties(entity, definitionLookup, version);
         }
         return entity;
     }
@@ -334,10 +334,10 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
      * at any depth of nested entities.
      *
      * @param entity
-     * @param entityDefinitions
+     * @param definitionLookup
      * @param version
      */
-    protected void addSubProperties(HubEntity entity, List<HubEntity> entityDefinitions, String version) {
+    protected void addSubProperties(HubEntity entity, BiFunction<String, String, HubEntity> definitionLookup, String version) {
         Map<String, DefinitionType> definitions = entity.getDefinitions().getDefinitions();
         for (String definitionName : definitions.keySet()) {
             DefinitionType definition = definitions.get(definitionName);
@@ -352,7 +352,7 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
                 if (StringUtils.isNotEmpty(ref)) {
                     if (ref.startsWith("#/")) {
                         String subEntityName = ref.substring(ref.lastIndexOf('/') + 1);
-                        HubEntity subEntity = getEntityFromEntityDefinitions(subEntityName, entityDefinitions, version, true);
+                        HubEntity subEntity = getEntityFromEntityDefinitions(subEntityName, definitionLookup, version, true);
                         if (subEntity != null) {
                             DefinitionType subDefinition = subEntity.getDefinitions().getDefinitions().get(subEntityName);
                             property.setSubProperties(subDefinition.getProperties());
@@ -375,24 +375,11 @@ public class EntityManagerImpl extends LoggingObject implements EntityManager {
 
     @Override
     public List<HubEntity> getEntities(Boolean extendSubEntities) {
-        List<HubEntity> entities = new ArrayList<>();
-        Path entitiesPath = hubConfig.getHubEntitiesDir();
-        ObjectMapper objectMapper = new ObjectMapper();
-        File[] entityDefs = entitiesPath.toFile().listFiles((dir, name) -> name.endsWith(ENTITY_FILE_EXTENSION));
-        if (entityDefs != null) {
-            for (File entityDef : entityDefs) {
-                try {
-                    FileInputStream fileInputStream = new FileInputStream(entityDef);
-                    JsonNode node = objectMapper.readTree(fileInputStream);
-                    entities.add(HubEntity.fromJson(entityDef.getAbsolutePath(), node));
-                    fileInputStream.close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        }
+        return getEntityModelIndex().getSnapshot().getModels();
+    }
 
-        return entities;
+    protected EntityModelIndex getEntityModelIndex() {
+        return EntityModelIndex.forDirectory(hubConfig.getHubEntitiesDir());
     }
 
     @Deprecated // since DHF 5.3.0; use ModelsService instead
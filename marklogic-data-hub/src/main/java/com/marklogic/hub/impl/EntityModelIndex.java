@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.hub.entity.DefinitionType;
+import com.marklogic.hub.entity.DefinitionsType;
+import com.marklogic.hub.entity.HubEntity;
+import com.marklogic.hub.entity.InfoType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the entity model files in a project's entities directory. Each model file is parsed once and
+ * then only parsed again when its last-modified time or length changes; a model file that is added or removed is
+ * detected the next time the index is refreshed. Entity definitions are indexed by title so that looking up a single
+ * definition does not require reading and flattening every model file in the project.
+ * <p>
+ * Instances are shared per directory, as EntityManagerImpl and the deployment commands are frequently constructed for
+ * a single operation. Each refresh produces an immutable Snapshot; every HubEntity and JsonNode returned by a snapshot
+ * is a new object, so callers are free to modify them.
+ */
+public class EntityModelIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityModelIndex.class);
+
+    // File systems may only record modification times at this granularity; a file modified within this window of
+    // being read could be modified again without its modification time changing, so it is not trusted to be current
+    private static final long MODIFICATION_TIME_GRANULARITY_MS = 2000;
+
+    private static final Map<Path, EntityModelIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Path entitiesDir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    /**
+     * @param entitiesDir
+     * @return the index shared by all callers for the given directory
+     */
+    public static EntityModelIndex forDirectory(Path entitiesDir) {
+        return indexes.computeIfAbsent(entitiesDir.toAbsolutePath().normalize(), EntityModelIndex::new);
+    }
+
+    protected EntityModelIndex(Path entitiesDir) {
+        this.entitiesDir = entitiesDir;
+    }
+
+    /**
+     * Checks the entities directory for model files that have been added, modified, or removed since the last refresh,
+     * and parses only the files that are new or modified.
+     *
+     * @return a snapshot of the model files as they currently exist in the entities directory
+     */
+    public synchronized Snapshot getSnapshot() {
+        File[] files = entitiesDir.toFile().listFiles((dir, name) -> name.endsWith(EntityManagerImpl.ENTITY_FILE_EXTENSION));
+        if (files == null) {
+            files = new File[0];
+        }
+
+        List<ModelFile> currentModelFiles = snapshot.modelFiles;
+        Map<File, ModelFile> existingModelFiles = new HashMap<>();
+        currentModelFiles.forEach(modelFile -> existingModelFiles.put(modelFile.file, modelFile));
+
+        boolean changed = files.length != currentModelFiles.size();
+        List<ModelFile> modelFiles = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            ModelFile modelFile = existingModelFiles.get(file);
+            if (modelFile == null || modelFile.isStale()) {
+                modelFile = readModelFile(file);
+                changed = true;
+            } else if (!changed && currentModelFiles.get(i) != modelFile) {
+                // Order matters when a definition is looked up without a version
+                changed = true;
+            }
+            modelFiles.add(modelFile);
+        }
+
+        if (changed) {
+            snapshot = new Snapshot(modelFiles);
+        }
+        return snapshot;
+    }
+
+    private ModelFile readModelFile(File file) {
+        long readTime = System.currentTimeMillis();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        boolean recentlyModified = lastModified > readTime - MODIFICATION_TIME_GRANULARITY_MS;
+        try {
+            return new ModelFile(file, lastModified, length, recentlyModified, objectMapper.readTree(file), null);
+        } catch (IOException e) {
+            return new ModelFile(file, lastModified, length, recentlyModified, null, e);
+        }
+    }
+
+    private static class ModelFile {
+        final File file;
+        final long lastModified;
+        final long length;
+        final boolean recentlyModified;
+        final JsonNode model;
+        final IOException readError;
+
+        ModelFile(File file, long lastModified, long length, boolean recentlyModified, JsonNode model, IOException readError) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.recentlyModified = recentlyModified;
+            this.model = model;
+            this.readError = readError;
+        }
+
+        boolean isStale() {
+            return recentlyModified || file.lastModified() != lastModified || file.length() != length;
+        }
+    }
+
+    private static class DefinitionRef {
+        final ModelFile modelFile;
+        final String title;
+        final String version;
+
+        DefinitionRef(ModelFile modelFile, String title, String version) {
+            this.modelFile = modelFile;
+            this.title = title;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The state of the entity model files at the time of a refresh.
+     */
+    public static class Snapshot {
+
+        private final List<ModelFile> modelFiles;
+        private final Map<String, List<DefinitionRef>> definitionsByTitle = new HashMap<>();
+
+        private Snapshot(List<ModelFile> modelFiles) {
+            this.modelFiles = Collections.unmodifiableList(modelFiles);
+            for (ModelFile modelFile : modelFiles) {
+                if (modelFile.model != null && modelFile.model.has("definitions")) {
+                    String version = InfoType.fromJson(modelFile.model.get("info")).getVersion();
+                    modelFile.model.get("definitions").fieldNames().forEachRemaining(title ->
+                        definitionsByTitle.computeIfAbsent(title, key -> new ArrayList<>())
+                            .add(new DefinitionRef(modelFile, title, version))
+                    );
+                }
+            }
+        }
+
+        /**
+         * @return a HubEntity for each model file
+         * @throws RuntimeException if any model file could not be read
+         */
+        public List<HubEntity> getModels() {
+            assertModelsAreReadable();
+            List<HubEntity> models = new ArrayList<>();
+            for (ModelFile modelFile : modelFiles) {
+                models.add(HubEntity.fromJson(modelFile.file.getAbsolutePath(), modelFile.model));
+            }
+            return models;
+        }
+
+        /**
+         * @return a copy of the JSON of each model file that is not hidden; a model file that could not be read is
+         * ignored, with a warning logged
+         */
+        public List<JsonNode> getModelNodes() {
+            List<JsonNode> nodes = new ArrayList<>();
+            for (ModelFile modelFile : modelFiles) {
+                if (modelFile.file.isHidden()) {
+                    continue;
+                }
+                if (modelFile.readError != null) {
+                    logger.warn(String.format("Ignoring %s entity model as malformed JSON content is found", modelFile.file.getName()));
+                    logger.error(modelFile.readError.getMessage());
+                } else {
+                    nodes.add(modelFile.model.deepCopy());
+                }
+            }
+            return nodes;
+        }
+
+        /**
+         * @return each model file that is not hidden
+         */
+        public List<File> getModelFiles() {
+            List<File> files = new ArrayList<>();
+            for (ModelFile modelFile : modelFiles) {
+                if (!modelFile.file.isHidden()) {
+                    files.add(modelFile.file);
+                }
+            }
+            return files;
+        }
+
+        /**
+         * Finds an entity definition by its title and, optionally, the version of the model that contains it. If no
+         * version is specified, the definition from the first model file containing a definition with the given title
+         * is returned.
+         *
+         * @param title
+         * @param version
+         * @return a HubEntity containing only the matching definition, with its info title set to the definition title;
+         * null if no matching definition exists
+         * @throws RuntimeException if any model file could not be read
+         */
+        public HubEntity getDefinition(String title, String version) {
+            assertModelsAreReadable();
+            List<DefinitionRef> refs = definitionsByTitle.get(title);
+            if (refs != null) {
+                for (DefinitionRef ref : refs) {
+                    if (version == null || version.equals(ref.version)) {
+                        return toHubEntity(ref);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private HubEntity toHubEntity(DefinitionRef ref) {
+            JsonNode model = ref.modelFile.model;
+            InfoType modelInfo = InfoType.fromJson(model.get("info"));
+            InfoType info = new InfoType();
+            info.setBaseUri(modelInfo.getBaseUri());
+            info.setDescription(modelInfo.getDescription());
+            info.setTitle(ref.title);
+            info.setVersion(modelInfo.getVersion());
+
+            DefinitionsType definitionsType = new DefinitionsType();
+            definitionsType.addDefinition(ref.title, DefinitionType.fromJson(ref.title, model.get("definitions").get(ref.title)));
+
+            HubEntity entity = new HubEntity();
+            entity.setFilename(ref.modelFile.file.getAbsolutePath());
+            entity.setInfo(info);
+            entity.setDefinitions(definitionsType);
+            return entity;
+        }
+
+        private void assertModelsAreReadable() {
+            for (ModelFile modelFile : modelFiles) {
+                if (modelFile.readError != null) {
+                    throw new RuntimeException(modelFile.readError);
+                }
+            }
+        }
+    }
+}
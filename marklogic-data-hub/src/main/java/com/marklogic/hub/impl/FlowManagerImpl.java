@@ -21,6 +21,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.marklogic.client.DatabaseClient;
 import com.marklogic.client.FailedRequestException;
@@ -166,21 +167,47 @@ public class FlowManagerImpl extends LoggingObject implements FlowManager {
         }
     }
 
+    /**
+     * Retrieves every local flow in a single call to the server, falling back to the flow file for any flow that has
+     * not yet been deployed. Flows are deserialized in parallel, as projects may have hundreds of flows.
+     *
+     * @return
+     */
     @Override
     public List<Flow> getFlows() {
         List<String> flowNames = getLocalFlowNames();
-        List<Flow> flows = new ArrayList<>();
-        for (String flowName : flowNames) {
-            Flow flow = getFlow(flowName);
-            if (flow == null) {
-                flow = getLocalFlow(flowName);
-            }
-            flows.add(flow);
-        }
+        Map<String, JsonNode> deployedFlows = getDeployedFlows(flowNames);
+        List<Flow> flows = flowNames.parallelStream()
+            .map(flowName -> deployedFlows.containsKey(flowName) ?
+                new FlowImpl().deserialize(deployedFlows.get(flowName)) :
+                getLocalFlow(flowName))
+            .collect(Collectors.toList());
         Collections.sort(flows, (a, b) -> a.getName().compareTo(b.getName()));
         return flows;
     }
 
+    /**
+     * @param flowNames
+     * @return a map of flow name to flow JSON for each of the given flows that has been deployed; empty if the
+     * endpoint for retrieving flows does not exist, such as when modules have not been deployed yet
+     */
+    protected Map<String, JsonNode> getDeployedFlows(List<String> flowNames) {
+        Map<String, JsonNode> deployedFlows = new HashMap<>();
+        if (flowNames.isEmpty()) {
+            return deployedFlows;
+        }
+        ArrayNode names = new ObjectMapper().createArrayNode();
+        flowNames.forEach(names::add);
+        try {
+            getFlowService().getFlows(names).forEach(flow -> deployedFlows.put(flow.get("name").asText(), flow));
+        } catch (FailedRequestException ex) {
+            if (HttpStatus.valueOf(ex.getServerStatusCode()) != HttpStatus.NOT_FOUND) {
+                throw new RuntimeException("Unable to retrieve flows with names: " + flowNames, ex);
+            }
+        }
+        return deployedFlows;
+    }
+
     @Override
     public List<String> getLocalFlowNames() {
         // Get all the files with flow.json extension from flows dir
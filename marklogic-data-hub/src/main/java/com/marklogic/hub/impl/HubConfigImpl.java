@@ -87,6 +87,8 @@ public class HubConfigImpl extends HubClientConfig implements HubConfig
 
     private String hubLogLevel;
 
+    private Integer loadUserArtifactsThreadCount;
+
     private Boolean isProvisionedEnvironment;
 
     protected String customForestPath;
@@ -1139,6 +1141,15 @@ public class HubConfigImpl extends HubClientConfig implements HubConfig
         return this.hubLogLevel;
     }
 
+    @Override
+    public int getLoadUserArtifactsThreadCount() {
+        return loadUserArtifactsThreadCount;
+    }
+
+    public void setLoadUserArtifactsThreadCount(int loadUserArtifactsThreadCount) {
+        this.loadUserArtifactsThreadCount = loadUserArtifactsThreadCount;
+    }
+
     /**
      * Populates the custom tokens map in the given AppConfig object. For each field, if its value is set, then that value
      * is stored in the custom tokens map. Else, an attempt is made to retrieve a value for the field from the Spring
@@ -1406,6 +1417,7 @@ public class HubConfigImpl extends HubClientConfig implements HubConfig
 
         hubLogLevel = "default";
         isProvisionedEnvironment = false;
+        loadUserArtifactsThreadCount = 8;
 
         stagingHttpName = "data-hub-STAGING";
         stagingForestsPerHost = 3;
@@ -1475,6 +1487,8 @@ public class HubConfigImpl extends HubClientConfig implements HubConfig
 
         getPropertyConsumerMap().put("mlHubLogLevel", prop -> hubLogLevel = prop);
 
+        getPropertyConsumerMap().put("mlLoadUserArtifactsThreadCount", prop -> loadUserArtifactsThreadCount = Integer.parseInt(prop));
+
         getPropertyConsumerMap().put("mlEntityModelPermissions", prop -> entityModelPermissions = prop);
         getPropertyConsumerMap().put("mlFlowPermissions", prop -> flowPermissions = prop);
         getPropertyConsumerMap().put("mlJobPermissions", prop -> jobPermissions = prop);
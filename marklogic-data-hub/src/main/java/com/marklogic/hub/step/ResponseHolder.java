@@ -29,6 +29,10 @@ public class ResponseHolder {
     public List<JsonNode> errors;
     public List<JsonNode> documents;
 
+    // Set by the processBatch endpoint when step options are referenced via a key; see StepOptionsHandle
+    public boolean stepOptionsNotFound = false;
+    public Boolean stepOptionsCached;
+
     public String toString() {
         int completedSize = completedItems != null ? completedItems.size() : 0;
         int failedSize = failedItems != null ? failedItems.size() : 0;
@@ -16,6 +16,7 @@
 package com.marklogic.hub.step;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -52,6 +53,11 @@ public class RunStepResponse {
     private long failedBatches = 0;
     private boolean success = false;
 
+    // Only populated when the adaptiveBatching step option is enabled
+    private Map<String, Object> adaptiveBatching;
+
+    private Map<String, Object> metrics;
+
     public void setStepStartTime(String stepStartTime) {
         this.stepStartTime = stepStartTime;
     }
@@ -188,6 +194,35 @@ public class RunStepResponse {
         return failedBatches;
     }
 
+    /**
+     * @return if the adaptiveBatching step option was enabled, the batch size and thread count that were chosen
+     * while the step was run, along with the batch latency that was observed; null otherwise
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Map<String, Object> getAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+
+    public void setAdaptiveBatching(Map<String, Object> adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+    }
+
+    /**
+     * @return the metrics captured while the step processed its batches - the latency percentiles of batches, the time
+     * batches waited to be processed, the time taken to collect items, and the number of items processed per second over
+     * the course of the step; null if the step finished before processing any items, such as when no items were
+     * collected. If items were processed but no batch finished, such as when the step was stopped, the metrics are
+     * still present, with a batch latency count of zero
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Map<String, Object> getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Map<String, Object> metrics) {
+        this.metrics = metrics;
+    }
+
     public String getStepName() {
         return stepName;
     }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.step;
+
+import java.util.Map;
+
+/**
+ * Receives the metrics captured while a step is run, so that they can be shipped to a monitoring system. The values
+ * passed to onBatchFinished map directly onto a timer in a metrics library such as Micrometer - e.g. via
+ * Timer.record(latencyMillis, TimeUnit.MILLISECONDS) - while onStepFinished receives the same summary that is added
+ * to the RunStepResponse for the step.
+ *
+ * Implementations are invoked on the threads that process batches, and thus must be thread-safe and should return
+ * quickly.
+ */
+public interface StepMetricsListener {
+
+    /**
+     * @param jobId           the id of the job as a string
+     * @param stepNumber      the number of the step in the flow
+     * @param itemCount       the number of items in the batch
+     * @param latencyMillis   the time taken to process the batch
+     * @param queueWaitMillis the time the batch waited to be processed after it was created; -1 if not known
+     * @param failed          true if the batch could not be processed at all, as opposed to some of its items failing
+     */
+    void onBatchFinished(String jobId, String stepNumber, int itemCount, long latencyMillis, long queueWaitMillis, boolean failed);
+
+    /**
+     * @param jobId      the id of the job as a string
+     * @param stepNumber the number of the step in the flow
+     * @param metrics    the summary of the metrics captured while the step was run, as returned by
+     *                   RunStepResponse.getMetrics
+     */
+    default void onStepFinished(String jobId, String stepNumber, Map<String, Object> metrics) {
+    }
+}
@@ -102,6 +102,13 @@ public interface StepRunner {
      */
     StepRunner onItemFailed(StepItemFailureListener listener);
 
+    /**
+     * Sets a listener for the metrics captured for each batch and for the step as a whole
+     * @param listener the listener for the metrics
+     * @return the step runner object
+     */
+    StepRunner onMetrics(StepMetricsListener listener);
+
     /**
      * Blocks until the step execution is complete.
      */
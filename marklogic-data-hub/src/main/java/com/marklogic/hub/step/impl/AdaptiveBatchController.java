@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.step.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Adjusts the batch size and the number of concurrent batches while a step is run, based on the observed latency of
+ * each batch, via additive-increase/multiplicative-decrease (AIMD). Enabled via the "adaptiveBatching" step option,
+ * which is either true or an object with any of the following properties:
+ *
+ * <ul>
+ *     <li>targetLatency - the number of milliseconds that a batch should take to process; defaults to 2000</li>
+ *     <li>minBatchSize / maxBatchSize - bounds for the batch size; default to 1 and the configured batchSize</li>
+ *     <li>minThreadCount / maxThreadCount - bounds for the number of concurrent batches; default to 1 and the
+ *     configured threadCount</li>
+ * </ul>
+ *
+ * The configured batchSize and threadCount are used as the initial values. When a batch takes longer than the target
+ * latency, the batch size is halved; when a batch fails outright, both the batch size and the number of concurrent
+ * batches are halved. Item-level errors reported by a step are not considered, as they say nothing about the load on
+ * MarkLogic. After every round of batches that meets the target - a round being as many batches as are allowed to run
+ * concurrently - the batch size is increased by a tenth of its maximum, and once it has reached its maximum, the number
+ * of concurrent batches is increased by one.
+ *
+ * Batches that were started before a decrease do not cause another decrease, as they were sized before the previous
+ * decrease took effect.
+ */
+class AdaptiveBatchController {
+
+    static final String OPTION_NAME = "adaptiveBatching";
+    static final long DEFAULT_TARGET_LATENCY = 2000;
+
+    private final long targetLatency;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int minThreadCount;
+    private final int maxThreadCount;
+    private final int batchSizeIncrement;
+
+    private int batchSize;
+    private int threadCount;
+    private int batchesInProgress = 0;
+    private int successfulBatchesInRound = 0;
+    private long epoch = 0;
+    private boolean closed = false;
+
+    private long batchCount = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+    private long increaseCount = 0;
+    private long decreaseCount = 0;
+
+    AdaptiveBatchController(long targetLatency, int minBatchSize, int maxBatchSize, int batchSize,
+                            int minThreadCount, int maxThreadCount, int threadCount) {
+        if (targetLatency < 1) {
+            throw new IllegalArgumentException("The target latency for adaptive batching must be greater than zero");
+        }
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException(String.format("Invalid batch size bounds for adaptive batching; min: %d, max: %d", minBatchSize, maxBatchSize));
+        }
+        if (minThreadCount < 1 || maxThreadCount < minThreadCount) {
+            throw new IllegalArgumentException(String.format("Invalid thread count bounds for adaptive batching; min: %d, max: %d", minThreadCount, maxThreadCount));
+        }
+        this.targetLatency = targetLatency;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.minThreadCount = minThreadCount;
+        this.maxThreadCount = maxThreadCount;
+        this.batchSizeIncrement = Math.max(1, maxBatchSize / 10);
+        this.batchSize = bound(batchSize, minBatchSize, maxBatchSize);
+        this.threadCount = bound(threadCount, minThreadCount, maxThreadCount);
+    }
+
+    /**
+     * @param options     the combined step options
+     * @param batchSize   the configured batch size
+     * @param threadCount the configured thread count
+     * @return a controller if the "adaptiveBatching" option is enabled, null otherwise
+     */
+    static AdaptiveBatchController fromOptions(Map<String, Object> options, int batchSize, int threadCount) {
+        return fromOptions(options, batchSize, threadCount, true);
+    }
+
+    /**
+     * @param options         the combined step options
+     * @param batchSize       the configured batch size
+     * @param threadCount     the configured thread count
+     * @param adjustBatchSize false if the caller cannot change the batch size once it starts processing batches, in
+     *                        which case only the number of concurrent batches is adjusted
+     * @return a controller if the "adaptiveBatching" option is enabled, null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static AdaptiveBatchController fromOptions(Map<String, Object> options, int batchSize, int threadCount, boolean adjustBatchSize) {
+        Object value = options != null ? options.get(OPTION_NAME) : null;
+        if (value == null) {
+            return null;
+        }
+        Map<String, Object> config = new LinkedHashMap<>();
+        if (value instanceof Map) {
+            config.putAll((Map<String, Object>) value);
+            if (config.containsKey("enabled") && !Boolean.parseBoolean(config.get("enabled").toString())) {
+                return null;
+            }
+        } else if (!Boolean.parseBoolean(value.toString())) {
+            return null;
+        }
+        return new AdaptiveBatchController(
+            getLong(config, "targetLatency", DEFAULT_TARGET_LATENCY),
+            adjustBatchSize ? (int) getLong(config, "minBatchSize", 1) : batchSize,
+            adjustBatchSize ? (int) getLong(config, "maxBatchSize", Math.max(1, batchSize)) : batchSize,
+            batchSize,
+            (int) getLong(config, "minThreadCount", 1),
+            (int) getLong(config, "maxThreadCount", Math.max(1, threadCount)),
+            threadCount
+        );
+    }
+
+    private static long getLong(Map<String, Object> config, String name, long defaultValue) {
+        Object value = config.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("The %s.%s option must be a number; value: %s", OPTION_NAME, name, value));
+        }
+    }
+
+    private static int bound(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Waits until another batch is allowed to run. Each call must be followed by a call to finishBatch.
+     *
+     * @return identifies the state of the controller when the batch was started; must be passed to finishBatch
+     */
+    synchronized long startBatch() {
+        while (!closed && batchesInProgress >= threadCount) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        batchesInProgress++;
+        return epoch;
+    }
+
+    /**
+     * @param batchEpoch the value returned by startBatch
+     * @param latency    the number of milliseconds that the batch took to process
+     * @param failed     true if the batch could not be processed at all, as opposed to a batch with item-level errors
+     */
+    synchronized void finishBatch(long batchEpoch, long latency, boolean failed) {
+        batchesInProgress--;
+        batchCount++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+
+        if (failed || latency > targetLatency) {
+            if (batchEpoch == epoch) {
+                decrease(failed);
+            }
+        } else if (++successfulBatchesInRound >= threadCount) {
+            increase();
+        }
+        notifyAll();
+    }
+
+    private void decrease(boolean failed) {
+        int newBatchSize = Math.max(minBatchSize, batchSize / 2);
+        int newThreadCount = failed ? Math.max(minThreadCount, threadCount / 2) : threadCount;
+        if (newBatchSize != batchSize || newThreadCount != threadCount) {
+            batchSize = newBatchSize;
+            threadCount = newThreadCount;
+            decreaseCount++;
+        }
+        successfulBatchesInRound = 0;
+        epoch++;
+    }
+
+    private void increase() {
+        successfulBatchesInRound = 0;
+        if (batchSize < maxBatchSize) {
+            batchSize = Math.min(maxBatchSize, batchSize + batchSizeIncrement);
+            increaseCount++;
+        } else if (threadCount < maxThreadCount) {
+            threadCount++;
+            increaseCount++;
+        }
+    }
+
+    /**
+     * Releases any thread waiting to start a batch; called when a step is stopped or has finished.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    int getMaxThreadCount() {
+        return maxThreadCount;
+    }
+
+    /**
+     * @return the values chosen by this controller and the latency it observed, for inclusion in a RunStepResponse
+     */
+    synchronized Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("targetLatency", targetLatency);
+        summary.put("batchSize", batchSize);
+        summary.put("threadCount", threadCount);
+        summary.put("minBatchSize", minBatchSize);
+        summary.put("maxBatchSize", maxBatchSize);
+        summary.put("minThreadCount", minThreadCount);
+        summary.put("maxThreadCount", maxThreadCount);
+        summary.put("batchCount", batchCount);
+        summary.put("averageLatency", batchCount > 0 ? totalLatency / batchCount : 0);
+        summary.put("maxLatency", maxLatency);
+        summary.put("increaseCount", increaseCount);
+        summary.put("decreaseCount", decreaseCount);
+        return summary;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.step.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records non-negative values - typically latencies in milliseconds - so that percentiles can be reported without
+ * retaining every value. Follows the layout of an HdrHistogram with two significant digits: values below 128 are
+ * counted exactly, and each larger power of two is divided into 64 buckets, so a reported percentile is never more
+ * than about 1.6% above the value that was recorded. Recording is lock-free, so a single instance can be shared by
+ * every thread processing batches for a step.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_BUCKET_COUNT = 128;
+    private static final int SUB_BUCKET_COUNT = 64;
+    // Larger values - over 4000 years in milliseconds - are all counted in the last bucket
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EXACT_BUCKET_COUNT + MAX_EXPONENT * SUB_BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong(0);
+    private final AtomicLong totalValue = new AtomicLong(0);
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxValue = new AtomicLong(0);
+
+    /**
+     * @param value the value to record; a negative value is recorded as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexFor(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        final long recordedValue = value;
+        minValue.accumulateAndGet(recordedValue, Math::min);
+        maxValue.accumulateAndGet(recordedValue, Math::max);
+    }
+
+    static int indexFor(long value) {
+        if (value < EXACT_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Shifting the value right by the exponent leaves a number between 64 and 127
+        final int exponent = 63 - Long.numberOfLeadingZeros(value) - 6;
+        if (exponent > MAX_EXPONENT) {
+            return EXACT_BUCKET_COUNT + MAX_EXPONENT * SUB_BUCKET_COUNT - 1;
+        }
+        return EXACT_BUCKET_COUNT + (exponent - 1) * SUB_BUCKET_COUNT + (int) ((value >> exponent) - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * @return the highest value that is counted in the bucket with the given index
+     */
+    static long highestValueFor(int index) {
+        if (index < EXACT_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = (index - EXACT_BUCKET_COUNT) / SUB_BUCKET_COUNT + 1;
+        final long subBucket = (index - EXACT_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value at or below which the given percentage of recorded values fall; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= target) {
+                return Math.min(highestValueFor(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMin() {
+        return totalCount.get() > 0 ? minValue.get() : 0;
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        final long count = totalCount.get();
+        return count > 0 ? (double) totalValue.get() / count : 0;
+    }
+
+    /**
+     * @return the count, min, max, mean, and the 50th, 90th, 95th, and 99th percentiles of the recorded values
+     */
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("min", getMin());
+        summary.put("max", getMax());
+        summary.put("mean", Math.round(getMean() * 100) / 100.0);
+        summary.put("p50", getValueAtPercentile(50));
+        summary.put("p90", getValueAtPercentile(90));
+        summary.put("p95", getValueAtPercentile(95));
+        summary.put("p99", getValueAtPercentile(99));
+        return summary;
+    }
+}
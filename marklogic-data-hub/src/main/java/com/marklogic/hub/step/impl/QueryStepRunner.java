@@ -18,10 +18,12 @@ package com.marklogic.hub.step.impl;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.marklogic.client.DatabaseClient;
 import com.marklogic.client.datamovement.*;
 import com.marklogic.client.ext.helper.LoggingObject;
 import com.marklogic.hub.DatabaseKind;
 import com.marklogic.hub.HubClient;
+import com.marklogic.hub.collector.CollectedItemStream;
 import com.marklogic.hub.collector.DiskQueue;
 import com.marklogic.hub.collector.impl.CollectorImpl;
 import com.marklogic.hub.dataservices.JobService;
@@ -31,17 +33,22 @@ import com.marklogic.hub.flow.Flow;
 import com.marklogic.hub.job.JobStatus;
 import com.marklogic.hub.step.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class QueryStepRunner extends LoggingObject implements StepRunner {
 
     private static final int MAX_ERROR_MESSAGES = 10;
+    private static final int MIN_STREAMING_BUFFER_SIZE = 5000;
     private Flow flow;
     private int batchSize;
     private int threadCount;
@@ -54,11 +61,17 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
 
     private List<StepItemCompleteListener> stepItemCompleteListeners = new ArrayList<>();
     private List<StepItemFailureListener> stepItemFailureListeners = new ArrayList<>();
+    private List<StepMetricsListener> stepMetricsListeners = new ArrayList<>();
     private Map<String, Object> stepConfig = new HashMap<>();
     private HubClient hubClient;
     private Thread runningThread = null;
     private DataMovementManager dataMovementManager = null;
     private QueryBatcher queryBatcher = null;
+    private CollectedItemStream itemStream = null;
+    private AdaptiveBatchController adaptiveBatchController = null;
+    private StepCheckpoint checkpoint = null;
+    private final AtomicLong lastCheckpointSaveTime = new AtomicLong(0);
+    private long collectorTime = -1;
     private AtomicBoolean isStopped = new AtomicBoolean(false) ;
     private StepDefinition stepDef;
 
@@ -132,6 +145,12 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         return this;
     }
 
+    @Override
+    public StepRunner onMetrics(StepMetricsListener listener) {
+        this.stepMetricsListeners.add(listener);
+        return this;
+    }
+
     @Override
     public void awaitCompletion() {
         try {
@@ -145,6 +164,9 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         if (runningThread != null) {
             runningThread.join(unit.convert(timeout, unit));
             if (runningThread.getState() != Thread.State.TERMINATED) {
+                if (itemStream != null) {
+                    itemStream.cancel();
+                }
                 if ( dataMovementManager != null && queryBatcher != null ) {
                     dataMovementManager.stopJob(queryBatcher);
                 }
@@ -161,6 +183,111 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         return true;
     }
 
+    /**
+     * When "streamCollector" is true, the step begins processing batches as soon as the collector starts returning
+     * items, instead of waiting for all items to be collected first. Because the total number of items is not known
+     * until collection is done, the batch count is not logged up front.
+     *
+     * @return true if collected items should be streamed to the QueryBatcher
+     */
+    private boolean streamCollectorIsEnabled() {
+        return combinedOptions != null && combinedOptions.containsKey("streamCollector") &&
+            Boolean.parseBoolean(combinedOptions.get("streamCollector").toString());
+    }
+
+    /**
+     * When "enableCheckpoints" is true, the collected items are written to a file in "checkpointDirectory", and the
+     * batches that have been completed are periodically saved - every "checkpointInterval" milliseconds - to a
+     * checkpoint in the jobs database. Running the step again with the same job ID, such as via FlowRunner.resumeJob,
+     * then reuses the collected items and skips the completed batches. Checkpoints require job output, as they are
+     * stored in the jobs database, and are not supported when streamCollector is enabled.
+     *
+     * @return true if checkpoints should be saved for this step
+     */
+    private boolean checkpointsAreEnabled() {
+        return combinedOptions != null && combinedOptions.containsKey(StepCheckpoint.ENABLED_OPTION) &&
+            Boolean.parseBoolean(combinedOptions.get(StepCheckpoint.ENABLED_OPTION).toString()) && jobOutputIsEnabled();
+    }
+
+    private File getCheckpointDirectory() {
+        Object directory = combinedOptions.get(StepCheckpoint.DIRECTORY_OPTION);
+        return directory != null ?
+            new File(directory.toString()) :
+            new File(System.getProperty("java.io.tmpdir"), "datahub-checkpoints");
+    }
+
+    private long getCheckpointInterval() {
+        Object interval = combinedOptions.get(StepCheckpoint.INTERVAL_OPTION);
+        return interval != null ? Long.parseLong(interval.toString()) : StepCheckpoint.DEFAULT_INTERVAL;
+    }
+
+    /**
+     * @return the checkpoint saved by a previous run of this step in the same job; or null if there is none, or if its
+     * items file cannot be found, in which case the items are collected again
+     */
+    private StepCheckpoint loadCheckpoint() {
+        JsonNode json = JobService.on(hubClient.getJobsClient()).getCheckpoint(jobId, StepCheckpoint.getCheckpointName(step));
+        if (json == null) {
+            return null;
+        }
+        StepCheckpoint existingCheckpoint = StepCheckpoint.fromJson(json, getCheckpointDirectory());
+        if (existingCheckpoint == null) {
+            logger.warn(format("Unable to find items file for checkpoint of step '%s' in job '%s'; will collect items again", step, jobId));
+            return null;
+        }
+        if (!flow.getName().equals(existingCheckpoint.getFlowName())) {
+            logger.warn(format("Ignoring checkpoint of step '%s' in job '%s' as it was saved for flow '%s'", step, jobId, existingCheckpoint.getFlowName()));
+            return null;
+        }
+        logger.info(format("Resuming step '%s' in flow '%s' from checkpoint; %d of %d batches have already been completed",
+            step, flow.getName(), existingCheckpoint.getCompletedBatchCount(), existingCheckpoint.getBatchCount()));
+        return existingCheckpoint;
+    }
+
+    private void createCheckpoint(DiskQueue<String> uris) throws IOException {
+        try {
+            this.checkpoint = StepCheckpoint.create(getCheckpointDirectory(), jobId, flow.getName(), step, batchSize, uris.iterator());
+            saveCheckpoint();
+        } finally {
+            uris.close();
+        }
+    }
+
+    private void saveCheckpoint() {
+        lastCheckpointSaveTime.set(System.currentTimeMillis());
+        try {
+            JobService.on(hubClient.getJobsClient()).saveCheckpoint(jobId, StepCheckpoint.getCheckpointName(step), checkpoint.toJson(new ObjectMapper()));
+        } catch (Exception ex) {
+            logger.warn(format("Unable to save checkpoint for step '%s' in job '%s'; cause: %s", step, jobId, ex.getMessage()));
+        }
+    }
+
+    /**
+     * Removes the options cached by processBatch for this step run from each app server that they were sent to, so
+     * that they do not linger until evicted. A failure to do so is not an error, as the cache is bounded.
+     */
+    private void releaseStepOptions(StepOptionsHandle optionsHandle) {
+        for (DatabaseClient client : optionsHandle.getClientsWithCachedOptions()) {
+            try {
+                StepRunnerService.on(client).releaseStepOptions(optionsHandle.getKey());
+            } catch (Exception ex) {
+                logger.debug(format("Unable to release step options for step '%s' in job '%s'; cause: %s", step, jobId, ex.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Saves the checkpoint if the checkpoint interval has passed since it was last saved. Only one of the threads that
+     * find the checkpoint to be due will save it.
+     */
+    private void saveCheckpointIfDue(long checkpointInterval) {
+        final long now = System.currentTimeMillis();
+        final long lastSaveTime = lastCheckpointSaveTime.get();
+        if (now - lastSaveTime >= checkpointInterval && lastCheckpointSaveTime.compareAndSet(lastSaveTime, now)) {
+            saveCheckpoint();
+        }
+    }
+
     @Override
     public RunStepResponse run() {
         runningThread = null;
@@ -191,14 +318,38 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
             JobService.on(hubClient.getJobsClient()).startStep(jobId, step);
         }
 
-        DiskQueue<String> uris;
+        // Only set below once the collector has run in this step run; items replayed from a checkpoint must still be
+        // checked when each batch is processed
+        combinedOptions.remove("alreadyProcessedExcludedByCollector");
+
+        final boolean streamCollector = streamCollectorIsEnabled();
+        final boolean checkpointsEnabled = checkpointsAreEnabled();
+        if (checkpointsEnabled && streamCollector) {
+            logger.warn("Checkpoints are not supported when streamCollector is enabled, and thus will not be saved");
+        }
+        DiskQueue<String> uris = null;
         try {
             final String sourceDatabase = combinedOptions.get("sourceDatabase") != null ?
                 StepRunnerUtil.objectToString(combinedOptions.get("sourceDatabase")) :
                 hubClient.getDbName(DatabaseKind.STAGING);
 
-            logger.info(String.format("Collecting items for step '%s' in flow '%s'", this.step, this.flow.getName()));
-            uris = runCollector(sourceDatabase);
+            if (checkpointsEnabled && !streamCollector) {
+                checkpoint = loadCheckpoint();
+            }
+            if (checkpoint == null) {
+                logger.info(String.format("Collecting items for step '%s' in flow '%s'", this.step, this.flow.getName()));
+                if (streamCollector) {
+                    itemStream = runStreamingCollector(sourceDatabase);
+                } else {
+                    final long collectorStart = System.currentTimeMillis();
+                    uris = runCollector(sourceDatabase);
+                    collectorTime = System.currentTimeMillis() - collectorStart;
+                    if (checkpointsEnabled && uris != null && !uris.isEmpty()) {
+                        createCheckpoint(uris);
+                    }
+                }
+                markAlreadyProcessedExcludedByCollector();
+            }
         } catch (Exception e) {
             runStepResponse.setCounts(0,0, 0, 0, 0)
                 .withStatus(JobStatus.FAILED_PREFIX + step);
@@ -215,12 +366,24 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
             return runStepResponse;
         }
 
+        if (streamCollector) {
+            return this.runStreamingHarmonizer(runStepResponse, itemStream);
+        }
+        if (checkpoint != null) {
+            return this.runCheckpointedHarmonizer(runStepResponse, checkpoint);
+        }
         return this.runHarmonizer(runStepResponse, uris);
     }
 
     @Override
     public void stop() {
         isStopped.set(true);
+        if (itemStream != null) {
+            itemStream.cancel();
+        }
+        if (adaptiveBatchController != null) {
+            adaptiveBatchController.close();
+        }
         if(queryBatcher != null) {
             dataMovementManager.stopJob(queryBatcher);
         }
@@ -241,35 +404,59 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         return this.batchSize;
     }
 
+    /**
+     * The collector excludes items that were already processed by the step, so they need not be checked again when
+     * each batch is processed. This must only be called when the items to process were collected in this step run.
+     */
+    private void markAlreadyProcessedExcludedByCollector() {
+        if (combinedOptions.containsKey("excludeAlreadyProcessed") &&
+            Boolean.parseBoolean(combinedOptions.get("excludeAlreadyProcessed").toString())) {
+            combinedOptions.put("alreadyProcessedExcludedByCollector", true);
+        }
+    }
+
     private DiskQueue<String> runCollector(String sourceDatabase) {
         CollectorImpl collector = new CollectorImpl(hubClient, sourceDatabase);
         return !isStopped.get() ? collector.run(this.flow.getName(), step, combinedOptions) : null;
     }
 
-    private RunStepResponse runHarmonizer(RunStepResponse runStepResponse, Collection<String> uris) {
-        StepMetrics stepMetrics = new StepMetrics();
-        final int urisCount = uris != null ? uris.size() : 0;
-        if (urisCount == 0) {
-            logger.info("No items found to process");
-            final String stepStatus = isStopped.get() ?
-                JobStatus.CANCELED_PREFIX + step :
-                JobStatus.COMPLETED_PREFIX + step;
+    private CollectedItemStream runStreamingCollector(String sourceDatabase) {
+        if (isStopped.get()) {
+            return null;
+        }
+        // Buffer enough items to keep every thread busy while the next batches are being read from the collector
+        final int bufferSize = Math.max(MIN_STREAMING_BUFFER_SIZE, batchSize * threadCount * 2);
+        CollectorImpl collector = new CollectorImpl(hubClient, sourceDatabase);
+        return collector.stream(this.flow.getName(), step, combinedOptions, bufferSize);
+    }
 
-            runStepResponse.setCounts(0,0,0,0,0);
-            runStepResponse.withStatus(stepStatus);
+    private RunStepResponse finishStepWithNoItems(RunStepResponse runStepResponse) {
+        logger.info("No items found to process");
+        final String stepStatus = isStopped.get() ?
+            JobStatus.CANCELED_PREFIX + step :
+            JobStatus.COMPLETED_PREFIX + step;
 
-            if (jobOutputIsEnabled()) {
-                JsonNode jobDoc = JobService.on(hubClient.getJobsClient()).finishStep(jobId, step, stepStatus, runStepResponse.toObjectNode());
-                try {
-                    return StepRunnerUtil.getResponse(jobDoc, step);
-                }
-                catch (Exception ex) {
-                    logger.warn("Unexpected error getting step response: " + ex.getMessage(), ex);
-                    return runStepResponse;
-                }
-            } else {
+        runStepResponse.setCounts(0,0,0,0,0);
+        runStepResponse.withStatus(stepStatus);
+
+        if (jobOutputIsEnabled()) {
+            JsonNode jobDoc = JobService.on(hubClient.getJobsClient()).finishStep(jobId, step, stepStatus, runStepResponse.toObjectNode());
+            try {
+                return StepRunnerUtil.getResponse(jobDoc, step);
+            }
+            catch (Exception ex) {
+                logger.warn("Unexpected error getting step response: " + ex.getMessage(), ex);
                 return runStepResponse;
             }
+        } else {
+            return runStepResponse;
+        }
+    }
+
+    private RunStepResponse runHarmonizer(RunStepResponse runStepResponse, Collection<String> uris) {
+        final int urisCount = uris != null ? uris.size() : 0;
+        if (urisCount == 0) {
+            return finishStepWithNoItems(runStepResponse);
         }
 
         double batchCount = Math.ceil((double) urisCount / (double) batchSize);
@@ -279,6 +466,101 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
             logger.info(format("Count of items collected: %d; will be processed in %d batches based on batchSize of %d", urisCount, (int)batchCount, batchSize));
         }
 
+        return processItems(runStepResponse, uris.iterator(), " of " + (int) batchCount, () -> urisCount, () -> {
+            // now that the job has completed we can close the resource
+            if (uris instanceof DiskQueue) {
+                ((DiskQueue<String>)uris).close();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Processes items as they are read from the collector. The stream is not consulted for its size, as that is not
+     * known until the collector has returned every item; the total count is instead determined once processing has
+     * completed.
+     */
+    private RunStepResponse runStreamingHarmonizer(RunStepResponse runStepResponse, CollectedItemStream stream) {
+        // hasNext blocks until either the first item has been collected or the collector has returned no items
+        if (stream == null || !stream.hasNext()) {
+            String collectorError = stream != null && stream.getFailure() != null ? stream.getFailure().toString() : null;
+            if (stream != null) {
+                stream.close();
+            }
+            if (collectorError != null) {
+                return finishStepWithCollectorError(runStepResponse, collectorError);
+            }
+            return finishStepWithNoItems(runStepResponse);
+        }
+
+        logger.info(format("Streaming collected items to be processed based on batchSize of %d", batchSize));
+
+        return processItems(runStepResponse, stream, "", stream::getCollectedCount, () -> {
+            stream.close();
+            if (stream.getFailure() != null) {
+                return stream.getFailure().toString();
+            }
+            logger.info(format("Count of items collected: %d", stream.getCollectedCount()));
+            return null;
+        });
+    }
+
+    /**
+     * Processes the items recorded by the given checkpoint that are in batches that have not yet been completed.
+     */
+    private RunStepResponse runCheckpointedHarmonizer(RunStepResponse runStepResponse, StepCheckpoint stepCheckpoint) {
+        final long remainingCount = stepCheckpoint.getRemainingItemCount();
+        if (remainingCount == 0) {
+            stepCheckpoint.deleteItemsFile();
+            return finishStepWithNoItems(runStepResponse);
+        }
+
+        final StepCheckpoint.RemainingItems items;
+        try {
+            items = stepCheckpoint.openRemainingItems();
+        } catch (IOException ex) {
+            return finishStepWithCollectorError(runStepResponse, ex.toString());
+        }
+
+        final long batchCount = stepCheckpoint.getBatchCount() - stepCheckpoint.getCompletedBatchCount();
+        logger.info(format("Count of items to process: %d; will be processed in %d batches based on batchSize of %d",
+            remainingCount, batchCount, stepCheckpoint.getBatchSize()));
+
+        // The counts of the batches completed before the checkpoint are added when processing starts, so the total is
+        // that of the whole step and not just of the remaining items
+        return processItems(runStepResponse, items, " of " + batchCount, stepCheckpoint::getItemCount, () -> {
+            items.close();
+            return null;
+        });
+    }
+
+    private RunStepResponse finishStepWithCollectorError(RunStepResponse runStepResponse, String collectorError) {
+        runStepResponse.setCounts(0,0, 0, 0, 0)
+            .withStatus(JobStatus.FAILED_PREFIX + step);
+        runStepResponse.withStepOutput(collectorError);
+        if (jobOutputIsEnabled()) {
+            JsonNode jobDoc = JobService.on(hubClient.getJobsClient()).finishStep(jobId, step, JobStatus.FAILED_PREFIX + step, runStepResponse.toObjectNode());
+            try {
+                return StepRunnerUtil.getResponse(jobDoc, step);
+            } catch (Exception ignored) {
+            }
+        }
+        return runStepResponse;
+    }
+
+    /**
+     * @param runStepResponse    the response to populate once processing has completed
+     * @param items              the items to process
+     * @param batchCountSuffix   appended to the batch number in debug logging, as the batch count may not be known
+     * @param totalCountSupplier provides the total number of items once processing has completed
+     * @param onItemsProcessed   invoked once processing has completed; returns an error message if the items could not
+     *                           all be read, which causes the step to be considered failed
+     * @return the step response
+     */
+    private RunStepResponse processItems(RunStepResponse runStepResponse, Iterator<String> items, String batchCountSuffix,
+                                         Supplier<Number> totalCountSupplier, Supplier<String> onItemsProcessed) {
+        StepMetrics stepMetrics = new StepMetrics();
+        stepMetrics.setCollectorTime(collectorTime);
         Vector<String> errorMessages = new Vector<>();
 
         // The client used here doesn't matter, given that a QueryBatcher is going to be constructed based on an
@@ -286,105 +568,172 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         dataMovementManager = hubClient.getStagingClient().newDataMovementManager();
 
         final ObjectMapper objectMapper = new ObjectMapper();
+        final StepOptionsHandle optionsHandle = new StepOptionsHandle(objectMapper, flow.getName(), step, runStepResponse.getJobId(), combinedOptions);
 
         HashMap<String, JobTicket> ticketWrapper = new HashMap<>();
 
+        // When adaptive batching is enabled, the QueryBatcher uses the maximum batch size and thread count, and each
+        // batch that it produces is then split into batches based on the controller's current batch size
+        final AdaptiveBatchController adaptiveController = AdaptiveBatchController.fromOptions(combinedOptions, batchSize, threadCount);
+        this.adaptiveBatchController = adaptiveController;
+
+        // When a checkpoint is used, each batch produced by the QueryBatcher must be exactly one batch of the checkpoint
+        final StepCheckpoint stepCheckpoint = items instanceof StepCheckpoint.RemainingItems ? this.checkpoint : null;
+        final long checkpointInterval = stepCheckpoint != null ? getCheckpointInterval() : 0;
+        final int queryBatchSize = stepCheckpoint != null ? stepCheckpoint.getBatchSize() :
+            adaptiveController != null ? adaptiveController.getMaxBatchSize() : batchSize;
+        if (stepCheckpoint != null) {
+            // Include the work finished before the step was resumed, as the step response replaces the previous one
+            stepMetrics.getSuccessfulEvents().addAndGet(stepCheckpoint.getCompletedSuccessfulEvents());
+            stepMetrics.getFailedEvents().addAndGet(stepCheckpoint.getCompletedFailedEvents());
+            stepMetrics.getSuccessfulBatches().addAndGet(stepCheckpoint.getCompletedSuccessfulBatches());
+            stepMetrics.getFailedBatches().addAndGet(stepCheckpoint.getCompletedFailedBatches());
+        }
+
         Map<String,JsonNode> fullOutputMap = new HashMap<>();
-        queryBatcher = dataMovementManager.newQueryBatcher(uris.iterator())
-            .withBatchSize(batchSize)
-            .withThreadCount(threadCount)
+        queryBatcher = dataMovementManager.newQueryBatcher(items)
+            .withBatchSize(queryBatchSize)
+            .withThreadCount(adaptiveController != null ? adaptiveController.getMaxThreadCount() : threadCount)
             .withJobId(runStepResponse.getJobId())
             .onUrisReady((QueryBatch batch) -> {
-                try {
-                    // Create the inputs for the processBatch DS
-                    ObjectNode inputs = objectMapper.createObjectNode();
-                    inputs.put("flowName", flow.getName());
-                    inputs.put("stepNumber", step);
-                    inputs.put("jobId", runStepResponse.getJobId());
-
-                    // Make a copy of the calculated options and then add the items from this batch
-                    Map<String, Object> batchOptions = new HashMap<>(combinedOptions);
-                    batchOptions.put("uris", batch.getItems());
-                    inputs.set("options", objectMapper.valueToTree(batchOptions));
-                    logger.debug(String.format("Processing %d items in batch %d of %d", batch.getItems().length, batch.getJobBatchNumber(),(int) batchCount));
-                    // Invoke the DS endpoint. A StepRunnerService is created based on the DatabaseClient associated
-                    // with the batch to help distribute load, per DHFPROD-1172.
-                    JsonNode jsonResponse = StepRunnerService.on(batch.getClient()).processBatch(inputs);
-                    ResponseHolder response = objectMapper.readerFor(ResponseHolder.class).readValue(jsonResponse);
-
-                    stepMetrics.getFailedEvents().addAndGet(response.errorCount);
-                    stepMetrics.getSuccessfulEvents().addAndGet(response.totalCount - response.errorCount);
-                    if (response.errors != null) {
-                        if (errorMessages.size() < MAX_ERROR_MESSAGES) {
-                            errorMessages.addAll(response.errors.stream().limit(MAX_ERROR_MESSAGES - errorMessages.size()).map(jsonNode -> StepRunnerUtil.jsonToString(jsonNode)).collect(Collectors.toList()));
+                final String[] batchItems = batch.getItems();
+                final long queueWait = batch.getTimestamp() != null ?
+                    Math.max(0, System.currentTimeMillis() - batch.getTimestamp().getTimeInMillis()) : -1;
+                if (queueWait >= 0) {
+                    stepMetrics.recordQueueWait(queueWait);
+                }
+                boolean anyBatchFailed = false;
+                // The counts for all the batches that the QueryBatch is split into, for recording in a checkpoint
+                long successfulEvents = 0;
+                long failedEvents = 0;
+                long successfulBatches = 0;
+                long failedBatches = 0;
+                int offset = 0;
+                while (offset < batchItems.length) {
+                    final int size = adaptiveController != null ? adaptiveController.getBatchSize() : batchItems.length;
+                    final String[] batchUris = size >= batchItems.length ?
+                        batchItems :
+                        Arrays.copyOfRange(batchItems, offset, Math.min(batchItems.length, offset + size));
+                    offset += batchUris.length;
+
+                    final long batchEpoch = adaptiveController != null ? adaptiveController.startBatch() : 0;
+                    final long batchStart = System.currentTimeMillis();
+                    boolean batchFailed = false;
+                    try {
+                        logger.debug(String.format("Processing %d items in batch %d%s", batchUris.length, batch.getJobBatchNumber(), batchCountSuffix));
+                        // Invoke the DS endpoint. A StepRunnerService is created based on the DatabaseClient associated
+                        // with the batch to help distribute load, per DHFPROD-1172.
+                        StepRunnerService service = StepRunnerService.on(batch.getClient());
+                        ObjectNode inputs = optionsHandle.newInputs(batchUris, false);
+                        optionsHandle.recordInputsSent(batch.getClient(), inputs);
+                        JsonNode jsonResponse = service.processBatch(inputs);
+                        ResponseHolder response = objectMapper.readerFor(ResponseHolder.class).readValue(jsonResponse);
+                        if (response.stepOptionsNotFound) {
+                            // The app server that processed the batch does not have the options cached, so resend them
+                            inputs = optionsHandle.newInputs(batchUris, true);
+                            optionsHandle.recordInputsSent(batch.getClient(), inputs);
+                            jsonResponse = service.processBatch(inputs);
+                            response = objectMapper.readerFor(ResponseHolder.class).readValue(jsonResponse);
+                        }
+                        optionsHandle.recordResponse(response);
+
+                        stepMetrics.getFailedEvents().addAndGet(response.errorCount);
+                        stepMetrics.getSuccessfulEvents().addAndGet(response.totalCount - response.errorCount);
+                        failedEvents += response.errorCount;
+                        successfulEvents += response.totalCount - response.errorCount;
+                        if (response.errors != null) {
+                            if (errorMessages.size() < MAX_ERROR_MESSAGES) {
+                                errorMessages.addAll(response.errors.stream().limit(MAX_ERROR_MESSAGES - errorMessages.size()).map(jsonNode -> StepRunnerUtil.jsonToString(jsonNode)).collect(Collectors.toList()));
+                            }
                         }
-                    }
 
-                    if (isFullOutput && response.documents != null) {
-                        // Using a try/catch. As of DH 5.1, the "fullOutput" feature is undocumented and untested, and
-                        // the work for DHFPROD-3176 is to at least not throw an error if someone does set fullOutput=true.
-                        // Note that the output is also not visible in QuickStart, but it can be seen when running a flow
-                        // via Gradle.
-                        try {
-                            for (JsonNode node : response.documents) {
-                                if (node.has("uri")) {
-                                    fullOutputMap.put(node.get("uri").asText(), node);
+                        if (isFullOutput && response.documents != null) {
+                            // Using a try/catch. As of DH 5.1, the "fullOutput" feature is undocumented and untested, and
+                            // the work for DHFPROD-3176 is to at least not throw an error if someone does set fullOutput=true.
+                            // Note that the output is also not visible in QuickStart, but it can be seen when running a flow
+                            // via Gradle.
+                            try {
+                                for (JsonNode node : response.documents) {
+                                    if (node.has("uri")) {
+                                        fullOutputMap.put(node.get("uri").asText(), node);
+                                    }
                                 }
+                            } catch (Exception ex) {
+                                logger.warn("Unable to add written documents to fullOutput map in RunStepResponse; cause: " + ex.getMessage());
                             }
-                        } catch (Exception ex) {
-                            logger.warn("Unable to add written documents to fullOutput map in RunStepResponse; cause: " + ex.getMessage());
                         }
-                    }
 
-                    // Prior to DHFPROD-5997 / 5.4.0, if the count of errors and total count of events were both zero,
-                    // then the batch was considered to have failed. I don't think this could have possibly happened though
-                    // prior to 5997. Now that 5997 can filter out items after they've been collected, failed batches is
-                    // only incremented if there are actually errors (which seems intuitive too).
-                    if (response.errorCount < 1) {
-                        stepMetrics.getSuccessfulBatches().addAndGet(1);
-                    } else {
-                        stepMetrics.getFailedBatches().addAndGet(1);
-                    }
+                        // Prior to DHFPROD-5997 / 5.4.0, if the count of errors and total count of events were both zero,
+                        // then the batch was considered to have failed. I don't think this could have possibly happened though
+                        // prior to 5997. Now that 5997 can filter out items after they've been collected, failed batches is
+                        // only incremented if there are actually errors (which seems intuitive too).
+                        if (response.errorCount < 1) {
+                            stepMetrics.getSuccessfulBatches().addAndGet(1);
+                            successfulBatches++;
+                        } else {
+                            stepMetrics.getFailedBatches().addAndGet(1);
+                            failedBatches++;
+                        }
 
-                    if (stepItemCompleteListeners.size() > 0) {
-                        response.completedItems.forEach((String item) -> {
-                            stepItemCompleteListeners.forEach((StepItemCompleteListener listener) -> {
-                                listener.processCompletion(runStepResponse.getJobId(), item);
+                        if (stepItemCompleteListeners.size() > 0) {
+                            response.completedItems.forEach((String item) -> {
+                                stepItemCompleteListeners.forEach((StepItemCompleteListener listener) -> {
+                                    listener.processCompletion(runStepResponse.getJobId(), item);
+                                });
                             });
-                        });
-                    }
+                        }
 
-                    if (stepItemFailureListeners.size() > 0) {
-                        response.failedItems.forEach((String item) -> {
-                            stepItemFailureListeners.forEach((StepItemFailureListener listener) -> {
-                                listener.processFailure(runStepResponse.getJobId(), item);
+                        if (stepItemFailureListeners.size() > 0) {
+                            response.failedItems.forEach((String item) -> {
+                                stepItemFailureListeners.forEach((StepItemFailureListener listener) -> {
+                                    listener.processFailure(runStepResponse.getJobId(), item);
+                                });
                             });
-                        });
-                    }
+                        }
 
-                    if (stopOnFailure && response.errorCount > 0) {
-                        JobTicket jobTicket = ticketWrapper.get("jobTicket");
-                        if (jobTicket != null) {
-                            dataMovementManager.stopJob(jobTicket);
+                        if (stopOnFailure && response.errorCount > 0) {
+                            JobTicket jobTicket = ticketWrapper.get("jobTicket");
+                            if (jobTicket != null) {
+                                dataMovementManager.stopJob(jobTicket);
+                            }
                         }
-                    }
-                } catch (Exception e) {
-                    if (errorMessages.size() < MAX_ERROR_MESSAGES) {
-                        errorMessages.add(e.toString());
-                    }
-                    // if exception is thrown update the failed related metrics
-                    stepMetrics.getFailedBatches().addAndGet(1);
-                    stepMetrics.getFailedEvents().addAndGet(batch.getItems().length);
-
-                    if (flow != null && flow.isStopOnError()) {
-                        // Stop the job, and then we need to call processFailure to force the FlowRunner to stop the flow
-                        JobTicket jobTicket = ticketWrapper.get("jobTicket");
-                        if (jobTicket != null) {
-                            dataMovementManager.stopJob(jobTicket);
+                    } catch (Exception e) {
+                        batchFailed = true;
+                        anyBatchFailed = true;
+                        if (errorMessages.size() < MAX_ERROR_MESSAGES) {
+                            errorMessages.add(e.toString());
+                        }
+                        // if exception is thrown update the failed related metrics
+                        stepMetrics.getFailedBatches().addAndGet(1);
+                        stepMetrics.getFailedEvents().addAndGet(batchUris.length);
+
+                        if (flow != null && flow.isStopOnError()) {
+                            // Stop the job, and then we need to call processFailure to force the FlowRunner to stop the flow
+                            JobTicket jobTicket = ticketWrapper.get("jobTicket");
+                            if (jobTicket != null) {
+                                dataMovementManager.stopJob(jobTicket);
+                            }
+                            stepItemFailureListeners.forEach((StepItemFailureListener listener) -> {
+                                listener.processFailure(runStepResponse.getJobId(), null);
+                            });
                         }
-                        stepItemFailureListeners.forEach((StepItemFailureListener listener) -> {
-                            listener.processFailure(runStepResponse.getJobId(), null);
-                        });
+                    } finally {
+                        final long batchLatency = System.currentTimeMillis() - batchStart;
+                        if (adaptiveController != null) {
+                            adaptiveController.finishBatch(batchEpoch, batchLatency, batchFailed);
+                        }
+                        stepMetrics.recordBatch(batchLatency, batchUris.length);
+                        // The queue wait of the QueryBatch is only attributed to the first batch that it is split into
+                        notifyBatchFinished(batchUris.length, batchLatency, offset == batchUris.length ? queueWait : 0, batchFailed);
+                    }
+                }
+
+                if (stepCheckpoint != null && batchItems.length > 0) {
+                    // A batch that failed with an exception is not considered complete, so that it is retried on resume
+                    Long checkpointBatchNumber = ((StepCheckpoint.RemainingItems) items).takeBatchNumber(batchItems[0]);
+                    if (checkpointBatchNumber != null && !anyBatchFailed) {
+                        stepCheckpoint.batchCompleted(checkpointBatchNumber, successfulEvents, failedEvents, successfulBatches, failedBatches);
+                        saveCheckpointIfDue(checkpointInterval);
                     }
                 }
             })
@@ -405,16 +754,19 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
             queryBatcher.awaitCompletion();
             logger.info(String.format("Finished processing of items for step '%s' in flow '%s'", this.step, this.flow.getName()));
 
-            // now that the job has completed we can close the resource
-            if (uris instanceof DiskQueue) {
-                ((DiskQueue<String>)uris).close();
+            final String itemsError = onItemsProcessed.get();
+            if (itemsError != null) {
+                errorMessages.add(0, "Unable to collect all items to process; cause: " + itemsError);
             }
 
-            String stepStatus = determineStepStatus(stepMetrics);
+            String stepStatus = itemsError != null ?
+                JobStatus.FAILED_PREFIX + step :
+                determineStepStatus(stepMetrics);
 
             dataMovementManager.stopJob(queryBatcher);
+            releaseStepOptions(optionsHandle);
 
-            runStepResponse.setCounts(urisCount, stepMetrics.getSuccessfulEventsCount(), stepMetrics.getFailedEventsCount(), stepMetrics.getSuccessfulBatchesCount(), stepMetrics.getFailedBatchesCount());
+            runStepResponse.setCounts(totalCountSupplier.get().longValue(), stepMetrics.getSuccessfulEventsCount(), stepMetrics.getFailedEventsCount(), stepMetrics.getSuccessfulBatchesCount(), stepMetrics.getFailedBatchesCount());
             runStepResponse.withStatus(stepStatus);
             if (errorMessages.size() > 0) {
                 runStepResponse.withStepOutput(errorMessages);
@@ -422,6 +774,21 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
             if(isFullOutput) {
                 runStepResponse.withFullOutput(fullOutputMap);
             }
+            if (adaptiveController != null) {
+                adaptiveController.close();
+                runStepResponse.setAdaptiveBatching(adaptiveController.getSummary());
+            }
+            runStepResponse.setMetrics(stepMetrics.getSummary());
+            notifyStepFinished(runStepResponse.getMetrics());
+            if (stepCheckpoint != null) {
+                if (stepStatus.startsWith(JobStatus.COMPLETED_PREFIX) || stepStatus.startsWith(JobStatus.COMPLETED_WITH_ERRORS_PREFIX)) {
+                    // The checkpoint document itself is deleted when the step is finished
+                    stepCheckpoint.deleteItemsFile();
+                } else {
+                    // Ensures that a stopped or failed step is resumed from exactly where it left off
+                    saveCheckpoint();
+                }
+            }
 
             if (jobOutputIsEnabled()) {
                 JsonNode jobDoc = null;
@@ -449,6 +816,26 @@ public class QueryStepRunner extends LoggingObject implements StepRunner {
         return runStepResponse;
     }
 
+    private void notifyBatchFinished(int itemCount, long latency, long queueWait, boolean failed) {
+        for (StepMetricsListener listener : stepMetricsListeners) {
+            try {
+                listener.onBatchFinished(jobId, step, itemCount, latency, queueWait, failed);
+            } catch (Exception ex) {
+                logger.warn("Unable to notify step metrics listener of finished batch; cause: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void notifyStepFinished(Map<String, Object> metrics) {
+        for (StepMetricsListener listener : stepMetricsListeners) {
+            try {
+                listener.onStepFinished(jobId, step, metrics);
+            } catch (Exception ex) {
+                logger.warn("Unable to notify step metrics listener of finished step; cause: " + ex.getMessage());
+            }
+        }
+    }
+
     private String determineStepStatus(StepMetrics stepMetrics) {
         if (stepMetrics.getFailedEventsCount() > 0 && stopOnFailure) {
             // Re: DHFPROD-6720 - it is surprising that stop-on-error is only feasible when the undocumented
@@ -25,6 +25,7 @@ import com.marklogic.hub.step.StepDefinition;
 import com.marklogic.hub.util.json.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -41,6 +42,7 @@ public class Step {
     private String stepDefinitionName;
     private StepDefinition.StepDefinitionType stepDefinitionType;
     private JsonNode fileLocations;
+    private List<String> dependsOn;
 
     public String getStepId() {
         return stepId;
@@ -130,6 +132,18 @@ public class Step {
         this.fileLocations = fileLocations;
     }
 
+    /**
+     * @return the numbers of the steps in the same flow that must finish before this step can be run; null if the
+     * step does not declare any dependencies
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+
+    public void setDependsOn(List<String> dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+
     public static Step deserialize(JsonNode json) {
         Step step = new Step();
 
@@ -148,6 +162,9 @@ public class Step {
         step.setBatchSize(jsonObject.getIntValue("batchSize"));
         step.setThreadCount(jsonObject.getIntValue("threadCount"));
         step.setFileLocations(jsonObject.getNode("fileLocations"));
+        if (jsonObject.isExist("dependsOn") && jsonObject.getNode("dependsOn").isArray()) {
+            step.setDependsOn(jsonObject.getArrayString("dependsOn", false));
+        }
         return step;
     }
 
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the progress of a step run so that the run can be resumed - e.g. after the client running it has crashed -
+ * without collecting the items again and without reprocessing the batches that were already completed.
+ *
+ * The collected items are written to a local file, one item per line, and are divided into batches of a fixed size
+ * based on their position in that file. The checkpoint itself - which identifies the file and the ranges of completed
+ * batches - is small enough to be saved to the jobs database as often as needed. Batches are numbered from 1.
+ */
+class StepCheckpoint {
+
+    static final String ENABLED_OPTION = "enableCheckpoints";
+    static final String DIRECTORY_OPTION = "checkpointDirectory";
+    static final String INTERVAL_OPTION = "checkpointInterval";
+    static final long DEFAULT_INTERVAL = 10000;
+
+    private final String jobId;
+    private final String flowName;
+    private final String stepNumber;
+    private final File itemsFile;
+    private final long itemCount;
+    private final int batchSize;
+
+    // Ranges of completed batches, keyed by the first batch number of each range and mapped to the last one
+    private final TreeMap<Long, Long> completedBatches = new TreeMap<>();
+
+    // The counts reported by the completed batches, so that a resumed run can report the totals of the whole step
+    private long completedSuccessfulEvents;
+    private long completedFailedEvents;
+    private long completedSuccessfulBatches;
+    private long completedFailedBatches;
+
+    StepCheckpoint(String jobId, String flowName, String stepNumber, File itemsFile, long itemCount, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size for a checkpoint must be at least one");
+        }
+        this.jobId = jobId;
+        this.flowName = flowName;
+        this.stepNumber = stepNumber;
+        this.itemsFile = itemsFile;
+        this.itemCount = itemCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Writes the given items to a new file in the given directory and constructs a checkpoint with no completed
+     * batches for them.
+     *
+     * @param directory  the directory to write the items file to; created if it does not exist
+     * @param jobId
+     * @param flowName
+     * @param stepNumber
+     * @param batchSize  the number of items in each batch
+     * @param items      the collected items; must not contain line breaks
+     * @return the new checkpoint
+     * @throws IOException if the items file cannot be written
+     */
+    static StepCheckpoint create(File directory, String jobId, String flowName, String stepNumber, int batchSize,
+                                 Iterator<String> items) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File itemsFile = new File(directory, jobId + "-step-" + stepNumber + ".txt");
+        long count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(itemsFile.toPath(), StandardCharsets.UTF_8)) {
+            while (items.hasNext()) {
+                writer.write(items.next());
+                writer.newLine();
+                count++;
+            }
+        }
+        return new StepCheckpoint(jobId, flowName, stepNumber, itemsFile.getAbsoluteFile(), count, batchSize);
+    }
+
+    /**
+     * @param json      a checkpoint as returned by toJson
+     * @param directory if the items file recorded in the checkpoint does not exist, a file with the same name is looked
+     *                  for in this directory; this allows for the file to be moved to the host that resumes the run
+     * @return the checkpoint; or null if its items file cannot be found
+     */
+    static StepCheckpoint fromJson(JsonNode json, File directory) {
+        JsonNode node = json.has("stepCheckpoint") ? json.get("stepCheckpoint") : json;
+        File itemsFile = new File(node.get("itemsFile").asText());
+        if (!itemsFile.exists() && directory != null) {
+            itemsFile = new File(directory, itemsFile.getName());
+        }
+        if (!itemsFile.exists()) {
+            return null;
+        }
+        StepCheckpoint checkpoint = new StepCheckpoint(node.get("jobId").asText(), node.get("flowName").asText(),
+            node.get("stepNumber").asText(), itemsFile, node.get("itemCount").asLong(), node.get("batchSize").asInt());
+        // Ranges are saved as disjoint and in order, so they can be restored as is
+        for (JsonNode range : node.path("completedBatches")) {
+            checkpoint.completedBatches.put(range.get(0).asLong(), range.get(1).asLong());
+        }
+        JsonNode counts = node.get("completedCounts");
+        if (counts != null) {
+            checkpoint.completedSuccessfulEvents = counts.path("successfulEvents").asLong();
+            checkpoint.completedFailedEvents = counts.path("failedEvents").asLong();
+            checkpoint.completedSuccessfulBatches = counts.path("successfulBatches").asLong();
+            checkpoint.completedFailedBatches = counts.path("failedBatches").asLong();
+        } else {
+            // A checkpoint saved without counts only recorded which batches were completed, so consider them successful
+            checkpoint.completedSuccessfulEvents = checkpoint.itemCount - checkpoint.getRemainingItemCount();
+            checkpoint.completedSuccessfulBatches = checkpoint.getCompletedBatchCount();
+        }
+        return checkpoint;
+    }
+
+    synchronized ObjectNode toJson(ObjectMapper objectMapper) {
+        ObjectNode json = objectMapper.createObjectNode();
+        ObjectNode node = json.putObject("stepCheckpoint");
+        node.put("jobId", jobId);
+        node.put("flowName", flowName);
+        node.put("stepNumber", stepNumber);
+        node.put("itemsFile", itemsFile.getAbsolutePath());
+        node.put("itemCount", itemCount);
+        node.put("batchSize", batchSize);
+        ArrayNode ranges = node.putArray("completedBatches");
+        completedBatches.forEach((first, last) -> ranges.addArray().add(first).add(last));
+        ObjectNode counts = node.putObject("completedCounts");
+        counts.put("successfulEvents", completedSuccessfulEvents);
+        counts.put("failedEvents", completedFailedEvents);
+        counts.put("successfulBatches", completedSuccessfulBatches);
+        counts.put("failedBatches", completedFailedBatches);
+        return json;
+    }
+
+    static String getCheckpointName(String stepNumber) {
+        return "step-" + stepNumber;
+    }
+
+    /**
+     * Marks the given batch as completed with every item in it having been processed successfully.
+     *
+     * @param batchNumber
+     */
+    void batchCompleted(long batchNumber) {
+        final long itemsInBatch = Math.max(0, Math.min(itemCount, batchNumber * batchSize) - (batchNumber - 1) * batchSize);
+        batchCompleted(batchNumber, itemsInBatch, 0, 1, 0);
+    }
+
+    /**
+     * Marks the given batch as completed, merging it with any adjacent ranges of completed batches, and adds the
+     * counts reported while processing it to the counts of the completed batches. A batch of the checkpoint may have
+     * been processed as several smaller batches, and thus the batch counts are not necessarily 1 and 0.
+     *
+     * @param batchNumber
+     * @param successfulEvents
+     * @param failedEvents
+     * @param successfulBatches
+     * @param failedBatches
+     */
+    synchronized void batchCompleted(long batchNumber, long successfulEvents, long failedEvents, long successfulBatches,
+                                     long failedBatches) {
+        if (isBatchCompleted(batchNumber)) {
+            return;
+        }
+        completedSuccessfulEvents += successfulEvents;
+        completedFailedEvents += failedEvents;
+        completedSuccessfulBatches += successfulBatches;
+        completedFailedBatches += failedBatches;
+        long first = batchNumber;
+        long last = batchNumber;
+        Map.Entry<Long, Long> previous = completedBatches.floorEntry(batchNumber - 1);
+        if (previous != null && previous.getValue() == batchNumber - 1) {
+            first = previous.getKey();
+        }
+        Long nextLast = completedBatches.remove(batchNumber + 1);
+        if (nextLast != null) {
+            last = nextLast;
+        }
+        completedBatches.put(first, last);
+    }
+
+    synchronized boolean isBatchCompleted(long batchNumber) {
+        Map.Entry<Long, Long> range = completedBatches.floorEntry(batchNumber);
+        return range != null && range.getValue() >= batchNumber;
+    }
+
+    synchronized long getCompletedBatchCount() {
+        long count = 0;
+        for (Map.Entry<Long, Long> range : completedBatches.entrySet()) {
+            count += range.getValue() - range.getKey() + 1;
+        }
+        return count;
+    }
+
+    long getBatchCount() {
+        return (itemCount + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * @return the number of items in batches that have not yet been completed
+     */
+    synchronized long getRemainingItemCount() {
+        long completedItems = 0;
+        for (Map.Entry<Long, Long> range : completedBatches.entrySet()) {
+            long firstItem = (range.getKey() - 1) * batchSize;
+            long endItem = Math.min(itemCount, range.getValue() * batchSize);
+            completedItems += Math.max(0, endItem - firstItem);
+        }
+        return itemCount - completedItems;
+    }
+
+    /**
+     * @return an iterator over the items in batches that had not been completed when this was called
+     * @throws IOException if the items file cannot be opened
+     */
+    RemainingItems openRemainingItems() throws IOException {
+        return new RemainingItems(Files.newBufferedReader(itemsFile.toPath(), StandardCharsets.UTF_8));
+    }
+
+    void deleteItemsFile() {
+        itemsFile.delete();
+    }
+
+    String getJobId() {
+        return jobId;
+    }
+
+    String getFlowName() {
+        return flowName;
+    }
+
+    String getStepNumber() {
+        return stepNumber;
+    }
+
+    File getItemsFile() {
+        return itemsFile;
+    }
+
+    long getItemCount() {
+        return itemCount;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    synchronized long getCompletedSuccessfulEvents() {
+        return completedSuccessfulEvents;
+    }
+
+    synchronized long getCompletedFailedEvents() {
+        return completedFailedEvents;
+    }
+
+    synchronized long getCompletedSuccessfulBatches() {
+        return completedSuccessfulBatches;
+    }
+
+    synchronized long getCompletedFailedBatches() {
+        return completedFailedBatches;
+    }
+
+    /**
+     * Iterates over the items in the batches that have not yet been completed. The items are handed out in the same
+     * order as in the items file, so when they are consumed in chunks of the checkpoint's batch size - as a
+     * QueryBatcher does - each chunk is exactly one batch. As a QueryBatcher does not necessarily number its batches in
+     * the order in which it read them, the batch number for a chunk is instead determined via the chunk's first item.
+     */
+    class RemainingItems implements Iterator<String>, Closeable {
+
+        private final BufferedReader reader;
+        private final Map<String, Queue<Long>> batchNumbersByFirstItem = new ConcurrentHashMap<>();
+        private long lineNumber = 0;
+        private String nextItem;
+        private boolean exhausted = false;
+
+        RemainingItems(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextItem != null) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final long batchNumber = lineNumber / batchSize + 1;
+                    final boolean firstInBatch = lineNumber % batchSize == 0;
+                    lineNumber++;
+                    if (!isBatchCompleted(batchNumber)) {
+                        if (firstInBatch) {
+                            batchNumbersByFirstItem.compute(line, (item, batchNumbers) -> {
+                                Queue<Long> numbers = batchNumbers != null ? batchNumbers : new ArrayDeque<>();
+                                numbers.add(batchNumber);
+                                return numbers;
+                            });
+                        }
+                        nextItem = line;
+                        return true;
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to read items from checkpoint file: " + itemsFile, ex);
+            }
+            exhausted = true;
+            close();
+            return false;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String item = nextItem;
+            nextItem = null;
+            return item;
+        }
+
+        /**
+         * @param firstItem the first item of a chunk of items that were read from this iterator
+         * @return the number of the batch that the chunk corresponds to, or null if the item did not start a batch
+         */
+        Long takeBatchNumber(String firstItem) {
+            // The same item may start more than one batch, in which case the batches are assumed to finish in order
+            final Long[] batchNumber = new Long[1];
+            batchNumbersByFirstItem.computeIfPresent(firstItem, (item, batchNumbers) -> {
+                batchNumber[0] = batchNumbers.poll();
+                return batchNumbers.isEmpty() ? null : batchNumbers;
+            });
+            return batchNumber[0];
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -15,6 +15,11 @@
  */
 package com.marklogic.hub.step.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class StepMetrics {
@@ -23,6 +28,26 @@ public class StepMetrics {
     AtomicLong successfulBatches = new AtomicLong(0);
     AtomicLong failedBatches = new AtomicLong(0);
 
+    // Bounds the size of the throughput timeline; once reached, adjacent intervals are merged and the interval doubles
+    private static final int MAX_THROUGHPUT_INTERVALS = 60;
+
+    private final long startTime;
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+    private final AtomicLong processedItems = new AtomicLong(0);
+    private volatile long collectorTime = -1;
+    private long throughputIntervalMillis = 1000;
+    private final long[] throughputCounts = new long[MAX_THROUGHPUT_INTERVALS];
+    private int lastThroughputIndex = -1;
+
+    public StepMetrics() {
+        this(System.currentTimeMillis());
+    }
+
+    StepMetrics(long startTime) {
+        this.startTime = startTime;
+    }
+
     public AtomicLong getSuccessfulEvents() {
         return successfulEvents;
     }
@@ -55,4 +80,102 @@ public class StepMetrics {
     public long getFailedBatchesCount() {
         return failedBatches.get();
     }
+
+    /**
+     * Records the time taken to process a batch - e.g. the call to the processBatch endpoint, or the write of a batch
+     * of documents - and counts its items towards the throughput of the step.
+     *
+     * @param latencyMillis
+     * @param itemCount
+     */
+    public void recordBatch(long latencyMillis, long itemCount) {
+        recordBatch(latencyMillis, itemCount, System.currentTimeMillis());
+    }
+
+    void recordBatch(long latencyMillis, long itemCount, long finishTime) {
+        batchLatency.record(latencyMillis);
+        processedItems.addAndGet(itemCount);
+        recordThroughput(finishTime, itemCount);
+    }
+
+    /**
+     * @param waitMillis the time between a batch being created and its processing being started
+     */
+    public void recordQueueWait(long waitMillis) {
+        queueWaitTime.record(waitMillis);
+    }
+
+    /**
+     * @param collectorTimeMillis the time taken to collect the items to process
+     */
+    public void setCollectorTime(long collectorTimeMillis) {
+        this.collectorTime = collectorTimeMillis;
+    }
+
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+    public LatencyHistogram getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    private synchronized void recordThroughput(long time, long itemCount) {
+        int index = (int) (Math.max(0, time - startTime) / throughputIntervalMillis);
+        while (index >= MAX_THROUGHPUT_INTERVALS) {
+            for (int i = 0; i < MAX_THROUGHPUT_INTERVALS / 2; i++) {
+                throughputCounts[i] = throughputCounts[2 * i] + throughputCounts[2 * i + 1];
+            }
+            Arrays.fill(throughputCounts, MAX_THROUGHPUT_INTERVALS / 2, MAX_THROUGHPUT_INTERVALS, 0);
+            lastThroughputIndex = lastThroughputIndex / 2;
+            throughputIntervalMillis *= 2;
+            index = (int) (Math.max(0, time - startTime) / throughputIntervalMillis);
+        }
+        throughputCounts[index] += itemCount;
+        lastThroughputIndex = Math.max(lastThroughputIndex, index);
+    }
+
+    /**
+     * @return the number of items processed per second in each interval since the step was started, up to the last
+     * interval in which a batch finished
+     */
+    synchronized List<Double> getThroughputTimeline() {
+        List<Double> timeline = new ArrayList<>();
+        for (int i = 0; i <= lastThroughputIndex; i++) {
+            timeline.add(Math.round(throughputCounts[i] * 100000.0 / throughputIntervalMillis) / 100.0);
+        }
+        return timeline;
+    }
+
+    synchronized long getThroughputIntervalMillis() {
+        return throughputIntervalMillis;
+    }
+
+    /**
+     * @return the metrics captured while the step was run, in a form that can be serialized to JSON
+     */
+    public Map<String, Object> getSummary() {
+        return getSummary(System.currentTimeMillis());
+    }
+
+    Map<String, Object> getSummary(long endTime) {
+        final long duration = Math.max(0, endTime - startTime);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("durationMillis", duration);
+        if (collectorTime >= 0) {
+            summary.put("collectorTimeMillis", collectorTime);
+        }
+        summary.put("itemsPerSecond", duration > 0 ? Math.round(processedItems.get() * 100000.0 / duration) / 100.0 : 0.0);
+        summary.put("batchLatencyMillis", batchLatency.getSummary());
+        if (queueWaitTime.getCount() > 0) {
+            summary.put("queueWaitMillis", queueWaitTime.getSummary());
+        }
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        synchronized (this) {
+            throughput.put("intervalMillis", throughputIntervalMillis);
+            throughput.put("itemsPerSecond", getThroughputTimeline());
+        }
+        summary.put("throughput", throughput);
+        return summary;
+    }
 }
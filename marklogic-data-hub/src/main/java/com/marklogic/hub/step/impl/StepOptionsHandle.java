@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2021 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.hub.step.ResponseHolder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the inputs for each call to the processBatch endpoint while a step is run. The combined options are
+ * serialized once, and are then only sent until the server has confirmed that it cached them under this handle's key;
+ * subsequent batches only reference the options via that key. If the server reports that it could not cache the
+ * options - e.g. because the user is not permitted to - the options are sent with every batch, as they were before
+ * this handle existed. The clients that options were sent to are tracked so that the cached options can be removed
+ * from each app server once the step run has finished.
+ */
+class StepOptionsHandle {
+
+    private final ObjectMapper objectMapper;
+    private final String flowName;
+    private final String stepNumber;
+    private final String jobId;
+    private final String key;
+    private final ObjectNode options;
+
+    private volatile boolean optionsRegistered = false;
+    private volatile boolean optionsCachingDisabled = false;
+    private final Set<DatabaseClient> clientsWithCachedOptions = ConcurrentHashMap.newKeySet();
+
+    StepOptionsHandle(ObjectMapper objectMapper, String flowName, String stepNumber, String jobId, Map<String, Object> combinedOptions) {
+        this.objectMapper = objectMapper;
+        this.flowName = flowName;
+        this.stepNumber = stepNumber;
+        this.jobId = jobId;
+        // The key is unique to this run of the step, as the options may differ when a step is run again in the same job
+        this.key = jobId + ":" + stepNumber + ":" + UUID.randomUUID();
+        this.options = objectMapper.valueToTree(combinedOptions);
+        // The items are sent separately for each batch
+        this.options.remove("uris");
+    }
+
+    /**
+     * @param items       the items in the batch to process
+     * @param sendOptions true if the options must be sent regardless of whether the server is believed to have them
+     *                    cached; typically because the server reported that it does not
+     * @return the inputs for a call to processBatch
+     */
+    ObjectNode newInputs(String[] items, boolean sendOptions) {
+        ObjectNode inputs = objectMapper.createObjectNode();
+        inputs.put("flowName", flowName);
+        inputs.put("stepNumber", stepNumber);
+        inputs.put("jobId", jobId);
+        ArrayNode uris = inputs.putArray("uris");
+        for (String item : items) {
+            uris.add(item);
+        }
+        if (!optionsCachingDisabled) {
+            inputs.put("optionsKey", key);
+        }
+        if (sendOptions || optionsCachingDisabled || !optionsRegistered) {
+            // The same node is shared by every batch; it is only read when the inputs are serialized
+            inputs.set("options", options);
+        }
+        return inputs;
+    }
+
+    /**
+     * Determines from the response to processBatch whether the options must continue to be sent with each batch.
+     *
+     * @param response the response from processBatch
+     */
+    void recordResponse(ResponseHolder response) {
+        if (Boolean.FALSE.equals(response.stepOptionsCached)) {
+            optionsCachingDisabled = true;
+        } else if (!response.stepOptionsNotFound) {
+            optionsRegistered = true;
+        }
+    }
+
+    /**
+     * Records that the given inputs were sent via the given client, so that the options can later be removed from the
+     * app server that the client connects to.
+     *
+     * @param client the client that sent the inputs to processBatch
+     * @param inputs the inputs constructed by newInputs
+     */
+    void recordInputsSent(DatabaseClient client, ObjectNode inputs) {
+        if (inputs.has("options") && inputs.has("optionsKey")) {
+            clientsWithCachedOptions.add(client);
+        }
+    }
+
+    /**
+     * @return the clients whose app servers may have the options cached; empty if the options could not be cached
+     */
+    Set<DatabaseClient> getClientsWithCachedOptions() {
+        return optionsCachingDisabled ? Collections.emptySet() : clientsWithCachedOptions;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    boolean isOptionsCachingDisabled() {
+        return optionsCachingDisabled;
+    }
+}
@@ -28,6 +28,7 @@ import com.marklogic.client.io.DocumentMetadataHandle;
 import com.marklogic.client.io.Format;
 import com.marklogic.client.io.InputStreamHandle;
 import com.marklogic.client.io.JacksonHandle;
+import com.marklogic.client.io.marker.AbstractWriteHandle;
 import com.marklogic.hub.DatabaseKind;
 import com.marklogic.hub.HubClient;
 import com.marklogic.hub.HubProject;
@@ -52,9 +53,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 public class WriteStepRunner implements StepRunner {
@@ -73,6 +79,7 @@ public class WriteStepRunner implements StepRunner {
     private static final String DATE_TIME_FORMAT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS";
     private List<StepItemCompleteListener> stepItemCompleteListeners = new ArrayList<>();
     private List<StepItemFailureListener> stepItemFailureListeners = new ArrayList<>();
+    private List<StepMetricsListener> stepMetricsListeners = new ArrayList<>();
 
     private HubClient hubClient;
     private HubProject hubProject;
@@ -80,6 +87,10 @@ public class WriteStepRunner implements StepRunner {
     private Thread runningThread = null;
     private DataMovementManager dataMovementManager = null;
     private WriteBatcher writeBatcher = null;
+    private AdaptiveBatchController adaptiveBatchController = null;
+    // Keyed on batch number; only populated when adaptive batching is enabled
+    private final Map<Long, long[]> adaptiveBatchStarts = new ConcurrentHashMap<>();
+    private long documentsAdded = 0;
     // setting these values to protected so their values can be tested
     protected String inputFilePath = null;
     protected String outputCollections;
@@ -89,6 +100,8 @@ public class WriteStepRunner implements StepRunner {
     protected String outputURIReplacement;
     protected String outputURIPrefix;
     protected String separator = ",";
+    // Number of threads used to read and split files; files are read on the calling thread when this is 1
+    protected int fileReaderThreadCount = 1;
     protected AtomicBoolean isStopped = new AtomicBoolean(false);
     private IngestionStepDefinitionImpl stepDef;
     private Map<String, Object> stepConfig = new HashMap<>();
@@ -170,6 +183,12 @@ public class WriteStepRunner implements StepRunner {
         return this;
     }
 
+    @Override
+    public StepRunner onMetrics(StepMetricsListener listener) {
+        this.stepMetricsListeners.add(listener);
+        return this;
+    }
+
     @Override
     public void awaitCompletion() {
         try {
@@ -258,6 +277,9 @@ public class WriteStepRunner implements StepRunner {
     @Override
     public void stop() {
         isStopped.set(true);
+        if (adaptiveBatchController != null) {
+            adaptiveBatchController.close();
+        }
         if(writeBatcher != null) {
             dataMovementManager.stopJob(writeBatcher);
         }
@@ -329,6 +351,14 @@ public class WriteStepRunner implements StepRunner {
             this.withStopOnFailure(Boolean.parseBoolean(stepConfig.get("stopOnFailure").toString()));
         }
 
+        this.fileReaderThreadCount = obj.getInt("fileReaderThreadCount", 1);
+        if (stepConfig.get("fileReaderThreadCount") != null) {
+            this.fileReaderThreadCount = Integer.parseInt(stepConfig.get("fileReaderThreadCount").toString());
+        }
+        if (this.fileReaderThreadCount < 1) {
+            throw new IllegalArgumentException("fileReaderThreadCount must be greater than zero");
+        }
+
         if(StringUtils.isNotEmpty(outputURIReplacement)){
             if(outputURIPrefix != null){
                 throw new RuntimeException("'outputURIPrefix' and 'outputURIReplacement' cannot be set simultaneously");
@@ -406,12 +436,20 @@ public class WriteStepRunner implements StepRunner {
         String optionString = jsonToString(combinedOptions);
         serverTransform.addParameter("options", optionString);
 
+        // A WriteBatcher's batch size cannot be changed once it has started, so adaptive batching can only adjust how
+        // many batches are written concurrently
+        adaptiveBatchController = AdaptiveBatchController.fromOptions(combinedOptions, batchSize, threadCount, false);
+        adaptiveBatchStarts.clear();
+        documentsAdded = 0;
+
         writeBatcher = dataMovementManager.newWriteBatcher()
             .withBatchSize(batchSize)
-            .withThreadCount(threadCount)
+            .withThreadCount(adaptiveBatchController != null ? adaptiveBatchController.getMaxThreadCount() : threadCount)
             .withJobId(runStepResponse.getJobId())
             .withTransform(serverTransform)
             .onBatchSuccess(batch ->{
+                finishAdaptiveBatch(batch, false);
+                recordBatchMetrics(stepMetrics, batch, false);
                 //TODO: There is one additional item returned, it has to be investigated
                 stepMetrics.getSuccessfulEvents().addAndGet(batch.getItems().length-1);
                 stepMetrics.getSuccessfulBatches().addAndGet(1);
@@ -425,6 +463,8 @@ public class WriteStepRunner implements StepRunner {
                 }
             })
             .onBatchFailure((batch, ex) -> {
+                finishAdaptiveBatch(batch, true);
+                recordBatchMetrics(stepMetrics, batch, true);
                 stepMetrics.getFailedEvents().addAndGet(batch.getItems().length-1);
                 stepMetrics.getFailedBatches().addAndGet(1);
                 if (errorMessages.size() < MAX_ERROR_MESSAGES) {
@@ -489,13 +529,17 @@ public class WriteStepRunner implements StepRunner {
         if(!isStopped.get()){
             JobTicket jobTicket = dataMovementManager.startJob(writeBatcher);
             ticketWrapper.put("jobTicket", jobTicket);
-            while(itr.hasNext()) {
-                try {
-                    File file = new File((String) itr.next());
-                    addToBatcher(file, fileFormat);
-                }
-                catch (Exception e) {
-                    throw new RuntimeException(e);
+            if (fileReaderThreadCount > 1) {
+                readFilesInParallel(itr, fileFormat);
+            } else {
+                while(itr.hasNext()) {
+                    try {
+                        File file = new File((String) itr.next());
+                        addToBatcher(file, fileFormat);
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
                 }
             }
         }
@@ -528,6 +572,18 @@ public class WriteStepRunner implements StepRunner {
             if (errorMessages.size() > 0) {
                 runStepResponse.withStepOutput(errorMessages);
             }
+            if (adaptiveBatchController != null) {
+                adaptiveBatchController.close();
+                runStepResponse.setAdaptiveBatching(adaptiveBatchController.getSummary());
+            }
+            runStepResponse.setMetrics(stepMetrics.getSummary());
+            for (StepMetricsListener listener : stepMetricsListeners) {
+                try {
+                    listener.onStepFinished(jobId, step, runStepResponse.getMetrics());
+                } catch (Exception ex) {
+                    logger.warn("Unable to notify step metrics listener of finished step; cause: " + ex.getMessage());
+                }
+            }
 
             if (jobOutputIsEnabled()) {
                 JsonNode jobDoc = null;
@@ -554,6 +610,53 @@ public class WriteStepRunner implements StepRunner {
         return runStepResponse;
     }
 
+    /**
+     * Reads and splits files on a pool of fileReaderThreadCount threads, each of which adds documents to the
+     * WriteBatcher, which supports being added to by multiple threads. Each thread takes the next file from the given
+     * iterator until there are no more files, the step has been stopped, or a file could not be read. In the latter
+     * case, as when files are read on a single thread, the remaining files are not read and an exception is thrown.
+     *
+     * @param files      the paths of the files to read; does not need to be thread-safe
+     * @param fileFormat the format of each document
+     */
+    private void readFilesInParallel(Iterator files, Format fileFormat) {
+        logger.info(String.format("Reading files with %d threads", fileReaderThreadCount));
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        ExecutorService readerPool = Executors.newFixedThreadPool(fileReaderThreadCount,
+            runnable -> new Thread(runnable, "hub-file-reader-" + threadNumber.incrementAndGet()));
+        try {
+            for (int i = 0; i < fileReaderThreadCount; i++) {
+                readerPool.execute(() -> {
+                    String path;
+                    while (failure.get() == null && !isStopped.get() && !writeBatcher.isStopped() && (path = nextFile(files)) != null) {
+                        try {
+                            addToBatcher(new File(path), fileFormat);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+            readerPool.shutdown();
+            readerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            readerPool.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+    }
+
+    private static String nextFile(Iterator files) {
+        synchronized (files) {
+            return files.hasNext() ? (String) files.next() : null;
+        }
+    }
+
     private void processCsv(JacksonHandle jacksonHandle, File file) {
         ObjectMapper mapper = jacksonHandle.getMapper();
         JsonNode originalContent = jacksonHandle.get();
@@ -571,7 +674,7 @@ public class WriteStepRunner implements StepRunner {
         node.put("file", file.getAbsolutePath());
         jacksonHandle.set(node);
         try {
-            writeBatcher.add(generateUriForCsv(file.getParent(), SystemUtils.OS_NAME.toLowerCase()), jacksonHandle);
+            addToWriteBatcher(generateUriForCsv(file.getParent(), SystemUtils.OS_NAME.toLowerCase()), jacksonHandle);
         }
         catch (IllegalStateException e) {
             logger.error("WriteBatcher has been stopped");
@@ -641,7 +744,7 @@ public class WriteStepRunner implements StepRunner {
                             }
                             uri = generateAndEncodeURI(outputURIReplace(uri));
                         }
-                        writeBatcher.add(uri, handle);
+                        addToWriteBatcher(uri, handle);
                     } catch (IllegalStateException e) {
                         logger.error("WriteBatcher has been stopped");
                     }
@@ -653,6 +756,57 @@ public class WriteStepRunner implements StepRunner {
         }
     }
 
+    /**
+     * Adds the document to the WriteBatcher. When adaptive batching is enabled, the first document of each batch must
+     * wait until the controller allows another batch to be written, and the time at which the batch was started is
+     * captured so that its latency can be reported to the controller once the batch has been written. This relies on
+     * documents being added one at a time, so that batch numbers are assigned in the order documents are added.
+     */
+    private void addToWriteBatcher(String uri, AbstractWriteHandle handle) {
+        if (adaptiveBatchController == null) {
+            writeBatcher.add(uri, handle);
+            return;
+        }
+        // When files are read in parallel, documents must still be added one at a time for batch numbers to be known
+        synchronized (adaptiveBatchStarts) {
+            if (documentsAdded % batchSize == 0) {
+                long batchNumber = documentsAdded / batchSize + 1;
+                long batchEpoch = adaptiveBatchController.startBatch();
+                adaptiveBatchStarts.put(batchNumber, new long[]{batchEpoch, System.currentTimeMillis()});
+            }
+            documentsAdded++;
+            writeBatcher.add(uri, handle);
+        }
+    }
+
+    private void finishAdaptiveBatch(WriteBatch batch, boolean failed) {
+        if (adaptiveBatchController != null) {
+            long[] batchStart = adaptiveBatchStarts.remove(batch.getJobBatchNumber());
+            if (batchStart != null) {
+                adaptiveBatchController.finishBatch(batchStart[0], System.currentTimeMillis() - batchStart[1], failed);
+            }
+        }
+    }
+
+    /**
+     * The latency of a batch is measured from when the WriteBatcher created it, and thus includes any time that it
+     * waited for a thread to write it.
+     */
+    private void recordBatchMetrics(StepMetrics stepMetrics, WriteBatch batch, boolean failed) {
+        final long latency = batch.getTimestamp() != null ?
+            Math.max(0, System.currentTimeMillis() - batch.getTimestamp().getTimeInMillis()) : 0;
+        // The default metadata is written as the first item of each batch, so it is not counted as a document
+        final int itemCount = Math.max(0, batch.getItems().length - 1);
+        stepMetrics.recordBatch(latency, itemCount);
+        for (StepMetricsListener listener : stepMetricsListeners) {
+            try {
+                listener.onBatchFinished(jobId, step, itemCount, latency, -1, failed);
+            } catch (Exception ex) {
+                logger.warn("Unable to notify step metrics listener of finished batch; cause: " + ex.getMessage());
+            }
+        }
+    }
+
     protected String getPrefixedEncodedURI(String filename) throws  URISyntaxException{
         return generateAndEncodeURI(new StringBuilder().append(outputURIPrefix).append(filename).toString());
     }
@@ -0,0 +1,89 @@
+package com.marklogic.hub.collector;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectedItemStreamTest {
+
+    @Test
+    void readAllItems() throws Exception {
+        CollectedItemStream stream = new CollectedItemStream(new BufferedReader(new StringReader("/a.json\n\n/b.json\n/c.json\n")), 2, null);
+
+        List<String> items = new ArrayList<>();
+        stream.forEachRemaining(items::add);
+        stream.awaitCollection();
+
+        assertEquals(3, items.size(), "Empty lines should be ignored");
+        assertEquals("/a.json", items.get(0));
+        assertEquals("/c.json", items.get(2));
+        assertEquals(3, stream.getCollectedCount());
+        assertEquals(3, stream.getConsumedCount());
+        assertTrue(stream.isComplete());
+        assertFalse(stream.hasNext());
+        assertNull(stream.getFailure());
+    }
+
+    @Test
+    void producerBlocksWhenBufferIsFull() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            lines.append("/item").append(i).append(".json\n");
+        }
+        CollectedItemStream stream = new CollectedItemStream(new BufferedReader(new StringReader(lines.toString())), 10, null);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals(10, stream.getCollectedCount(), "The producer should not read more items than the buffer can hold");
+        assertFalse(stream.isComplete());
+
+        int count = 0;
+        while (stream.hasNext()) {
+            stream.next();
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(100, stream.getCollectedCount());
+    }
+
+    @Test
+    void cancelUnblocksConsumer() throws Exception {
+        PipedWriter writer = new PipedWriter();
+        PipedReader reader = new PipedReader(writer);
+        writer.write("/a.json\n");
+        writer.flush();
+
+        CollectedItemStream stream = new CollectedItemStream(new BufferedReader(reader), 10, () -> {
+            try {
+                writer.close();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        assertTrue(stream.hasNext());
+        assertEquals("/a.json", stream.next());
+
+        new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            stream.cancel();
+        }).start();
+
+        assertFalse(stream.hasNext(), "Once cancelled, the consumer should no longer block waiting for items");
+        stream.awaitCollection();
+        assertTrue(stream.isCancelled());
+        assertTrue(stream.isComplete());
+        assertNull(stream.getFailure(), "A read failure caused by cancelling should not be reported as a failure");
+    }
+}
@@ -0,0 +1,170 @@
+package com.marklogic.hub.collector;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskQueueTest {
+
+    @Test
+    void invalidParameters() throws IOException {
+        assertThrows(InvalidParameterException.class, () -> new DiskQueue<String>(0));
+
+        File tmpFile = File.createTempFile("tmp", "txt");
+        tmpFile.deleteOnExit();
+        assertThrows(InvalidParameterException.class, () -> new DiskQueue<String>(1, tmpFile));
+
+        File tmpDir = Files.createTempDirectory("temp").toFile();
+        assertThrows(InvalidParameterException.class, () -> new DiskQueue<String>(1, tmpDir, 4));
+        tmpDir.delete();
+        assertThrows(InvalidParameterException.class, () -> new DiskQueue<String>(1, tmpDir));
+    }
+
+    @Test
+    void memoryOnly() {
+        try (DiskQueue<String> queue = new DiskQueue<>(3)) {
+            queue.add("1");
+            queue.add("2");
+            assertEquals(2, queue.size());
+            assertEquals("1", queue.peek());
+            assertEquals("1", queue.poll());
+            assertEquals("2", queue.remove());
+            assertNull(queue.poll());
+            assertNull(queue.peek());
+            assertThrows(NoSuchElementException.class, queue::remove);
+        }
+    }
+
+    @Test
+    void spillToDiskAcrossSegments() throws IOException {
+        File tempDir = Files.createTempDirectory("diskqueue").toFile();
+        final int count = 10000;
+        try (DiskQueue<String> queue = new DiskQueue<>(10, tempDir, 128)) {
+            for (int i = 0; i < count; i++) {
+                queue.add("/item/" + i + ".json");
+            }
+            assertEquals(count, queue.size());
+            assertTrue(tempDir.listFiles().length > 1, "Elements should have been written to multiple segments");
+
+            Iterator<String> iterator = queue.iterator();
+            for (int i = 0; i < count; i++) {
+                assertTrue(iterator.hasNext());
+                assertEquals("/item/" + i + ".json", iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+            assertEquals(0, queue.size());
+            assertThrows(NoSuchElementException.class, iterator::next);
+        }
+        assertEquals(0, tempDir.listFiles().length, "Closing the queue should delete its segments");
+        tempDir.delete();
+    }
+
+    @Test
+    void peekFromDisk() {
+        try (DiskQueue<String> queue = new DiskQueue<>(1)) {
+            queue.add("first");
+            queue.add("second");
+            queue.add("third");
+            assertEquals("first", queue.poll());
+            assertEquals("second", queue.peek());
+            assertEquals("second", queue.peek(), "Peeking should not consume the element");
+            assertEquals("second", queue.poll());
+            assertEquals("third", queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    void multiByteAndLargeElements() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append("\u00e9\u4e2d\ud83d\ude00");
+        }
+        List<String> elements = new ArrayList<>();
+        elements.add("");
+        elements.add("/caf\u00e9/\u4e2d\u6587.json");
+        elements.add(large.toString());
+        elements.add("after-large");
+
+        try (DiskQueue<String> queue = new DiskQueue<>(1, null, 64)) {
+            queue.add("in-memory");
+            elements.forEach(queue::add);
+            assertEquals("in-memory", queue.poll());
+            for (String element : elements) {
+                assertEquals(element, queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    void interleavedReadsAndWrites() throws IOException {
+        File tempDir = Files.createTempDirectory("diskqueue").toFile();
+        try (DiskQueue<String> queue = new DiskQueue<>(2, tempDir, 64)) {
+            int written = 0;
+            int read = 0;
+            // Keeps a backlog of items on disk, so that segments are being written while others are still being read
+            for (int i = 0; i < 10; i++) {
+                queue.add("item-" + written++);
+            }
+
+            Set<String> segmentFileNames = new HashSet<>();
+            int warmedUpSegmentFileCount = 0;
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 10; i++) {
+                    queue.add("item-" + written++);
+                    for (File file : tempDir.listFiles()) {
+                        segmentFileNames.add(file.getName());
+                    }
+                }
+                for (int i = 0; i < 10; i++) {
+                    assertEquals("item-" + read++, queue.poll());
+                }
+                if (round == 1) {
+                    warmedUpSegmentFileCount = segmentFileNames.size();
+                } else if (round > 1) {
+                    assertEquals(warmedUpSegmentFileCount, segmentFileNames.size(), "Fully read segments should " +
+                        "have been recycled instead of new ones being created; round: " + round);
+                    assertTrue(tempDir.listFiles().length <= warmedUpSegmentFileCount);
+                }
+            }
+            while (!queue.isEmpty()) {
+                assertEquals("item-" + read++, queue.poll());
+            }
+            assertEquals(written, read);
+            assertTrue(tempDir.listFiles().length <= 3,
+                "Once every segment has been read, only the spare segments should remain; found: " + tempDir.listFiles().length);
+        }
+        tempDir.delete();
+    }
+
+    @Test
+    void clear() {
+        try (DiskQueue<String> queue = new DiskQueue<>(1)) {
+            queue.add("1");
+            queue.add("2");
+            queue.clear();
+            assertEquals(0, queue.size());
+            queue.add("3");
+            assertEquals("3", queue.poll());
+        }
+    }
+
+    @Test
+    void offerNull() {
+        try (DiskQueue<String> queue = new DiskQueue<>(1)) {
+            assertThrows(NullPointerException.class, () -> queue.offer(null));
+        }
+    }
+}
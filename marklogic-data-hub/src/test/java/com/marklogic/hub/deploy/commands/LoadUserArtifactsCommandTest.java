@@ -15,13 +15,16 @@
  */
 package com.marklogic.hub.deploy.commands;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.marklogic.appdeployer.command.CommandContext;
 import com.marklogic.client.FailedRequestException;
 import com.marklogic.client.io.DocumentMetadataHandle;
 import com.marklogic.hub.AbstractHubCoreTest;
+import com.marklogic.hub.HubClient;
 import com.marklogic.hub.impl.HubConfigImpl;
 import com.marklogic.hub.step.StepDefinition;
 import com.marklogic.mgmt.util.ObjectMapperFactory;
@@ -34,7 +37,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -205,4 +212,56 @@ public class LoadUserArtifactsCommandTest extends AbstractHubCoreTest {
             () -> loadUserArtifactsCommand.execute(commandContext));
         assertEquals(errorMessage, ex.getServerMessage());
     }
+
+    @Test
+    void stepsAreLoadedAfterFlowsAndStepDefinitions() {
+        installProjectInFolder("test-projects/all-artifacts");
+
+        List<String> savedArtifactTypes = Collections.synchronizedList(new ArrayList<>());
+        LoadUserArtifactsCommand command = new LoadUserArtifactsCommand(getHubConfig()) {
+            @Override
+            protected JsonNode saveArtifacts(HubClient hubClient, ArrayNode artifacts) {
+                artifacts.forEach(artifact -> savedArtifactTypes.add(artifact.get("artifactType").asText()));
+                return super.saveArtifacts(hubClient, artifacts);
+            }
+        };
+        command.setArtifactBatchSize(1);
+        command.setThreadCount(4);
+        command.execute(newCommandContext());
+
+        List<String> nonStepTypes = Arrays.asList("flow", "stepDefinition");
+        assertTrue(savedArtifactTypes.containsAll(nonStepTypes), "Unexpected artifact types: " + savedArtifactTypes);
+        assertEquals(6, savedArtifactTypes.size(), "Expected 1 flow, 1 step definition, and 4 steps to be saved; " +
+            "artifact types: " + savedArtifactTypes);
+        assertTrue(nonStepTypes.contains(savedArtifactTypes.get(0)) && nonStepTypes.contains(savedArtifactTypes.get(1)),
+            "Each artifact is saved in its own call on one of 4 threads, but steps must still not be saved until every " +
+                "flow and step definition has been saved, as a step may depend on its step definition; artifact types: " +
+                savedArtifactTypes);
+    }
+
+    @Test
+    void failedCallStopsLaterPhases() {
+        installProjectInFolder("test-projects/all-artifacts");
+
+        List<String> savedArtifactTypes = Collections.synchronizedList(new ArrayList<>());
+        RuntimeException failure = new RuntimeException("Unable to save flow");
+        LoadUserArtifactsCommand command = new LoadUserArtifactsCommand(getHubConfig()) {
+            @Override
+            protected JsonNode saveArtifacts(HubClient hubClient, ArrayNode artifacts) {
+                artifacts.forEach(artifact -> savedArtifactTypes.add(artifact.get("artifactType").asText()));
+                if ("flow".equals(artifacts.get(0).get("artifactType").asText())) {
+                    throw failure;
+                }
+                return super.saveArtifacts(hubClient, artifacts);
+            }
+        };
+        command.setArtifactBatchSize(1);
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> command.execute(newCommandContext()));
+        assertSame(failure, ex, "The exception thrown by the failed call should be rethrown as-is, so that a " +
+            "FailedRequestException from MarkLogic still reaches the caller with its server message");
+        assertFalse(savedArtifactTypes.stream().anyMatch(type -> !"flow".equals(type) && !"stepDefinition".equals(type)),
+            "No steps should have been saved, as the phase that loads them should not have been run after the flow " +
+                "failed to be saved; artifact types: " + savedArtifactTypes);
+    }
 }
@@ -0,0 +1,137 @@
+package com.marklogic.hub.deploy.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.io.JacksonHandle;
+import com.marklogic.hub.AbstractHubCoreTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentHashModulesManagerTest extends AbstractHubCoreTest {
+
+    private final static String PERMISSIONS = "data-hub-module-reader,read,data-hub-module-writer,update";
+
+    private DatabaseClient modulesClient;
+    private Path projectDir;
+    private File module;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        modulesClient = getHubClient().getModulesClient();
+        deleteManifest();
+        projectDir = Files.createTempDirectory("content-hash");
+        module = projectDir.resolve("src/main/ml-modules/root/custom-modules/test.sjs").toFile();
+        module.getParentFile().mkdirs();
+        Files.write(module.toPath(), "'use strict';".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void afterEach() {
+        deleteManifest();
+    }
+
+    @Test
+    void permissionsAreIncludedInHash() {
+        String hash = newManager(PERMISSIONS).hashFile(module);
+        assertEquals(hash, newManager(PERMISSIONS).hashFile(module), "The same content and permissions should always have the same hash");
+        assertNotEquals(hash, newManager("data-hub-module-reader,read").hashFile(module),
+            "Changing the permissions that modules are loaded with should cause every module to be loaded again");
+    }
+
+    @Test
+    void unchangedModuleIsSkipped() throws IOException {
+        ContentHashModulesManager manager = newManager(PERMISSIONS);
+        assertTrue(manager.hasFileBeenModifiedSinceLastLoaded(module), "The module has not been loaded yet");
+        manager.saveLastLoadedTimestamp(module, new Date());
+        assertFalse(manager.hasFileBeenModifiedSinceLastLoaded(module), "The loaded module has not changed, so it should be skipped");
+
+        Files.write(module.toPath(), "'use strict'; const changed = true;".getBytes(StandardCharsets.UTF_8));
+        assertTrue(manager.hasFileBeenModifiedSinceLastLoaded(module), "The content of the module changed, so it should be loaded");
+    }
+
+    @Test
+    void manifestIsSavedAndReloaded() {
+        ContentHashModulesManager manager = newManager(PERMISSIONS);
+        manager.hasFileBeenModifiedSinceLastLoaded(module);
+        manager.saveLastLoadedTimestamp(module, new Date());
+        manager.saveManifest();
+
+        JsonNode manifest = modulesClient.newJSONDocumentManager().read(ContentHashModulesManager.MANIFEST_URI, new JacksonHandle()).get();
+        final String path = "src/main/ml-modules/root/custom-modules/test.sjs";
+        assertEquals(manager.hashFile(module), manifest.get("hashes").get(path).asText(),
+            "The module path should be stored relative to the project directory, so that the manifest does not " +
+                "depend on where the project is checked out");
+
+        assertFalse(newManager(PERMISSIONS).hasFileBeenModifiedSinceLastLoaded(module),
+            "A new manager, such as one used by a deployment from a fresh checkout, should read the manifest from the " +
+                "modules database and thus skip the unchanged module");
+
+        ContentHashModulesManager ignoringManager = newManager(PERMISSIONS);
+        ignoringManager.setIgnoreManifest(true);
+        assertTrue(ignoringManager.hasFileBeenModifiedSinceLastLoaded(module),
+            "When the manifest is ignored, as is the case when modules are force-loaded, every module should be loaded");
+    }
+
+    @Test
+    void modulesLoadedConcurrently() throws Exception {
+        final int moduleCount = 500;
+        List<File> modules = new ArrayList<>();
+        for (int i = 0; i < moduleCount; i++) {
+            File file = projectDir.resolve("src/main/ml-modules/root/custom-modules/test" + i + ".sjs").toFile();
+            Files.write(file.toPath(), ("'use strict'; const value = " + i + ";").getBytes(StandardCharsets.UTF_8));
+            modules.add(file);
+        }
+
+        // Mimics DefaultModulesLoader, which checks and records modules on the threads of its task executor
+        ContentHashModulesManager manager = newManager(PERMISSIONS);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            modules.forEach(file -> futures.add(executor.submit(() -> {
+                if (manager.hasFileBeenModifiedSinceLastLoaded(file)) {
+                    manager.saveLastLoadedTimestamp(file, new Date());
+                }
+            })));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        manager.saveManifest();
+
+        JsonNode manifest = modulesClient.newJSONDocumentManager().read(ContentHashModulesManager.MANIFEST_URI, new JacksonHandle()).get();
+        assertEquals(moduleCount, manifest.get("hashes").size(),
+            "The hash of every module loaded by any thread should have been saved in the manifest");
+        ContentHashModulesManager newManager = newManager(PERMISSIONS);
+        for (File file : modules) {
+            assertFalse(newManager.hasFileBeenModifiedSinceLastLoaded(file), "Every module should have been recorded " +
+                "with its correct hash, and thus not be loaded again; module: " + file.getName());
+        }
+    }
+
+    private ContentHashModulesManager newManager(String permissions) {
+        return new ContentHashModulesManager(modulesClient, null, projectDir, permissions);
+    }
+
+    private void deleteManifest() {
+        modulesClient.newServerEval().javascript(String.format(
+            "declareUpdate(); if (fn.docAvailable('%s')) { xdmp.documentDelete('%s'); }",
+            ContentHashModulesManager.MANIFEST_URI, ContentHashModulesManager.MANIFEST_URI)).evalAs(String.class);
+    }
+}
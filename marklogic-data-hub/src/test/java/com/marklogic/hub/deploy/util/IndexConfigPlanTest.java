@@ -0,0 +1,100 @@
+package com.marklogic.hub.deploy.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexConfigPlanTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void noChangesWhenIndexesExist() throws IOException {
+        ObjectNode desired = readJson("{'range-path-index': [" + pathIndex("/Customer/name", "reject") + "], " +
+            "'path-namespace': [{'prefix': 'es', 'namespace-uri': 'http://marklogic.com/entity-services'}]}");
+        ObjectNode existing = readJson("{'database-name': 'data-hub-FINAL', 'range-path-index': [" + pathIndex("/Other/id", "reject") + ", " +
+            pathIndex("/Customer/name", "reject").replace("}", ", 'extra-default': 'true'}") + "], " +
+            "'path-namespace': [{'prefix': 'es', 'namespace-uri': 'http://marklogic.com/entity-services'}]}");
+
+        IndexConfigPlan plan = IndexConfigPlan.build("data-hub-FINAL", desired, existing);
+        assertFalse(plan.hasChanges(), "Existing items with additional default properties should satisfy the desired items; plan: " + plan);
+        assertFalse(plan.requiresReindexing());
+        assertEquals(0, plan.getPropertiesToSave().size());
+    }
+
+    @Test
+    void onlyChangedPropertiesAreSaved() throws IOException {
+        ObjectNode desired = readJson("{'range-path-index': [" + pathIndex("/Customer/name", "reject") + ", " + pathIndex("/Customer/id", "reject") + "], " +
+            "'path-namespace': [{'prefix': 'es', 'namespace-uri': 'http://marklogic.com/entity-services'}]}");
+        ObjectNode existing = readJson("{'range-path-index': [" + pathIndex("/Customer/name", "reject") + ", " + pathIndex("/Other/id", "reject") + "], " +
+            "'path-namespace': [{'prefix': 'es', 'namespace-uri': 'http://marklogic.com/entity-services'}]}");
+
+        IndexConfigPlan plan = IndexConfigPlan.build("data-hub-FINAL", desired, existing);
+        assertEquals(1, plan.getChanges().size());
+        IndexConfigPlan.Change change = plan.getChanges().get(0);
+        assertEquals(IndexConfigPlan.ChangeType.ADD, change.getType());
+        assertEquals("range-path-index", change.getPropertyName());
+        assertTrue(change.requiresReindexing());
+
+        ObjectNode propertiesToSave = plan.getPropertiesToSave();
+        assertFalse(propertiesToSave.has("path-namespace"), "Unchanged properties should not be sent to the Manage API");
+        ArrayNode indexes = (ArrayNode) propertiesToSave.get("range-path-index");
+        assertEquals(3, indexes.size(), "Existing indexes should be retained since the Manage API overwrites arrays");
+        assertEquals("/Customer/name", indexes.get(0).get("path-expression").asText());
+        assertEquals("/Other/id", indexes.get(1).get("path-expression").asText());
+        assertEquals("/Customer/id", indexes.get(2).get("path-expression").asText());
+    }
+
+    @Test
+    void modifiedIndexIsReplaced() throws IOException {
+        ObjectNode desired = readJson("{'range-path-index': [" + pathIndex("/Customer/name", "ignore") + "]}");
+        ObjectNode existing = readJson("{'range-path-index': [" + pathIndex("/Customer/name", "reject") + "]}");
+
+        IndexConfigPlan plan = IndexConfigPlan.build("data-hub-FINAL", desired, existing);
+        assertEquals(1, plan.getChanges().size());
+        assertEquals(IndexConfigPlan.ChangeType.MODIFY, plan.getChanges().get(0).getType());
+        assertFalse(plan.requiresReindexing(), "Changing invalid-values does not affect what is indexed");
+
+        ArrayNode indexes = (ArrayNode) plan.getPropertiesToSave().get("range-path-index");
+        assertEquals(1, indexes.size());
+        assertEquals("ignore", indexes.get(0).get("invalid-values").asText());
+    }
+
+    @Test
+    void pathNamespacesDoNotRequireReindexing() throws IOException {
+        ObjectNode desired = readJson("{'path-namespace': [{'prefix': 'ex', 'namespace-uri': 'http://example.org'}]}");
+        ObjectNode existing = readJson("{}");
+
+        IndexConfigPlan plan = IndexConfigPlan.build("data-hub-STAGING", desired, existing);
+        assertTrue(plan.hasChanges());
+        assertFalse(plan.requiresReindexing());
+        assertTrue(plan.getReindexingChanges().isEmpty());
+        assertEquals(1, plan.getPropertiesToSave().get("path-namespace").size());
+    }
+
+    @Test
+    void scalarValuesAreComparedAsText() throws IOException {
+        ObjectNode desired = readJson("{'range-path-index': [{'path-expression': '/a', 'scalar-type': 'int', 'collation': '', 'range-value-positions': false}]}");
+        ObjectNode existing = readJson("{'range-path-index': [{'path-expression': '/a', 'scalar-type': 'int', 'collation': '', 'range-value-positions': 'false'}]}");
+        assertFalse(IndexConfigPlan.build("data-hub-FINAL", desired, existing).hasChanges());
+
+        desired = readJson("{'range-path-index': [{'path-expression': '/a', 'scalar-type': 'int', 'collation': '', 'range-value-positions': true}]}");
+        IndexConfigPlan plan = IndexConfigPlan.build("data-hub-FINAL", desired, existing);
+        assertEquals(IndexConfigPlan.ChangeType.MODIFY, plan.getChanges().get(0).getType());
+        assertTrue(plan.requiresReindexing(), "Enabling range value positions affects what is indexed");
+    }
+
+    private String pathIndex(String pathExpression, String invalidValues) {
+        return "{'path-expression': '" + pathExpression + "', 'scalar-type': 'string', " +
+            "'collation': 'http://marklogic.com/collation/', 'range-value-positions': false, 'invalid-values': '" + invalidValues + "'}";
+    }
+
+    private ObjectNode readJson(String json) throws IOException {
+        return (ObjectNode) objectMapper.readTree(json.replace('\'', '"'));
+    }
+}
@@ -108,9 +108,9 @@ public class ExcludeAlreadyProcessedItemsTest extends AbstractHubCoreTest {
             .withOptions(buildExcludeOptions()));
         assertEquals(2, response.getStepResponses().get(stepNumber).getSuccessfulEvents(),
             "Only the two new items should have been processed since items already processed were excluded");
-        assertEquals(3, response.getStepResponses().get(stepNumber).getTotalEvents(),
-            "The QueryStepRunner still thinks 3 items were processed since it sent a batch of 3 items " +
-                "to the endpoint");
+        assertEquals(2, response.getStepResponses().get(stepNumber).getTotalEvents(),
+            "The collector excludes the item that was already processed, so the QueryStepRunner only receives " +
+                "and batches the 2 new items");
         verifySecondBatchDocument(flowName, stepId);
 
         // Run the step again, verify nothing is processed
@@ -123,12 +123,9 @@ public class ExcludeAlreadyProcessedItemsTest extends AbstractHubCoreTest {
             "processed, the step did complete, so the status should reflect that");
         assertEquals(0, stepResponse.getSuccessfulEvents(),
             "All 3 items have already been processed, so no items should have been processed this time");
-        assertEquals(3, stepResponse.getTotalEvents());
-        assertEquals(1, stepResponse.getSuccessfulBatches(),
-            "Even though no items were processed, the batch should be regarded as having completed successfully, " +
-                "since no errors were thrown. This represents a change from prior to this ticket - DHFPROD-5977 - " +
-                "where the number of items that failed and that were processed were both zero, the batch was " +
-                "considered to have failed, even though an error was not thrown.");
+        assertEquals(0, stepResponse.getTotalEvents(),
+            "The collector excludes all 3 items, so no items should have been sent to the endpoint");
+        assertEquals(0, stepResponse.getSuccessfulBatches());
     }
 
     private void verifyFirstBatchDocument(String flowName, String stepId) {
@@ -0,0 +1,106 @@
+package com.marklogic.hub.flow;
+
+import com.marklogic.hub.AbstractHubCoreTest;
+import com.marklogic.hub.HubConfig;
+import com.marklogic.hub.step.RunStepResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProvenanceWriteModeTest extends AbstractHubCoreTest {
+
+    private static final String PROVENANCE_COLLECTION = "http://marklogic.com/provenance-services/record";
+
+    @BeforeEach
+    void beforeEach() {
+        installProjectInFolder("test-projects/addSources-step-definition-test");
+    }
+
+    @Test
+    void off() {
+        runFlowWithWriteMode("off");
+        assertEquals(0, getDocCount(HubConfig.DEFAULT_JOB_NAME, PROVENANCE_COLLECTION),
+            "No provenance records should be written when provenanceWriteMode is 'off', regardless of the granularity level");
+    }
+
+    @Test
+    void deferred() throws InterruptedException {
+        // data-hub-operator does not inherit data-hub-spawn-user, so this verifies that the roles that run flows can
+        // defer provenance records
+        runAsDataHubOperator();
+        runFlowWithWriteMode("deferred");
+
+        // The records are written by tasks spawned on the task server, which run after the flow has finished
+        int count = 0;
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (count < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+            count = getDocCount(HubConfig.DEFAULT_JOB_NAME, PROVENANCE_COLLECTION);
+        }
+        assertEquals(2, count, "The spawned tasks should write one provenance record for each step");
+    }
+
+    @Test
+    void deferredRecordsAreNotWrittenByTheCurrentRequest() {
+        runAsDataHubOperator();
+
+        commitInRolledBackTransaction("commitDeferred");
+        assertEquals(0, getDocCount(HubConfig.DEFAULT_JOB_NAME, PROVENANCE_COLLECTION),
+            "A task spawned in an update transaction is only queued when that transaction commits, so rolling it back " +
+                "should discard the deferred record. If the record had instead been written by the current request - " +
+                "as happens when a task cannot be spawned - it would have been committed before the request returned");
+
+        commitInRolledBackTransaction("commit");
+        assertEquals(1, getDocCount(HubConfig.DEFAULT_JOB_NAME, PROVENANCE_COLLECTION),
+            "A synchronous commit writes the record in its own transaction, which is not affected by the rollback; " +
+                "this verifies that the assertion above distinguishes between the two ways of writing records");
+    }
+
+    @Test
+    void unknownWriteModeIsRejected() {
+        RunFlowResponse response = runFlowWithWriteMode("defered");
+        RunStepResponse stepResponse = response.getStepResponses().get("1");
+        assertFalse(stepResponse.isSuccess());
+        assertTrue(stepResponse.getStepOutput().get(0).contains("Invalid provenanceWriteMode: 'defered'"),
+            "A misspelled write mode should not be treated as 'sync'; step output: " + stepResponse.getStepOutput());
+    }
+
+    @Test
+    void sync() {
+        runFlowWithWriteMode("sync");
+        assertEquals(2, getDocCount(HubConfig.DEFAULT_JOB_NAME, PROVENANCE_COLLECTION),
+            "Provenance records should be written in the same request when provenanceWriteMode is 'sync'");
+    }
+
+    /**
+     * Queues a provenance record and commits it via the given Provenance function in an update transaction that is
+     * then rolled back.
+     *
+     * @param commitFunction
+     */
+    private void commitInRolledBackTransaction(String commitFunction) {
+        getHubClient().getStagingClient().newServerEval().javascript("var commitFunction; " +
+            "const prov = require('/data-hub/5/impl/prov.sjs'); " +
+            "try { " +
+            "  xdmp.invokeFunction(() => { " +
+            "    const provInstance = new prov.Provenance(); " +
+            "    provInstance.createStepRecord('rolledBackJob', 'addSourcesFlow', 'testStep', 'default-ingestion', " +
+            "      'ingestion', '/rolledBack.json', {status: 'created'}); " +
+            "    provInstance[commitFunction](); " +
+            "    fn.error(null, 'TEST-ROLLBACK'); " +
+            "  }, {update: 'true'}); " +
+            "} catch (e) { if (e.name !== 'TEST-ROLLBACK') { throw e; } }")
+            .addVariable("commitFunction", commitFunction)
+            .evalAs(String.class);
+    }
+
+    private RunFlowResponse runFlowWithWriteMode(String provenanceWriteMode) {
+        FlowInputs inputs = new FlowInputs("addSourcesFlow", "1", "2")
+            .withOptions(Collections.singletonMap("provenanceWriteMode", provenanceWriteMode));
+        addAbsoluteInputFilePath(inputs, "data");
+        return runFlow(inputs);
+    }
+}
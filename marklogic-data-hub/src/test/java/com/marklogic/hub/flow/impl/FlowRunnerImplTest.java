@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -59,4 +60,36 @@ public class FlowRunnerImplTest {
         flowRunner.configureStopOnError(flow, new HashMap<>());
         assertFalse(flow.isStopOnError());
     }
+
+    @Test
+    void maxConcurrentJobs() {
+        FlowRunnerImpl flowRunner = new FlowRunnerImpl();
+        assertEquals(1, flowRunner.getMaxConcurrentJobs(), "Jobs should be run one at a time by default");
+        assertEquals(4, flowRunner.withMaxConcurrentJobs(4).getMaxConcurrentJobs());
+        assertThrows(IllegalArgumentException.class, () -> flowRunner.withMaxConcurrentJobs(0));
+        assertNull(flowRunner.getRunningFlow(), "No flow should be running when no jobs have been submitted");
+        assertNull(flowRunner.getRunningStepKey());
+        assertTrue(flowRunner.getRunningJobIds().isEmpty());
+    }
+
+    @Test
+    void threadPoolIsResizedWhenMaxConcurrentJobsChanges() {
+        FlowRunnerImpl flowRunner = new FlowRunnerImpl();
+        flowRunner.ensureThreadPoolIsRunning();
+        ThreadPoolExecutor pool = flowRunner.getThreadPool();
+        try {
+            assertEquals(2, pool.getCorePoolSize(), "The pool needs one more thread than the max concurrent jobs");
+
+            flowRunner.withMaxConcurrentJobs(50);
+            assertSame(pool, flowRunner.getThreadPool(), "The running pool should be resized instead of replaced");
+            assertEquals(51, pool.getCorePoolSize());
+            assertEquals(Math.max(Runtime.getRuntime().availableProcessors() / 2, 51), pool.getMaximumPoolSize(), "The max pool size can never be less than the core size");
+
+            flowRunner.withMaxConcurrentJobs(3);
+            assertEquals(4, pool.getCorePoolSize());
+            assertEquals(Math.max(Runtime.getRuntime().availableProcessors() / 2, 4), pool.getMaximumPoolSize());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 }
@@ -237,6 +237,29 @@ public class FlowRunnerTest extends AbstractHubCoreTest {
                 "and from MLCP.");
      }
 
+    @Test
+    void ingestCsvWithMultipleFileReaderThreads() {
+        Map<String,Object> opts = new HashMap<>();
+        opts.put("outputFormat","xml");
+        opts.put("fileReaderThreadCount", 4);
+
+        Map<String,Object> stepConfig = new HashMap<>();
+        Map<String,String> stepDetails = new HashMap<>();
+        stepDetails.put("outputURIPrefix" ,"/prefix-output/");
+        stepConfig.put("fileLocations", stepDetails);
+
+        runAsDataHubOperator();
+        RunFlowResponse resp = runFlow("testFlow", "3", UUID.randomUUID().toString(), opts, stepConfig);
+        flowRunner.awaitCompletion();
+
+        runAsDataHubDeveloper();
+        verifyJobFinished(resp);
+        assertEquals(25, getDocCount(HubConfig.DEFAULT_STAGING_NAME, "csv-coll"),
+            "Reading files on multiple threads should produce the same documents as reading them on a single thread");
+        String count = getHubClient().getStagingClient().newServerEval().xquery("fn:count(cts:uri-match('/prefix-output/*.xml'))").evalAs(String.class);
+        assertEquals(25, Integer.parseInt(count));
+    }
+
     @SuppressWarnings("deprecation")
     protected RunFlowResponse runFlow(String flowName, String commaDelimitedSteps, String jobId, Map<String, Object> options, Map<String, Object> stepConfig) {
         List<String> steps = commaDelimitedSteps != null ? Arrays.asList(commaDelimitedSteps.split(",")) : null;
@@ -626,6 +649,37 @@ public class FlowRunnerTest extends AbstractHubCoreTest {
         verifyJobFinished(resp1);
     }
 
+    @Test
+    public void testRunMultipleJobsConcurrently() {
+        runAsDataHubOperator();
+
+        Map<String,Object> stepConfig = new HashMap<>();
+        Map<String,String> stepDetails = new HashMap<>();
+        stepDetails.put("inputFileType","json");
+        stepConfig.put("fileLocations", stepDetails);
+
+        Map<String,Object> opts = new HashMap<>();
+        opts.put("collections", Arrays.asList("concurrent-collection"));
+        Map<String,Object> opts1 = new HashMap<>();
+        opts1.put("collections", Arrays.asList("concurrent-collection1"));
+
+        flowRunner.withMaxConcurrentJobs(2);
+        try {
+            RunFlowResponse resp = runFlow("testFlow", "2", UUID.randomUUID().toString(), opts, stepConfig);
+            RunFlowResponse resp1 = runFlow("testFlow", "2", UUID.randomUUID().toString(), opts1, stepConfig);
+            flowRunner.awaitCompletion();
+
+            assertEquals(1, getDocCount(HubConfig.DEFAULT_STAGING_NAME, "concurrent-collection"));
+            assertEquals(1, getDocCount(HubConfig.DEFAULT_STAGING_NAME, "concurrent-collection1"));
+            verifyJobFinished(resp);
+            verifyJobFinished(resp1);
+            assertFalse(flowRunner.isJobRunning());
+            assertTrue(flowRunner.getRunningJobIds().isEmpty());
+        } finally {
+            flowRunner.withMaxConcurrentJobs(1);
+        }
+    }
+
     private void verifyCollectionCountsFromRunningTestFlow() {
         assertEquals(1, getDocCount(HubConfig.DEFAULT_STAGING_NAME, "xml-coll"));
         assertEquals(25, getDocCount(HubConfig.DEFAULT_STAGING_NAME, "csv-coll"));
@@ -0,0 +1,103 @@
+package com.marklogic.hub.flow.impl;
+
+import com.marklogic.hub.flow.Flow;
+import com.marklogic.hub.step.impl.Step;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepGraphTest {
+
+    @Test
+    void noDependenciesRunsStepsInOrder() {
+        Flow flow = newFlow(step(null), step(null), step(null));
+        StepGraph graph = new StepGraph(flow, Arrays.asList("1", "2", "3"));
+        assertFalse(graph.isParallel());
+
+        Queue<String> pending = new ConcurrentLinkedQueue<>(Arrays.asList("1", "2", "3"));
+        Set<String> finished = new HashSet<>();
+        assertEquals(Arrays.asList("1"), graph.takeReadySteps(pending, finished));
+        assertTrue(graph.takeReadySteps(pending, finished).isEmpty(), "Step 2 should not be ready until step 1 finishes");
+
+        finished.add("1");
+        assertEquals(Arrays.asList("2"), graph.takeReadySteps(pending, finished));
+        finished.add("2");
+        assertEquals(Arrays.asList("3"), graph.takeReadySteps(pending, finished));
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    void independentStepsAreReadyAtOnce() {
+        Flow flow = newFlow(step(null), step(null), step(Arrays.asList("1", "2")));
+        StepGraph graph = new StepGraph(flow, Arrays.asList("1", "2", "3"));
+        assertTrue(graph.isParallel());
+
+        Queue<String> pending = new ConcurrentLinkedQueue<>(Arrays.asList("1", "2", "3"));
+        Set<String> finished = new HashSet<>();
+        assertEquals(Arrays.asList("1", "2"), graph.takeReadySteps(pending, finished));
+
+        finished.add("2");
+        assertTrue(graph.takeReadySteps(pending, finished).isEmpty());
+        finished.add("1");
+        assertEquals(Arrays.asList("3"), graph.takeReadySteps(pending, finished));
+    }
+
+    @Test
+    void dependencyOnUnselectedStepIsSatisfied() {
+        Flow flow = newFlow(step(null), step(Arrays.asList("1")));
+        StepGraph graph = new StepGraph(flow, Arrays.asList("2"));
+        assertTrue(graph.getDependencies("2").isEmpty());
+    }
+
+    @Test
+    void unknownDependency() {
+        Flow flow = newFlow(step(null), step(Arrays.asList("5")));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new StepGraph(flow, Arrays.asList("1", "2")));
+        assertTrue(ex.getMessage().contains("depends on step 5"), "Unexpected message: " + ex.getMessage());
+    }
+
+    @Test
+    void cycle() {
+        Flow flow = newFlow(step(Arrays.asList("3")), step(Arrays.asList("1")), step(Arrays.asList("2")));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new StepGraph(flow, Arrays.asList("1", "2", "3")));
+        assertTrue(ex.getMessage().contains("cycle"), "Unexpected message: " + ex.getMessage());
+    }
+
+    @Test
+    void determineThreadCount() {
+        Step step = step(null);
+        step.setThreadCount(8);
+        Flow flow = newFlow(step, step(null));
+        flow.setThreadCount(2);
+
+        assertEquals(8, StepGraph.determineThreadCount(flow, "1"));
+        assertEquals(2, StepGraph.determineThreadCount(flow, "2"));
+
+        Map<String, Object> stepConfig = new HashMap<>();
+        stepConfig.put("threadCount", "3");
+        flow.setOverrideStepConfig(stepConfig);
+        assertEquals(3, StepGraph.determineThreadCount(flow, "1"));
+    }
+
+    private Flow newFlow(Step... steps) {
+        Flow flow = new FlowImpl();
+        flow.setName("myFlow");
+        Map<String, Step> stepMap = new LinkedHashMap<>();
+        for (int i = 0; i < steps.length; i++) {
+            stepMap.put(String.valueOf(i + 1), steps[i]);
+        }
+        flow.setSteps(stepMap);
+        return flow;
+    }
+
+    private Step step(List<String> dependsOn) {
+        Step step = new Step();
+        step.setDependsOn(dependsOn);
+        return step;
+    }
+}
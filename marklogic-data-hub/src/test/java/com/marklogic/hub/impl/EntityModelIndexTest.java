@@ -0,0 +1,112 @@
+package com.marklogic.hub.impl;
+
+import com.marklogic.hub.entity.HubEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityModelIndexTest {
+
+    private Path entitiesDir;
+    private EntityModelIndex index;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        entitiesDir = Files.createTempDirectory("entities");
+        index = EntityModelIndex.forDirectory(entitiesDir);
+    }
+
+    @Test
+    void findDefinitionByTitleAndVersion() throws IOException {
+        writeModel("Person", "1.0", "Person", "Name");
+        writeModel("Customer", "2.0", "Customer", "Name");
+
+        EntityModelIndex.Snapshot snapshot = index.getSnapshot();
+        assertEquals(2, snapshot.getModels().size());
+        assertEquals(2, snapshot.getModelFiles().size());
+        assertEquals(2, snapshot.getModelNodes().size());
+
+        HubEntity name = snapshot.getDefinition("Name", "2.0");
+        assertEquals("Name", name.getInfo().getTitle());
+        assertEquals("2.0", name.getInfo().getVersion());
+        assertTrue(name.getFilename().endsWith("Customer.entity.json"));
+        assertEquals(1, name.getDefinitions().getDefinitions().size());
+
+        assertNotNull(snapshot.getDefinition("Name", null));
+        assertNull(snapshot.getDefinition("Name", "3.0"));
+        assertNull(snapshot.getDefinition("Order", null));
+    }
+
+    @Test
+    void unchangedFilesShareSnapshot() throws IOException {
+        File file = writeModel("Person", "1.0", "Person");
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 60000));
+
+        EntityModelIndex.Snapshot snapshot = index.getSnapshot();
+        assertSame(snapshot, index.getSnapshot(), "The snapshot should be reused when no model file has changed");
+        assertSame(index, EntityModelIndex.forDirectory(entitiesDir), "The index should be shared for a directory");
+    }
+
+    @Test
+    void modifiedAndDeletedFilesAreDetected() throws IOException {
+        File person = writeModel("Person", "1.0", "Person");
+        assertTrue(person.setLastModified(System.currentTimeMillis() - 60000));
+        assertNotNull(index.getSnapshot().getDefinition("Person", "1.0"));
+
+        writeModel("Person", "1.1", "Person");
+        assertNull(index.getSnapshot().getDefinition("Person", "1.0"));
+        assertNotNull(index.getSnapshot().getDefinition("Person", "1.1"));
+
+        writeModel("Customer", "1.0", "Customer");
+        assertEquals(2, index.getSnapshot().getModels().size());
+
+        assertTrue(person.delete());
+        EntityModelIndex.Snapshot snapshot = index.getSnapshot();
+        assertEquals(1, snapshot.getModels().size());
+        assertNull(snapshot.getDefinition("Person", null));
+    }
+
+    @Test
+    void returnedEntitiesAreCopies() throws IOException {
+        writeModel("Person", "1.0", "Person");
+        EntityModelIndex.Snapshot snapshot = index.getSnapshot();
+
+        snapshot.getDefinition("Person", null).getDefinitions().removeDefinition("Person");
+        assertEquals(1, snapshot.getDefinition("Person", null).getDefinitions().getDefinitions().size());
+
+        snapshot.getModels().get(0).getInfo().setTitle("Changed");
+        assertEquals("Person", snapshot.getModels().get(0).getInfo().getTitle());
+    }
+
+    @Test
+    void malformedModel() throws IOException {
+        writeModel("Person", "1.0", "Person");
+        Files.write(entitiesDir.resolve("Broken.entity.json"), "{\"info\": ".getBytes(StandardCharsets.UTF_8));
+
+        EntityModelIndex.Snapshot snapshot = index.getSnapshot();
+        assertEquals(1, snapshot.getModelNodes().size(), "A malformed model should be ignored when reading the JSON of each model");
+        assertThrows(RuntimeException.class, () -> snapshot.getModels());
+        assertThrows(RuntimeException.class, () -> snapshot.getDefinition("Person", null));
+    }
+
+    private File writeModel(String modelName, String version, String... definitionNames) throws IOException {
+        StringBuilder json = new StringBuilder("{\"info\": {\"title\": \"" + modelName + "\", \"version\": \"" + version + "\"}, \"definitions\": {");
+        for (int i = 0; i < definitionNames.length; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("\"").append(definitionNames[i]).append("\": {\"properties\": {\"id\": {\"datatype\": \"string\"}}}");
+        }
+        json.append("}}");
+        Path path = entitiesDir.resolve(modelName + EntityManagerImpl.ENTITY_FILE_EXTENSION);
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+        return path.toFile();
+    }
+}
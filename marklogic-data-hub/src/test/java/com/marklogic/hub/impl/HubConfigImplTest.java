@@ -265,6 +265,7 @@ public class HubConfigImplTest {
         assertEquals("flow-developer-role", config.getFlowDeveloperRoleName());
 
         assertEquals("default", config.getHubLogLevel());
+        assertEquals(8, config.getLoadUserArtifactsThreadCount());
 
         assertEquals("data-hub-module-reader,read,data-hub-module-reader,execute,data-hub-module-writer,update,rest-extension-user,execute", config.getModulePermissions());
         assertEquals("data-hub-entity-model-reader,read,data-hub-entity-model-writer,update", config.getEntityModelPermissions());
@@ -332,6 +333,15 @@ public class HubConfigImplTest {
         assertEquals("flow-operator-role", config.getFlowOperatorRoleName());
     }
 
+    @Test
+    void loadUserArtifactsThreadCount() {
+        HubConfigImpl config = new HubConfigImpl();
+        Properties props = new Properties();
+        props.setProperty("mlLoadUserArtifactsThreadCount", "2");
+        config.applyProperties(new SimplePropertySource(props));
+        assertEquals(2, config.getLoadUserArtifactsThreadCount());
+    }
+
     @Test
     void registerLowerCasedPropertyConsumers() {
         HubConfigImpl config = new HubConfigImpl();
@@ -0,0 +1,149 @@
+package com.marklogic.hub.step.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBatchControllerTest {
+
+    @Test
+    void notEnabled() {
+        assertNull(AdaptiveBatchController.fromOptions(null, 100, 4));
+        assertNull(AdaptiveBatchController.fromOptions(new HashMap<>(), 100, 4));
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("adaptiveBatching", false);
+        assertNull(AdaptiveBatchController.fromOptions(options, 100, 4));
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("enabled", false);
+        options.put("adaptiveBatching", config);
+        assertNull(AdaptiveBatchController.fromOptions(options, 100, 4));
+    }
+
+    @Test
+    void defaults() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("adaptiveBatching", true);
+        AdaptiveBatchController controller = AdaptiveBatchController.fromOptions(options, 100, 4);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(4, controller.getThreadCount());
+        assertEquals(100, controller.getMaxBatchSize());
+        assertEquals(4, controller.getMaxThreadCount());
+        assertEquals(AdaptiveBatchController.DEFAULT_TARGET_LATENCY, controller.getSummary().get("targetLatency"));
+    }
+
+    @Test
+    void slowBatchHalvesBatchSizeOnce() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000, 10, 100, 100, 1, 4, 2);
+        long first = controller.startBatch();
+        long second = controller.startBatch();
+        controller.finishBatch(first, 1500, false);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(2, controller.getThreadCount(), "A slow batch should not reduce concurrency");
+
+        controller.finishBatch(second, 1500, false);
+        assertEquals(50, controller.getBatchSize(), "A batch started before the previous decrease should not cause another decrease");
+
+        controller.finishBatch(controller.startBatch(), 1500, false);
+        assertEquals(25, controller.getBatchSize());
+        controller.finishBatch(controller.startBatch(), 1500, false);
+        assertEquals(12, controller.getBatchSize());
+        controller.finishBatch(controller.startBatch(), 1500, false);
+        assertEquals(10, controller.getBatchSize(), "The batch size should not go below its minimum");
+    }
+
+    @Test
+    void failedBatchHalvesConcurrency() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000, 10, 100, 100, 1, 8, 8);
+        controller.finishBatch(controller.startBatch(), 10, true);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(4, controller.getThreadCount());
+    }
+
+    @Test
+    void fastBatchesIncreaseBatchSizeThenConcurrency() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000, 10, 100, 80, 1, 3, 2);
+
+        // A round consists of as many batches as may run concurrently
+        controller.finishBatch(controller.startBatch(), 100, false);
+        assertEquals(80, controller.getBatchSize());
+        controller.finishBatch(controller.startBatch(), 100, false);
+        assertEquals(90, controller.getBatchSize());
+
+        finishRound(controller);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(2, controller.getThreadCount());
+
+        finishRound(controller);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(3, controller.getThreadCount());
+
+        finishRound(controller);
+        assertEquals(3, controller.getThreadCount(), "The thread count should not exceed its maximum");
+        assertEquals(3L, controller.getSummary().get("increaseCount"));
+    }
+
+    @Test
+    void startBatchWaitsForThreadLimit() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000, 1, 10, 10, 1, 1, 1);
+        long epoch = controller.startBatch();
+
+        Thread waiter = new Thread(controller::startBatch);
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive(), "Only one batch should be allowed to run at a time");
+
+        controller.finishBatch(epoch, 10, false);
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    void closeReleasesWaitingThreads() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000, 1, 10, 10, 1, 1, 1);
+        controller.startBatch();
+
+        Thread waiter = new Thread(controller::startBatch);
+        waiter.start();
+        controller.close();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    void fixedBatchSize() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("minBatchSize", 1);
+        config.put("maxBatchSize", 500);
+        Map<String, Object> options = new HashMap<>();
+        options.put("adaptiveBatching", config);
+
+        AdaptiveBatchController controller = AdaptiveBatchController.fromOptions(options, 100, 4, false);
+        controller.finishBatch(controller.startBatch(), 5000, true);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(2, controller.getThreadCount());
+    }
+
+    @Test
+    void invalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchController(1000, 10, 5, 5, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchController(0, 1, 5, 5, 1, 1, 1));
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("targetLatency", "fast");
+        Map<String, Object> options = new HashMap<>();
+        options.put("adaptiveBatching", config);
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveBatchController.fromOptions(options, 100, 4));
+    }
+
+    private void finishRound(AdaptiveBatchController controller) {
+        int threadCount = controller.getThreadCount();
+        for (int i = 0; i < threadCount; i++) {
+            controller.finishBatch(controller.startBatch(), 100, false);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.marklogic.hub.step.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(90, histogram.getValueAtPercentile(90));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    void largeValuesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L);
+        }
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 1.016, "Unexpected p50: " + p50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 99000 && p99 <= 99000 * 1.016, "Unexpected p99: " + p99);
+        assertEquals(100000, histogram.getValueAtPercentile(100), "A percentile should never exceed the max");
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int index = 0; index < 1000; index++) {
+            long highestValue = LatencyHistogram.highestValueFor(index);
+            assertEquals(index, LatencyHistogram.indexFor(highestValue));
+            assertEquals(index + 1, LatencyHistogram.indexFor(highestValue + 1));
+        }
+        assertEquals(LatencyHistogram.indexFor(Long.MAX_VALUE), LatencyHistogram.indexFor(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void negativeValuesRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMin());
+    }
+
+    @Test
+    void summary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        Map<String, Object> summary = histogram.getSummary();
+        assertEquals(2L, summary.get("count"));
+        assertEquals(10L, summary.get("min"));
+        assertEquals(20L, summary.get("max"));
+        assertEquals(15.0, summary.get("mean"));
+        assertEquals(10L, summary.get("p50"));
+        assertEquals(20L, summary.get("p99"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.hub.AbstractHubCoreTest;
+import com.marklogic.hub.dataservices.JobService;
+import com.marklogic.hub.flow.FlowInputs;
+import com.marklogic.hub.flow.RunFlowResponse;
+import com.marklogic.hub.step.RunStepResponse;
+import com.marklogic.hub.test.ReferenceModelProject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResumeCheckpointTotalsTest extends AbstractHubCoreTest {
+
+    @Test
+    void totalsIncludeBatchesCompletedBeforeResuming() throws IOException {
+        installProjectInFolder("test-projects/simple-customer-flow");
+        ReferenceModelProject project = new ReferenceModelProject(getHubClient());
+        project.createRawCustomer(1, "Jane");
+        project.createRawCustomer(2, "Jasmine");
+        project.createRawCustomer(3, "Jeremy");
+
+        // Simulate a run that completed its first batch, in which the only item failed, and then stopped
+        final String jobId = "resumedTotalsJob";
+        File directory = Files.createTempDirectory("checkpoint").toFile();
+        StepCheckpoint checkpoint = StepCheckpoint.create(directory, jobId, "simpleCustomerFlow", "1", 1,
+            Arrays.asList("/customer1.json", "/customer2.json", "/customer3.json").iterator());
+        checkpoint.batchCompleted(1, 0, 1, 0, 1);
+        try {
+            JobService.on(getHubClient().getJobsClient()).saveCheckpoint(jobId, StepCheckpoint.getCheckpointName("1"),
+                checkpoint.toJson(new ObjectMapper()));
+
+            Map<String, Object> options = new HashMap<>();
+            options.put("enableCheckpoints", true);
+            options.put("checkpointDirectory", directory.getAbsolutePath());
+            RunFlowResponse response = runFlow(new FlowInputs("simpleCustomerFlow", "1").withJobId(jobId).withOptions(options));
+
+            RunStepResponse stepResponse = response.getStepResponses().get("1");
+            assertEquals(3, stepResponse.getTotalEvents(), "The total should be that of every item collected for " +
+                "the step, and not just of the items that remained when the step was resumed");
+            assertEquals(2, stepResponse.getSuccessfulEvents());
+            assertEquals(1, stepResponse.getFailedEvents(), "The failure from before the step was resumed should " +
+                "still be reported, as the step response replaces the one from the previous run");
+            assertEquals(2, stepResponse.getSuccessfulBatches());
+            assertEquals(1, stepResponse.getFailedBatches());
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marklogic.hub.AbstractHubCoreTest;
+import com.marklogic.hub.dataservices.JobService;
+import com.marklogic.hub.flow.FlowInputs;
+import com.marklogic.hub.flow.RunFlowResponse;
+import com.marklogic.hub.test.ReferenceModelProject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResumeCheckpointWithExcludeAlreadyProcessedTest extends AbstractHubCoreTest {
+
+    @Test
+    void replayedItemsAreStillExcluded() throws IOException {
+        installProjectInFolder("test-projects/simple-customer-flow");
+        ReferenceModelProject project = new ReferenceModelProject(getHubClient());
+        project.createRawCustomer(1, "Jane");
+
+        RunFlowResponse response = runFlow(new FlowInputs("simpleCustomerFlow", "1"));
+        assertEquals(1, response.getStepResponses().get("1").getSuccessfulEvents());
+
+        // Simulate a run that collected both customers and stopped before its only batch was completed
+        project.createRawCustomer(2, "Jasmine");
+        final String jobId = "resumedJob";
+        File directory = Files.createTempDirectory("checkpoint").toFile();
+        StepCheckpoint checkpoint = StepCheckpoint.create(directory, jobId, "simpleCustomerFlow", "1", 100,
+            Arrays.asList("/customer1.json", "/customer2.json").iterator());
+        try {
+            JobService.on(getHubClient().getJobsClient()).saveCheckpoint(jobId, StepCheckpoint.getCheckpointName("1"),
+                checkpoint.toJson(new ObjectMapper()));
+
+            Map<String, Object> options = new HashMap<>();
+            options.put("excludeAlreadyProcessed", true);
+            options.put("enableCheckpoints", true);
+            options.put("checkpointDirectory", directory.getAbsolutePath());
+            response = runFlow(new FlowInputs("simpleCustomerFlow", "1").withJobId(jobId).withOptions(options));
+
+            assertEquals(1, response.getStepResponses().get("1").getSuccessfulEvents(),
+                "The items replayed from the checkpoint were not collected in this run, so the item that was already " +
+                    "processed must still be excluded when its batch is processed");
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepCheckpointTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void createWritesItemsToFile() throws IOException {
+        StepCheckpoint checkpoint = newCheckpoint(Files.createTempDirectory("checkpoint").toFile(), 10, 3);
+        try {
+            assertTrue(checkpoint.getItemsFile().exists());
+            assertEquals(10, checkpoint.getItemCount());
+            assertEquals(4, checkpoint.getBatchCount());
+            assertEquals(0, checkpoint.getCompletedBatchCount());
+            assertEquals(10, checkpoint.getRemainingItemCount());
+            assertEquals(newItems(10), readRemainingItems(checkpoint));
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+        assertFalse(checkpoint.getItemsFile().exists());
+    }
+
+    @Test
+    void completedBatchesAreMergedIntoRanges() throws IOException {
+        StepCheckpoint checkpoint = newCheckpoint(Files.createTempDirectory("checkpoint").toFile(), 20, 2);
+        try {
+            checkpoint.batchCompleted(1);
+            checkpoint.batchCompleted(3);
+            checkpoint.batchCompleted(2);
+            checkpoint.batchCompleted(5);
+            checkpoint.batchCompleted(5);
+            checkpoint.batchCompleted(10);
+
+            ObjectNode json = checkpoint.toJson(objectMapper);
+            assertEquals("[[1,3],[5,5],[10,10]]", json.get("stepCheckpoint").get("completedBatches").toString());
+            assertEquals(5, checkpoint.getCompletedBatchCount());
+            assertTrue(checkpoint.isBatchCompleted(2));
+            assertFalse(checkpoint.isBatchCompleted(4));
+            assertEquals(10, checkpoint.getRemainingItemCount());
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+
+    @Test
+    void remainingItemsSkipCompletedBatches() throws IOException {
+        StepCheckpoint checkpoint = newCheckpoint(Files.createTempDirectory("checkpoint").toFile(), 7, 2);
+        try {
+            checkpoint.batchCompleted(1);
+            checkpoint.batchCompleted(3);
+
+            // The last batch only has a single item
+            assertEquals(3, checkpoint.getRemainingItemCount());
+
+            StepCheckpoint.RemainingItems items = checkpoint.openRemainingItems();
+            List<String> remaining = new ArrayList<>();
+            items.forEachRemaining(remaining::add);
+            assertEquals(Arrays.asList("/item-2.json", "/item-3.json", "/item-6.json"), remaining);
+
+            assertEquals(Long.valueOf(4), items.takeBatchNumber("/item-6.json"));
+            assertEquals(Long.valueOf(2), items.takeBatchNumber("/item-2.json"));
+            assertNull(items.takeBatchNumber("/item-2.json"), "A batch number should only be taken once");
+            assertNull(items.takeBatchNumber("/item-3.json"), "The item did not start a batch");
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+
+    @Test
+    void roundTripThroughJson() throws IOException {
+        File directory = Files.createTempDirectory("checkpoint").toFile();
+        StepCheckpoint checkpoint = newCheckpoint(directory, 10, 3);
+        try {
+            checkpoint.batchCompleted(2);
+            checkpoint.batchCompleted(3);
+
+            StepCheckpoint restored = StepCheckpoint.fromJson(checkpoint.toJson(objectMapper), directory);
+            assertNotNull(restored);
+            assertEquals("job1", restored.getJobId());
+            assertEquals("myFlow", restored.getFlowName());
+            assertEquals("2", restored.getStepNumber());
+            assertEquals(checkpoint.getItemsFile(), restored.getItemsFile());
+            assertEquals(3, restored.getBatchSize());
+            assertEquals(2, restored.getCompletedBatchCount());
+            assertEquals(Arrays.asList("/item-0.json", "/item-1.json", "/item-2.json", "/item-9.json"), readRemainingItems(restored));
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+
+    @Test
+    void completedCountsRoundTripThroughJson() throws IOException {
+        File directory = Files.createTempDirectory("checkpoint").toFile();
+        StepCheckpoint checkpoint = newCheckpoint(directory, 10, 3);
+        try {
+            checkpoint.batchCompleted(1, 2, 1, 0, 1);
+            checkpoint.batchCompleted(4);
+            checkpoint.batchCompleted(4, 5, 5, 5, 5);
+
+            StepCheckpoint restored = StepCheckpoint.fromJson(checkpoint.toJson(objectMapper), directory);
+            assertEquals(3, restored.getCompletedSuccessfulEvents(), "2 from the first batch, and 1 from the last " +
+                "batch, which only has one item; completing a batch again should not change the counts");
+            assertEquals(1, restored.getCompletedFailedEvents());
+            assertEquals(1, restored.getCompletedSuccessfulBatches());
+            assertEquals(1, restored.getCompletedFailedBatches());
+
+            ObjectNode json = checkpoint.toJson(objectMapper);
+            ((ObjectNode) json.get("stepCheckpoint")).remove("completedCounts");
+            restored = StepCheckpoint.fromJson(json, directory);
+            assertEquals(4, restored.getCompletedSuccessfulEvents(),
+                "A checkpoint without counts should consider every item in a completed batch to be successful");
+            assertEquals(0, restored.getCompletedFailedEvents());
+            assertEquals(2, restored.getCompletedSuccessfulBatches());
+            assertEquals(0, restored.getCompletedFailedBatches());
+        } finally {
+            checkpoint.deleteItemsFile();
+        }
+    }
+
+    @Test
+    void itemsFileFoundInDirectory() throws IOException {
+        File originalDirectory = Files.createTempDirectory("checkpoint").toFile();
+        File newDirectory = Files.createTempDirectory("checkpoint").toFile();
+        StepCheckpoint checkpoint = newCheckpoint(originalDirectory, 4, 2);
+        ObjectNode json = checkpoint.toJson(objectMapper);
+
+        File movedFile = new File(newDirectory, checkpoint.getItemsFile().getName());
+        Files.move(checkpoint.getItemsFile().toPath(), movedFile.toPath());
+        try {
+            StepCheckpoint restored = StepCheckpoint.fromJson(json, newDirectory);
+            assertNotNull(restored);
+            assertEquals(movedFile, restored.getItemsFile());
+            assertEquals(newItems(4), readRemainingItems(restored));
+
+            assertNull(StepCheckpoint.fromJson(json, originalDirectory),
+                "When the items file cannot be found, null should be returned so that the items are collected again");
+        } finally {
+            movedFile.delete();
+        }
+    }
+
+    private StepCheckpoint newCheckpoint(File directory, int itemCount, int batchSize) throws IOException {
+        return StepCheckpoint.create(directory, "job1", "myFlow", "2", batchSize, newItems(itemCount).iterator());
+    }
+
+    private List<String> newItems(int count) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add("/item-" + i + ".json");
+        }
+        return items;
+    }
+
+    private List<String> readRemainingItems(StepCheckpoint checkpoint) throws IOException {
+        List<String> items = new ArrayList<>();
+        try (StepCheckpoint.RemainingItems remainingItems = checkpoint.openRemainingItems()) {
+            remainingItems.forEachRemaining(items::add);
+        }
+        return items;
+    }
+}
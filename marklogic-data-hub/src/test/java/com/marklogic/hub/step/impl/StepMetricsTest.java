@@ -0,0 +1,64 @@
+package com.marklogic.hub.step.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void summary() {
+        StepMetrics metrics = new StepMetrics(0);
+        metrics.setCollectorTime(250);
+        metrics.recordQueueWait(5);
+        metrics.recordBatch(100, 10, 500);
+        metrics.recordBatch(300, 10, 1500);
+
+        Map<String, Object> summary = metrics.getSummary(2000);
+        assertEquals(2000L, summary.get("durationMillis"));
+        assertEquals(250L, summary.get("collectorTimeMillis"));
+        assertEquals(10.0, summary.get("itemsPerSecond"));
+
+        Map<String, Object> latency = (Map<String, Object>) summary.get("batchLatencyMillis");
+        assertEquals(2L, latency.get("count"));
+        assertEquals(100L, latency.get("min"));
+        assertEquals(300L, latency.get("max"));
+
+        Map<String, Object> queueWait = (Map<String, Object>) summary.get("queueWaitMillis");
+        assertEquals(1L, queueWait.get("count"));
+
+        Map<String, Object> throughput = (Map<String, Object>) summary.get("throughput");
+        assertEquals(1000L, throughput.get("intervalMillis"));
+        assertEquals(Arrays.asList(10.0, 10.0), throughput.get("itemsPerSecond"));
+    }
+
+    @Test
+    void optionalMetricsOmitted() {
+        Map<String, Object> summary = new StepMetrics(0).getSummary(0);
+        assertFalse(summary.containsKey("collectorTimeMillis"));
+        assertFalse(summary.containsKey("queueWaitMillis"));
+        assertEquals(0.0, summary.get("itemsPerSecond"));
+    }
+
+    @Test
+    void throughputIntervalsMergedWhenFull() {
+        StepMetrics metrics = new StepMetrics(0);
+        for (int second = 0; second < 60; second++) {
+            metrics.recordBatch(1, 2, second * 1000L + 500);
+        }
+        assertEquals(1000L, metrics.getThroughputIntervalMillis());
+        assertEquals(60, metrics.getThroughputTimeline().size());
+
+        metrics.recordBatch(1, 4, 60500);
+        assertEquals(2000L, metrics.getThroughputIntervalMillis());
+        List<Double> timeline = metrics.getThroughputTimeline();
+        assertEquals(31, timeline.size());
+        assertEquals(2.0, timeline.get(0).doubleValue(), "Two intervals of 2 items each should be merged into 4 items over 2 seconds");
+        assertEquals(2.0, timeline.get(30).doubleValue());
+    }
+}
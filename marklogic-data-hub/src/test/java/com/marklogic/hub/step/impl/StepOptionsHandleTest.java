@@ -0,0 +1,98 @@
+package com.marklogic.hub.step.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.hub.step.ResponseHolder;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepOptionsHandleTest {
+
+    private final String[] items = new String[]{"/a.json", "/b.json"};
+
+    @Test
+    void optionsSentUntilRegistered() {
+        StepOptionsHandle handle = newHandle();
+
+        ObjectNode inputs = handle.newInputs(items, false);
+        assertEquals("myFlow", inputs.get("flowName").asText());
+        assertEquals("2", inputs.get("stepNumber").asText());
+        assertEquals("job123", inputs.get("jobId").asText());
+        assertEquals(2, inputs.get("uris").size());
+        assertEquals(handle.getKey(), inputs.get("optionsKey").asText());
+        assertEquals("value", inputs.get("options").get("custom").asText());
+        assertFalse(inputs.get("options").has("uris"), "The items should only be sent outside of the options");
+
+        handle.recordResponse(new ResponseHolder());
+        inputs = handle.newInputs(items, false);
+        assertEquals(handle.getKey(), inputs.get("optionsKey").asText());
+        assertFalse(inputs.has("options"), "Once the server has cached the options, they should no longer be sent");
+
+        inputs = handle.newInputs(items, true);
+        assertTrue(inputs.has("options"), "The options must be sent when the server reports that it does not have them");
+    }
+
+    @Test
+    void optionsNotFound() {
+        StepOptionsHandle handle = newHandle();
+        ResponseHolder response = new ResponseHolder();
+        response.stepOptionsNotFound = true;
+        handle.recordResponse(response);
+        assertTrue(handle.newInputs(items, false).has("options"));
+    }
+
+    @Test
+    void optionsCouldNotBeCached() {
+        StepOptionsHandle handle = newHandle();
+        ResponseHolder response = new ResponseHolder();
+        response.stepOptionsCached = false;
+        handle.recordResponse(response);
+
+        assertTrue(handle.isOptionsCachingDisabled());
+        ObjectNode inputs = handle.newInputs(items, false);
+        assertFalse(inputs.has("optionsKey"));
+        assertTrue(inputs.has("options"));
+    }
+
+    @Test
+    void clientsWithCachedOptions() {
+        StepOptionsHandle handle = newHandle();
+        DatabaseClient firstClient = EasyMock.createMock(DatabaseClient.class);
+        DatabaseClient secondClient = EasyMock.createMock(DatabaseClient.class);
+
+        handle.recordInputsSent(firstClient, handle.newInputs(items, false));
+        handle.recordResponse(new ResponseHolder());
+        handle.recordInputsSent(secondClient, handle.newInputs(items, false));
+        assertEquals(1, handle.getClientsWithCachedOptions().size(),
+            "The second client did not send the options, so its app server does not have them cached");
+        assertTrue(handle.getClientsWithCachedOptions().contains(firstClient));
+
+        handle.recordInputsSent(secondClient, handle.newInputs(items, true));
+        assertEquals(2, handle.getClientsWithCachedOptions().size(),
+            "The options were resent via the second client, so its app server now has them cached as well");
+
+        ResponseHolder response = new ResponseHolder();
+        response.stepOptionsCached = false;
+        handle.recordResponse(response);
+        assertTrue(handle.getClientsWithCachedOptions().isEmpty(),
+            "If the options could not be cached, there is nothing to release");
+    }
+
+    @Test
+    void keyIsUniquePerRun() {
+        assertNotEquals(newHandle().getKey(), newHandle().getKey());
+    }
+
+    private StepOptionsHandle newHandle() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("custom", "value");
+        options.put("uris", new String[]{"/should-be-removed.json"});
+        return new StepOptionsHandle(new ObjectMapper(), "myFlow", "2", "job123", options);
+    }
+}
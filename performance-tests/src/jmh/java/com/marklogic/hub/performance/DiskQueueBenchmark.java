@@ -0,0 +1,59 @@
+package com.marklogic.hub.performance;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the memory-mapped DiskQueue used by collectors with the line-based implementation it replaced, which is
+ * still available as the legacy DiskQueue. Each invocation fills a queue with URIs, most of which spill to disk, and
+ * then iterates over all of them, as QueryStepRunner does with collected items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class DiskQueueBenchmark {
+
+    // Matches the in-memory size used by CollectorImpl
+    private static final int MAX_IN_MEMORY_SIZE = 5000;
+
+    @Param({"100000", "1000000"})
+    public int uriCount;
+
+    private String[] uris;
+
+    @Setup
+    public void setup() {
+        uris = new String[uriCount];
+        for (int i = 0; i < uriCount; i++) {
+            uris[i] = "/customer/" + i + "/customer-" + Integer.toHexString(i * 31) + ".json";
+        }
+    }
+
+    @Benchmark
+    public void mappedDiskQueue(Blackhole blackhole) {
+        try (com.marklogic.hub.collector.DiskQueue<String> queue = new com.marklogic.hub.collector.DiskQueue<>(MAX_IN_MEMORY_SIZE)) {
+            fillAndDrain(queue, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void legacyDiskQueue(Blackhole blackhole) {
+        try (com.marklogic.hub.legacy.collector.DiskQueue<String> queue = new com.marklogic.hub.legacy.collector.DiskQueue<>(MAX_IN_MEMORY_SIZE)) {
+            fillAndDrain(queue, blackhole);
+        }
+    }
+
+    private void fillAndDrain(Queue<String> queue, Blackhole blackhole) {
+        for (String uri : uris) {
+            queue.add(uri);
+        }
+        Iterator<String> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.marklogic.hub.performance;
+
+import com.marklogic.hub.spark.sql.sources.v2.writer.JsonRowSerializer;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow;
+import org.apache.spark.sql.catalyst.json.JSONOptions;
+import org.apache.spark.sql.catalyst.json.JacksonGenerator;
+import org.apache.spark.sql.catalyst.util.DateTimeUtils;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.Metadata;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.unsafe.types.UTF8String;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many rows per second a single thread - i.e. a single Spark executor core - can serialize into JSON for
+ * the HubDataWriter. Compares the reusable JsonRowSerializer with the approach it replaced, which created a new
+ * writer, JSONOptions and JacksonGenerator for every row and produced a String.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class JsonRowSerializerBenchmark {
+
+    private static final int ROW_COUNT = 1000;
+
+    private StructType sparkSchema;
+    private InternalRow[] rows;
+    private JsonRowSerializer serializer;
+
+    @Setup
+    public void setup() {
+        Metadata metadata = new Metadata();
+        sparkSchema = new StructType(new StructField[]{
+            new StructField("customerId", DataTypes.IntegerType, false, metadata),
+            new StructField("name", DataTypes.StringType, true, metadata),
+            new StructField("email", DataTypes.StringType, true, metadata),
+            new StructField("balance", DataTypes.DoubleType, true, metadata),
+            new StructField("active", DataTypes.BooleanType, true, metadata)
+        });
+
+        rows = new InternalRow[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = new GenericInternalRow(new Object[]{
+                i,
+                UTF8String.fromString("Customer " + i),
+                UTF8String.fromString("customer" + i + "@example.org"),
+                i * 1.5,
+                i % 2 == 0
+            });
+        }
+        serializer = new JsonRowSerializer(sparkSchema);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void reusableSerializer(Blackhole blackhole) {
+        for (InternalRow row : rows) {
+            blackhole.consume(serializer.serialize(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void generatorPerRow(Blackhole blackhole) {
+        for (InternalRow row : rows) {
+            StringWriter jsonObjectWriter = new StringWriter();
+            scala.collection.immutable.Map<String, String> emptyMap = scala.collection.immutable.Map$.MODULE$.empty();
+            JacksonGenerator jacksonGenerator = new JacksonGenerator(
+                sparkSchema,
+                jsonObjectWriter,
+                new JSONOptions(emptyMap, DateTimeUtils.TimeZoneUTC().getID(), "")
+            );
+            jacksonGenerator.write(row);
+            jacksonGenerator.flush();
+            blackhole.consume(jsonObjectWriter.toString());
+        }
+    }
+}